@@ -0,0 +1,108 @@
+package com.rbleggi.corebankledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    @Param({"1000"})
+    int legs;
+
+    @Param({"100000"})
+    int accounts;
+
+    @Param({"PAYROLL", "RANDOM"})
+    String shape;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    int[] froms;
+    int[] tos;
+    BigDecimal[] amounts;
+    Path path;
+    LedgerJournal journal;
+    ConcurrentLedger ledger;
+    Ledger commandLedger;
+    Account[] commandAccounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var random = new SplittableRandom(5);
+        froms = new int[legs];
+        tos = new int[legs];
+        amounts = new BigDecimal[legs];
+        for (int i = 0; i < legs; i++) {
+            froms[i] = shape.equals("PAYROLL") ? 0 : random.nextInt(accounts);
+            tos[i] = random.nextInt(1, accounts);
+            amounts[i] = BigDecimal.valueOf(random.nextInt(1, 100_000), 2);
+        }
+        var initial = new BigDecimal("1000000000");
+        if (journaled) {
+            path = Files.createTempFile("batch", ".wal");
+            journal = LedgerJournal.open(path);
+            ledger = journal.recover(accounts);
+        } else {
+            ledger = new ConcurrentLedger(accounts);
+        }
+        commandLedger = new Ledger();
+        commandAccounts = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ledger.createAccount("ACC-" + i, initial);
+            commandAccounts[i] = commandLedger.createAccount("ACC-" + i, initial);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        if (journal != null) {
+            journal.close();
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public Ledger commands() {
+        for (int i = 0; i < legs; i++) new Transfer(commandAccounts[froms[i]], commandAccounts[tos[i]], amounts[i], commandLedger).execute();
+        return commandLedger;
+    }
+
+    @Benchmark
+    public int individualTransfers() {
+        int applied = 0;
+        for (int i = 0; i < legs; i++) {
+            if (ledger.transfer(froms[i], tos[i], amounts[i])) applied++;
+        }
+        return applied;
+    }
+
+    @Benchmark
+    public boolean batch() {
+        var batch = new TransactionBatch(legs);
+        for (int i = 0; i < legs; i++) batch.transfer(froms[i], tos[i], amounts[i]);
+        return ledger.commit(batch);
+    }
+}
@@ -0,0 +1,66 @@
+package com.rbleggi.corebankledger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+public class EngineBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int postings = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        int ringSize = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 16;
+
+        System.out.printf("%d producers, %,d postings, %,d accounts, ring %,d%n", producers, postings, accounts, ringSize);
+        for (int run = 0; run < 2; run++) {
+            run("no journal", producers, postings, accounts, ringSize, null);
+            run("journal + replica", producers, postings, accounts, ringSize, false);
+            run("journal fsync + replica", producers, postings, accounts, ringSize, true);
+        }
+    }
+
+    private static void run(String label, int producers, int postings, int accounts, int ringSize, Boolean sync) throws IOException, InterruptedException {
+        var path = Files.createTempFile("engine", ".wal");
+        var ledger = new FixedPointLedger(accounts);
+        var replica = new FixedPointLedger(accounts);
+        var journal = sync == null ? null : EventJournal.open(path, sync);
+        var engine = sync == null ? new LedgerEngine(ledger, ringSize) : new LedgerEngine(ledger, ringSize, journal, LedgerEngine.replicating(replica));
+        for (int i = 0; i < accounts; i++) engine.openAccount("ACC-" + i, 1_000_000);
+        engine.awaitApplied(accounts - 1);
+
+        long start = System.nanoTime();
+        var threads = new ArrayList<Thread>();
+        int perProducer = postings / producers;
+        for (int p = 0; p < producers; p++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                var random = new SplittableRandom();
+                for (int i = 0; i < perProducer; i++) {
+                    int account = random.nextInt(accounts);
+                    long units = random.nextLong(1, 10_000);
+                    switch (random.nextInt(4)) {
+                        case 0 -> engine.deposit(account, units);
+                        case 1 -> engine.withdraw(account, units);
+                        default -> engine.transfer(account, random.nextInt(accounts), units);
+                    }
+                }
+            }));
+        }
+        for (var thread : threads) thread.join();
+        engine.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (journal != null) journal.close();
+
+        String syncs = journal == null || !sync ? "" : String.format(", %,d fsyncs", journal.syncs());
+        System.out.printf("%-24s %,12.0f postings/s, %,d rejected%s%n", label, perProducer * producers / seconds, engine.rejected(), syncs);
+
+        if (journal != null) {
+            long replayStart = System.nanoTime();
+            var replayed = new FixedPointLedger(accounts);
+            long records = LedgerEngine.replay(path, replayed);
+            System.out.printf("%-24s replayed %,d records in %d ms, matches: %b%n", "",
+                records, (System.nanoTime() - replayStart) / 1_000_000, replayed.totalUnits() == ledger.totalUnits() && replica.totalUnits() == ledger.totalUnits());
+        }
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,84 @@
+package com.rbleggi.corebankledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+    @Param({"1000000"})
+    int postings;
+
+    PostingHistory history;
+    long[] timestamps;
+    long[] units;
+    long lastMillis;
+    final SplittableRandom random = new SplittableRandom(3);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var now = new long[1];
+        history = new PostingHistory(() -> Instant.ofEpochMilli(now[0]), PostingHistory.DEFAULT_SNAPSHOT_INTERVAL);
+        var ledger = new FixedPointLedger(2, 2, history);
+        var busy = ledger.createAccount("BUSY", new BigDecimal("1000000"));
+        var other = ledger.createAccount("OTHER", new BigDecimal("1000000"));
+        var seed = new SplittableRandom(42);
+        while (history.postingCount(busy) < postings) {
+            now[0] += seed.nextInt(2);
+            long amount = seed.nextLong(1, 10_000);
+            switch (seed.nextInt(3)) {
+                case 0 -> ledger.deposit(busy, amount);
+                case 1 -> ledger.withdraw(busy, amount);
+                default -> ledger.transfer(other, busy, amount);
+            }
+            if (seed.nextInt(4) == 0) ledger.deposit(other, amount);
+        }
+        lastMillis = now[0];
+        var postingsOfBusy = history.statement(busy, Long.MIN_VALUE, Long.MAX_VALUE).postings();
+        timestamps = postingsOfBusy.stream().mapToLong(Posting::timestamp).toArray();
+        units = postingsOfBusy.stream().mapToLong(Posting::units).toArray();
+    }
+
+    @Benchmark
+    public long balanceAsOf() {
+        return history.balanceAsOf(0, random.nextLong(lastMillis + 1));
+    }
+
+    @Benchmark
+    public long replayBalanceAsOf() {
+        long millis = random.nextLong(lastMillis + 1);
+        long balance = 0;
+        for (int i = 0; i < timestamps.length && timestamps[i] <= millis; i++) balance += units[i];
+        return balance;
+    }
+
+    @Benchmark
+    public Statement fullStatement() {
+        return history.statement(0, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Statement monthlyStatement() {
+        long from = random.nextLong(Math.max(1, lastMillis - 30_000));
+        return history.statement(0, from, from + 30_000);
+    }
+}
@@ -0,0 +1,52 @@
+package com.rbleggi.corebankledger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class JournalBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        var path = args.length > 3 ? Path.of(args[3]) : Files.createTempFile("ledger", ".wal");
+        Files.deleteIfExists(path);
+
+        var transfers = new LongAdder();
+        long syncs;
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(accounts);
+            var initial = new BigDecimal("1000");
+            for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, initial);
+            long syncsBefore = journal.syncs();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            var workers = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(Thread.ofPlatform().start(() -> {
+                    var random = new SplittableRandom();
+                    while (System.nanoTime() < end) {
+                        if (ledger.transfer(random.nextInt(accounts), random.nextInt(accounts), BigDecimal.valueOf(random.nextInt(1, 100)))) {
+                            transfers.increment();
+                        }
+                    }
+                }));
+            }
+            for (var worker : workers) worker.join();
+            syncs = journal.syncs() - syncsBefore;
+        }
+        System.out.printf("%d threads: %,.0f durable transfers/s, %,d fsyncs, %.1f records per fsync%n",
+            threads, transfers.sum() / (double) seconds, syncs, transfers.sum() / (double) Math.max(1, syncs));
+
+        long start = System.nanoTime();
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(accounts);
+            System.out.printf("recovered %,d records in %d ms, total balance %s%n",
+                journal.recoveredSequence(), (System.nanoTime() - start) / 1_000_000, ledger.totalBalance());
+        }
+        Files.delete(path);
+    }
+}
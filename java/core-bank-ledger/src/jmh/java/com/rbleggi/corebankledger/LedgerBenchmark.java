@@ -0,0 +1,65 @@
+package com.rbleggi.corebankledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Threads(4)
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+    static final BigDecimal[] AMOUNTS = {new BigDecimal("1.50"), new BigDecimal("10"), new BigDecimal("25.75"), new BigDecimal("100")};
+
+    @Param({"1000000"})
+    int accounts;
+
+    @Param({"1", "4096"})
+    int stripes;
+
+    ConcurrentLedger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = new ConcurrentLedger(accounts, stripes);
+        var initial = new BigDecimal("1000");
+        for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, initial);
+    }
+
+    @State(Scope.Thread)
+    public static class Operations {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public boolean mixed(Operations operations) {
+        var random = operations.random;
+        int account = random.nextInt(accounts);
+        var amount = AMOUNTS[random.nextInt(AMOUNTS.length)];
+        return switch (random.nextInt(4)) {
+            case 0 -> {
+                ledger.deposit(account, amount);
+                yield true;
+            }
+            case 1 -> ledger.withdraw(account, amount);
+            default -> ledger.transfer(account, random.nextInt(accounts), amount);
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.rbleggi.corebankledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PostingBenchmark {
+    static final int DEPOSIT = 0;
+    static final int WITHDRAW = 1;
+
+    @Param({"10000000"})
+    int postings;
+
+    @Param({"100000"})
+    int accounts;
+
+    int[] kinds;
+    int[] froms;
+    int[] tos;
+    long[] units;
+    BigDecimal[] amounts;
+
+    Account[] commandAccounts;
+    Ledger commandLedger;
+    FixedPointLedger fixedPointLedger;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        var random = new SplittableRandom(42);
+        kinds = new int[postings];
+        froms = new int[postings];
+        tos = new int[postings];
+        units = new long[postings];
+        amounts = new BigDecimal[postings];
+        var distinct = new BigDecimal[10_000];
+        for (int i = 0; i < distinct.length; i++) distinct[i] = BigDecimal.valueOf(i + 1, 2);
+        for (int i = 0; i < postings; i++) {
+            kinds[i] = random.nextInt(4);
+            froms[i] = random.nextInt(accounts);
+            tos[i] = random.nextInt(accounts);
+            int amount = random.nextInt(distinct.length);
+            units[i] = amount + 1;
+            amounts[i] = distinct[amount];
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        var initial = new BigDecimal("1000.00");
+        commandLedger = new Ledger();
+        commandAccounts = new Account[accounts];
+        fixedPointLedger = new FixedPointLedger(accounts);
+        for (int i = 0; i < accounts; i++) {
+            commandAccounts[i] = commandLedger.createAccount("ACC-" + i, initial);
+            fixedPointLedger.createAccount("ACC-" + i, initial);
+        }
+    }
+
+    @Benchmark
+    public Ledger commands() {
+        for (int i = 0; i < postings; i++) {
+            LedgerCommand command = switch (kinds[i]) {
+                case DEPOSIT -> new Deposit(commandAccounts[froms[i]], amounts[i], commandLedger);
+                case WITHDRAW -> new Withdraw(commandAccounts[froms[i]], amounts[i], commandLedger);
+                default -> new Transfer(commandAccounts[froms[i]], commandAccounts[tos[i]], amounts[i], commandLedger);
+            };
+            command.execute();
+        }
+        return commandLedger;
+    }
+
+    @Benchmark
+    public long fixedPoint() {
+        var ledger = fixedPointLedger;
+        for (int i = 0; i < postings; i++) {
+            switch (kinds[i]) {
+                case DEPOSIT -> ledger.deposit(froms[i], units[i]);
+                case WITHDRAW -> ledger.withdraw(froms[i], units[i]);
+                default -> ledger.transfer(froms[i], tos[i], units[i]);
+            }
+        }
+        return ledger.totalUnits();
+    }
+
+    @Benchmark
+    public long fixedPointFromBigDecimal() {
+        var ledger = fixedPointLedger;
+        for (int i = 0; i < postings; i++) {
+            long amount = ledger.units(amounts[i]);
+            switch (kinds[i]) {
+                case DEPOSIT -> ledger.deposit(froms[i], amount);
+                case WITHDRAW -> ledger.withdraw(froms[i], amount);
+                default -> ledger.transfer(froms[i], tos[i], amount);
+            }
+        }
+        return ledger.totalUnits();
+    }
+}
@@ -0,0 +1,311 @@
+package com.rbleggi.corebankledger;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+class ConcurrentLedger {
+    static final int DEFAULT_STRIPES = 4096;
+    private static final byte[] NO_ID = new byte[0];
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final Account[] accounts;
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final LedgerJournal journal;
+
+    public ConcurrentLedger(int capacity) {
+        this(capacity, DEFAULT_STRIPES);
+    }
+
+    public ConcurrentLedger(int capacity, int stripeCount) {
+        this(capacity, stripeCount, null);
+    }
+
+    ConcurrentLedger(int capacity, int stripeCount, LedgerJournal journal) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) throw new IllegalArgumentException("stripeCount must be a power of two");
+        this.accounts = new Account[capacity];
+        this.stripes = new ReentrantLock[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        this.journal = journal;
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new ReentrantLock();
+    }
+
+    public int createAccount(String id, BigDecimal initial) {
+        requireNonNegative(initial);
+        var amount = journaled(initial);
+        var encodedId = journal == null ? null : LedgerJournal.encodedId(id);
+        int ordinal;
+        long sequence = 0;
+        synchronized (ordinals) {
+            if (ordinals.containsKey(id)) throw new IllegalArgumentException("Account already exists: " + id);
+            ordinal = size.get();
+            if (ordinal == accounts.length) throw new IllegalStateException("Ledger is full");
+            if (journal != null) sequence = journal.append(JournalRecordType.OPEN, ordinal, ordinal, amount, encodedId);
+            accounts[ordinal] = new Account(id, amount);
+            size.set(ordinal + 1);
+            ordinals.put(id, ordinal);
+        }
+        awaitDurable(sequence);
+        return ordinal;
+    }
+
+    public int createAccount(String id) {
+        return createAccount(id, BigDecimal.ZERO);
+    }
+
+    public int ordinal(String id) {
+        var ordinal = ordinals.get(id);
+        if (ordinal == null) throw new IllegalArgumentException("Unknown account: " + id);
+        return ordinal;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void deposit(int account, BigDecimal amount) {
+        requirePositive(amount);
+        amount = journaled(amount);
+        var target = account(account);
+        var lock = stripe(account);
+        long sequence;
+        lock.lock();
+        try {
+            sequence = log(JournalRecordType.DEPOSIT, account, account, amount);
+            target.setBalance(target.getBalance().add(amount));
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    public boolean withdraw(int account, BigDecimal amount) {
+        requirePositive(amount);
+        amount = journaled(amount);
+        var source = account(account);
+        var lock = stripe(account);
+        long sequence;
+        lock.lock();
+        try {
+            if (source.getBalance().compareTo(amount) < 0) return false;
+            sequence = log(JournalRecordType.WITHDRAW, account, account, amount);
+            source.setBalance(source.getBalance().subtract(amount));
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    public boolean transfer(int from, int to, BigDecimal amount) {
+        requirePositive(amount);
+        amount = journaled(amount);
+        var source = account(from);
+        var target = account(to);
+        int first = Math.min(from & stripeMask, to & stripeMask);
+        int second = Math.max(from & stripeMask, to & stripeMask);
+        long sequence;
+        stripes[first].lock();
+        if (second != first) stripes[second].lock();
+        try {
+            if (source.getBalance().compareTo(amount) < 0) return false;
+            sequence = log(JournalRecordType.TRANSFER, from, to, amount);
+            source.setBalance(source.getBalance().subtract(amount));
+            target.setBalance(target.getBalance().add(amount));
+        } finally {
+            if (second != first) stripes[second].unlock();
+            stripes[first].unlock();
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    public boolean commit(TransactionBatch batch) {
+        int legs = batch.size();
+        int tableBits = 33 - Integer.numberOfLeadingZeros(Math.max(1, legs) * 2);
+        var slots = new int[1 << tableBits];
+        var touched = new int[legs * 2];
+        var nets = new BigDecimal[legs * 2];
+        int distinct = 0;
+        for (int leg = 0; leg < legs; leg++) {
+            var amount = journaled(batch.amount(leg));
+            int debit = batch.debit(leg);
+            int credit = batch.credit(leg);
+            if (debit != TransactionBatch.NO_ACCOUNT) {
+                int index = slot(slots, tableBits, touched, debit, distinct);
+                if (index == distinct) {
+                    account(debit);
+                    touched[distinct] = debit;
+                    nets[distinct++] = amount.negate();
+                } else {
+                    nets[index] = nets[index].subtract(amount);
+                }
+            }
+            if (credit != TransactionBatch.NO_ACCOUNT) {
+                int index = slot(slots, tableBits, touched, credit, distinct);
+                if (index == distinct) {
+                    account(credit);
+                    touched[distinct] = credit;
+                    nets[distinct++] = amount;
+                } else {
+                    nets[index] = nets[index].add(amount);
+                }
+            }
+        }
+        var lockedStripes = new long[(stripes.length + 63) >>> 6];
+        int changed = 0;
+        for (int i = 0; i < distinct; i++) {
+            if (nets[i].signum() == 0) continue;
+            if (journal != null) LedgerJournal.scaled(nets[i]);
+            int stripe = touched[i] & stripeMask;
+            lockedStripes[stripe >>> 6] |= 1L << stripe;
+            touched[changed] = touched[i];
+            nets[changed] = nets[i];
+            changed++;
+        }
+        if (changed == 0) return true;
+
+        long sequence = 0;
+        lockStripes(lockedStripes);
+        try {
+            for (int i = 0; i < changed; i++) {
+                if (nets[i].signum() < 0 && accounts[touched[i]].getBalance().compareTo(nets[i].negate()) < 0) return false;
+            }
+            if (journal != null) sequence = journal.appendBatch(touched, nets, changed);
+            for (int i = 0; i < changed; i++) {
+                var target = accounts[touched[i]];
+                target.setBalance(target.getBalance().add(nets[i]));
+            }
+        } finally {
+            unlockStripes(lockedStripes);
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    public void deposit(String id, BigDecimal amount) {
+        deposit(ordinal(id), amount);
+    }
+
+    public boolean withdraw(String id, BigDecimal amount) {
+        return withdraw(ordinal(id), amount);
+    }
+
+    public boolean transfer(String from, String to, BigDecimal amount) {
+        return transfer(ordinal(from), ordinal(to), amount);
+    }
+
+    public BigDecimal balance(int account) {
+        var target = account(account);
+        var lock = stripe(account);
+        lock.lock();
+        try {
+            return target.getBalance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BigDecimal balance(String id) {
+        return balance(ordinal(id));
+    }
+
+    public BigDecimal totalBalance() {
+        for (var lock : stripes) lock.lock();
+        try {
+            var total = BigDecimal.ZERO;
+            for (int i = 0, n = size.get(); i < n; i++) total = total.add(accounts[i].getBalance());
+            return total;
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+        }
+    }
+
+    void replay(JournalRecord record) {
+        var amount = BigDecimal.valueOf(record.amount(), LedgerJournal.AMOUNT_SCALE);
+        switch (record.type()) {
+            case OPEN -> {
+                int ordinal = size.get();
+                if (record.account() != ordinal || ordinal == accounts.length) throw new IllegalStateException("Journal does not fit the ledger at sequence " + record.sequence());
+                accounts[ordinal] = new Account(record.id(), amount);
+                size.set(ordinal + 1);
+                ordinals.put(record.id(), ordinal);
+            }
+            case DEPOSIT -> credit(record.account(), amount);
+            case WITHDRAW -> credit(record.account(), amount.negate());
+            case TRANSFER -> {
+                credit(record.account(), amount.negate());
+                credit(record.counterparty(), amount);
+            }
+            case BATCH -> {
+            }
+        }
+    }
+
+    private void credit(int ordinal, BigDecimal amount) {
+        var target = account(ordinal);
+        target.setBalance(target.getBalance().add(amount));
+    }
+
+    private BigDecimal journaled(BigDecimal amount) {
+        return journal == null ? amount : LedgerJournal.scaled(amount);
+    }
+
+    private long log(JournalRecordType type, int account, int counterparty, BigDecimal amount) {
+        return journal == null ? 0 : journal.append(type, account, counterparty, amount, NO_ID);
+    }
+
+    private void awaitDurable(long sequence) {
+        if (sequence > 0) journal.awaitDurable(sequence);
+    }
+
+    private static int slot(int[] slots, int tableBits, int[] touched, int ordinal, int distinct) {
+        int tableMask = slots.length - 1;
+        int slot = (ordinal * 0x9E3779B9) >>> (32 - tableBits);
+        while (slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if (touched[index] == ordinal) return index;
+            slot = (slot + 1) & tableMask;
+        }
+        slots[slot] = distinct + 1;
+        return distinct;
+    }
+
+    private void lockStripes(long[] lockedStripes) {
+        for (int word = 0; word < lockedStripes.length; word++) {
+            for (long bits = lockedStripes[word]; bits != 0; bits &= bits - 1) {
+                stripes[(word << 6) + Long.numberOfTrailingZeros(bits)].lock();
+            }
+        }
+    }
+
+    private void unlockStripes(long[] lockedStripes) {
+        for (int word = 0; word < lockedStripes.length; word++) {
+            for (long bits = lockedStripes[word]; bits != 0; bits &= bits - 1) {
+                stripes[(word << 6) + Long.numberOfTrailingZeros(bits)].unlock();
+            }
+        }
+    }
+
+    private Account account(int ordinal) {
+        if (ordinal < 0 || ordinal >= size.get()) throw new IllegalArgumentException("Unknown account ordinal: " + ordinal);
+        return accounts[ordinal];
+    }
+
+    private ReentrantLock stripe(int ordinal) {
+        return stripes[ordinal & stripeMask];
+    }
+
+    private static void requirePositive(BigDecimal amount) {
+        if (amount.signum() <= 0) throw new IllegalArgumentException("amount must be positive");
+    }
+
+    private static void requireNonNegative(BigDecimal amount) {
+        if (amount.signum() < 0) throw new IllegalArgumentException("initial balance must not be negative");
+    }
+}
@@ -0,0 +1,162 @@
+package com.rbleggi.corebankledger;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+class FixedPointLedger {
+    static final int DEFAULT_SCALE = 2;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final String[] ids;
+    private final long[] balances;
+    private final int scale;
+    private final PostingHistory history;
+    private int size;
+
+    public FixedPointLedger(int capacity) {
+        this(capacity, DEFAULT_SCALE);
+    }
+
+    public FixedPointLedger(int capacity, int scale) {
+        this(capacity, scale, null);
+    }
+
+    public FixedPointLedger(int capacity, int scale, PostingHistory history) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        if (scale < 0 || scale > 18) throw new IllegalArgumentException("scale must be between 0 and 18");
+        this.ids = new String[capacity];
+        this.balances = new long[capacity];
+        this.scale = scale;
+        this.history = history;
+    }
+
+    public int createAccount(String id, BigDecimal initial) {
+        return createAccount(id, units(initial));
+    }
+
+    public int createAccount(String id, long units) {
+        if (units < 0) throw new IllegalArgumentException("initial balance must not be negative");
+        if (ordinals.containsKey(id)) throw new IllegalArgumentException("Account already exists: " + id);
+        if (size == balances.length) throw new IllegalStateException("Ledger is full");
+        ids[size] = id;
+        balances[size] = units;
+        ordinals.put(id, size);
+        if (history != null && units > 0) history.record(JournalRecordType.OPEN, size, size, units);
+        return size++;
+    }
+
+    public int createAccount(String id) {
+        return createAccount(id, BigDecimal.ZERO);
+    }
+
+    public int ordinal(String id) {
+        var ordinal = ordinals.get(id);
+        if (ordinal == null) throw new IllegalArgumentException("Unknown account: " + id);
+        return ordinal;
+    }
+
+    public String id(int account) {
+        checkAccount(account);
+        return ids[account];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return balances.length;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public void deposit(int account, long units) {
+        checkAccount(account);
+        checkUnits(units);
+        balances[account] = Math.addExact(balances[account], units);
+        if (history != null) history.record(JournalRecordType.DEPOSIT, account, account, units);
+    }
+
+    public boolean withdraw(int account, long units) {
+        checkAccount(account);
+        checkUnits(units);
+        if (balances[account] < units) return false;
+        balances[account] -= units;
+        if (history != null) history.record(JournalRecordType.WITHDRAW, account, account, -units);
+        return true;
+    }
+
+    public boolean transfer(int from, int to, long units) {
+        checkAccount(from);
+        checkAccount(to);
+        checkUnits(units);
+        if (balances[from] < units) return false;
+        if (from == to) return true;
+        long credited = Math.addExact(balances[to], units);
+        balances[from] -= units;
+        balances[to] = credited;
+        if (history != null) {
+            history.record(JournalRecordType.TRANSFER, from, to, -units);
+            history.record(JournalRecordType.TRANSFER, to, from, units);
+        }
+        return true;
+    }
+
+    public long balanceUnits(int account) {
+        checkAccount(account);
+        return balances[account];
+    }
+
+    public long totalUnits() {
+        long total = 0;
+        for (int i = 0; i < size; i++) total = Math.addExact(total, balances[i]);
+        return total;
+    }
+
+    public void deposit(String id, BigDecimal amount) {
+        deposit(ordinal(id), units(amount));
+    }
+
+    public boolean withdraw(String id, BigDecimal amount) {
+        return withdraw(ordinal(id), units(amount));
+    }
+
+    public boolean transfer(String from, String to, BigDecimal amount) {
+        return transfer(ordinal(from), ordinal(to), units(amount));
+    }
+
+    public BigDecimal balance(int account) {
+        return amount(balanceUnits(account));
+    }
+
+    public BigDecimal balance(String id) {
+        return balance(ordinal(id));
+    }
+
+    public BigDecimal totalBalance() {
+        return amount(totalUnits());
+    }
+
+    public long units(BigDecimal amount) {
+        try {
+            return amount.setScale(scale).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount does not fit " + scale + " decimal places in a long: " + amount);
+        }
+    }
+
+    public BigDecimal amount(long units) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    private void checkAccount(int account) {
+        if (account < 0 || account >= size) throw new IllegalArgumentException("Unknown account ordinal: " + account);
+    }
+
+    private static void checkUnits(long units) {
+        if (units <= 0) throw new IllegalArgumentException("amount must be positive");
+    }
+}
@@ -0,0 +1,306 @@
+package com.rbleggi.corebankledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+final class LedgerEvent {
+    JournalRecordType type;
+    int account;
+    int counterparty;
+    long units;
+    String id;
+}
+
+interface LedgerEventHandler {
+    void onEvent(LedgerEvent event, long sequence, boolean endOfBatch) throws Exception;
+}
+
+class LedgerEngine implements AutoCloseable {
+    private final FixedPointLedger ledger;
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final LedgerEvent[] ring;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicInteger publishing = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<EventProcessor> processors = new ArrayList<>();
+    private final EventProcessor businessLogic;
+    private volatile long gatingSequence = -1;
+    private volatile long finalSequence = Long.MAX_VALUE;
+    private volatile long rejected;
+    private volatile boolean isRunning = true;
+    private int nextOrdinal;
+
+    LedgerEngine(FixedPointLedger ledger, int ringSize, LedgerEventHandler... handlers) {
+        if (ringSize < 2 || Integer.bitCount(ringSize) != 1) throw new IllegalArgumentException("ringSize must be a power of two");
+        this.ledger = ledger;
+        this.ring = new LedgerEvent[ringSize];
+        this.published = new AtomicLongArray(ringSize);
+        this.mask = ringSize - 1;
+        for (nextOrdinal = 0; nextOrdinal < ledger.size(); nextOrdinal++) ordinals.put(ledger.id(nextOrdinal), nextOrdinal);
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new LedgerEvent();
+            published.set(i, -1);
+        }
+        businessLogic = new EventProcessor("ledger-business-logic", (event, sequence, endOfBatch) -> {
+            if (!apply(this.ledger, event.type, event.account, event.counterparty, event.units, event.id)) rejected++;
+        });
+        processors.add(businessLogic);
+        for (int i = 0; i < handlers.length; i++) processors.add(new EventProcessor("ledger-consumer-" + i, handlers[i]));
+        processors.forEach(processor -> processor.thread.start());
+    }
+
+    long openAccount(String id, long units) {
+        LedgerJournal.encodedId(id);
+        if (units < 0) throw new IllegalArgumentException("initial balance must not be negative");
+        synchronized (ordinals) {
+            if (ordinals.containsKey(id)) throw new IllegalArgumentException("Account already exists: " + id);
+            if (nextOrdinal == ledger.capacity()) throw new IllegalStateException("Ledger is full");
+            long sequence = publish(JournalRecordType.OPEN, nextOrdinal, nextOrdinal, units, id);
+            ordinals.put(id, nextOrdinal++);
+            return sequence;
+        }
+    }
+
+    int ordinal(String id) {
+        var ordinal = ordinals.get(id);
+        if (ordinal == null) throw new IllegalArgumentException("Unknown account: " + id);
+        return ordinal;
+    }
+
+    long deposit(int account, long units) {
+        return publish(JournalRecordType.DEPOSIT, account, account, units, null);
+    }
+
+    long withdraw(int account, long units) {
+        return publish(JournalRecordType.WITHDRAW, account, account, units, null);
+    }
+
+    long transfer(int from, int to, long units) {
+        return publish(JournalRecordType.TRANSFER, from, to, units, null);
+    }
+
+    long appliedSequence() {
+        return businessLogic.sequence.get();
+    }
+
+    void awaitApplied(long sequence) {
+        int idle = 0;
+        while (businessLogic.sequence.get() < sequence) idle = awaitProgress(idle);
+    }
+
+    long journaledSequence() {
+        return minimumSequence();
+    }
+
+    void awaitJournaled(long sequence) {
+        int idle = 0;
+        while (minimumSequence() < sequence) idle = awaitProgress(idle);
+    }
+
+    Throwable failure() {
+        return failure.get();
+    }
+
+    long rejected() {
+        return rejected;
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        while (publishing.get() > 0) Thread.onSpinWait();
+        finalSequence = claimed.get() - 1;
+        for (var processor : processors) LedgerJournal.joinUninterruptibly(processor.thread);
+    }
+
+    static long replay(Path journal, FixedPointLedger ledger) throws IOException {
+        return LedgerJournal.replay(journal, record ->
+            apply(ledger, record.type(), record.account(), record.counterparty(), record.amount(), record.id()));
+    }
+
+    static LedgerEventHandler replicating(FixedPointLedger replica) {
+        return (event, sequence, endOfBatch) -> apply(replica, event.type, event.account, event.counterparty, event.units, event.id);
+    }
+
+    private static boolean apply(FixedPointLedger ledger, JournalRecordType type, int account, int counterparty, long units, String id) {
+        try {
+            return switch (type) {
+                case OPEN -> {
+                    ledger.createAccount(id, units);
+                    yield true;
+                }
+                case DEPOSIT -> {
+                    ledger.deposit(account, units);
+                    yield true;
+                }
+                case WITHDRAW -> ledger.withdraw(account, units);
+                case TRANSFER -> ledger.transfer(account, counterparty, units);
+                case BATCH -> true;
+            };
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private long publish(JournalRecordType type, int account, int counterparty, long units, String id) {
+        publishing.incrementAndGet();
+        try {
+            if (!isRunning) throw stopped();
+            long sequence = claimed.getAndIncrement();
+            long wrapPoint = sequence - ring.length;
+            if (wrapPoint > gatingSequence) {
+                long minimum;
+                int idle = 0;
+                while (wrapPoint > (minimum = minimumSequence())) idle = awaitProgress(idle);
+                gatingSequence = minimum;
+            }
+            int index = (int) sequence & mask;
+            var event = ring[index];
+            event.type = type;
+            event.account = account;
+            event.counterparty = counterparty;
+            event.units = units;
+            event.id = id;
+            published.setRelease(index, sequence);
+            return sequence;
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private long minimumSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (var processor : processors) minimum = Math.min(minimum, processor.sequence.get());
+        return minimum;
+    }
+
+    private int awaitProgress(int idle) {
+        if (failure.get() != null) throw stopped();
+        return backoff(idle);
+    }
+
+    private IllegalStateException stopped() {
+        var cause = failure.get();
+        if (cause == null) return new IllegalStateException("Engine is closed");
+        return new IllegalStateException("Engine stopped after a handler failed", cause);
+    }
+
+    private static int backoff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+
+    private final class EventProcessor {
+        final AtomicLong sequence = new AtomicLong(-1);
+        final LedgerEventHandler handler;
+        final Thread thread;
+
+        EventProcessor(String name, LedgerEventHandler handler) {
+            this.handler = handler;
+            this.thread = Thread.ofPlatform().name(name).unstarted(this::run);
+        }
+
+        private void run() {
+            long next = 0;
+            int idle = 0;
+            while (true) {
+                long available = next - 1;
+                while (published.getAcquire((int) (available + 1) & mask) == available + 1) available++;
+                if (available < next) {
+                    if (next > finalSequence || failure.get() != null) return;
+                    idle = backoff(idle);
+                    continue;
+                }
+                for (long current = next; current <= available; current++) {
+                    try {
+                        handler.onEvent(ring[(int) current & mask], current, current == available);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        isRunning = false;
+                        return;
+                    }
+                }
+                sequence.setRelease(available);
+                next = available + 1;
+                idle = 0;
+            }
+        }
+    }
+}
+
+class EventJournal implements LedgerEventHandler, AutoCloseable {
+    private static final int BATCH_RECORDS = 4096;
+    private static final byte[] NO_ID = new byte[0];
+
+    private final FileChannel channel;
+    private final boolean sync;
+    private final long firstSequence;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(LedgerJournal.RECORD_SIZE * BATCH_RECORDS);
+    private final CRC32C crc = new CRC32C();
+    private volatile long syncs;
+
+    private EventJournal(FileChannel channel, boolean sync, long firstSequence) {
+        this.channel = channel;
+        this.sync = sync;
+        this.firstSequence = firstSequence;
+    }
+
+    static EventJournal open(Path path, boolean sync) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new EventJournal(channel, sync, LedgerJournal.truncateTornTail(channel) + 1);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void onEvent(LedgerEvent event, long sequence, boolean endOfBatch) throws IOException {
+        var id = event.id == null ? NO_ID : LedgerJournal.encodedId(event.id);
+        LedgerJournal.encode(buffer, crc, firstSequence + sequence, event.type, event.account, event.counterparty, event.units, id);
+        if (endOfBatch || !buffer.hasRemaining()) flush();
+    }
+
+    long syncs() {
+        return syncs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        if (buffer.position() == 0) return;
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        if (sync) {
+            channel.force(false);
+            syncs++;
+        }
+    }
+}
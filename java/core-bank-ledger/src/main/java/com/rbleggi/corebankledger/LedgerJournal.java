@@ -0,0 +1,318 @@
+package com.rbleggi.corebankledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+enum JournalRecordType {
+    OPEN, DEPOSIT, WITHDRAW, TRANSFER, BATCH
+}
+
+record JournalRecord(long sequence, JournalRecordType type, int account, int counterparty, long amount, String id) {
+}
+
+class LedgerJournal implements AutoCloseable {
+    static final int AMOUNT_SCALE = 4;
+    static final int RECORD_SIZE = 64;
+    static final int MAX_ID_BYTES = 28;
+    private static final int CRC_OFFSET = RECORD_SIZE - Integer.BYTES;
+    private static final int BATCH_RECORDS = 4096;
+    private static final byte[] NO_ID = new byte[0];
+
+    private final FileChannel channel;
+    private final long recoveredEnd;
+    private final long recoveredSequence;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasRecords = lock.newCondition();
+    private final Condition hasSpace = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private final Thread writer;
+    private ByteBuffer active = ByteBuffer.allocateDirect(RECORD_SIZE * BATCH_RECORDS);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(RECORD_SIZE * BATCH_RECORDS);
+    private long appendedSequence;
+    private long durableSequence;
+    private long syncs;
+    private IOException failure;
+    private Thread batchOwner;
+    private boolean closed;
+
+    private LedgerJournal(FileChannel channel, long recoveredEnd, long recoveredSequence) {
+        this.channel = channel;
+        this.recoveredEnd = recoveredEnd;
+        this.recoveredSequence = recoveredSequence;
+        this.appendedSequence = recoveredSequence;
+        this.durableSequence = recoveredSequence;
+        this.writer = Thread.ofPlatform().name("ledger-journal").daemon().start(this::writerLoop);
+    }
+
+    static LedgerJournal open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long sequence = truncateTornTail(channel);
+            return new LedgerJournal(channel, sequence * RECORD_SIZE, sequence);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    ConcurrentLedger recover(int capacity) throws IOException {
+        var ledger = new ConcurrentLedger(capacity, ConcurrentLedger.DEFAULT_STRIPES, this);
+        scan(channel, recoveredEnd, ledger::replay);
+        return ledger;
+    }
+
+    long recoveredSequence() {
+        return recoveredSequence;
+    }
+
+    static BigDecimal scaled(BigDecimal amount) {
+        try {
+            var scaled = amount.setScale(AMOUNT_SCALE);
+            scaled.unscaledValue().longValueExact();
+            return scaled;
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount does not fit the journal format: " + amount);
+        }
+    }
+
+    static byte[] encodedId(String id) {
+        var bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_BYTES) throw new IllegalArgumentException("account id longer than " + MAX_ID_BYTES + " bytes: " + id);
+        return bytes;
+    }
+
+    long append(JournalRecordType type, int account, int counterparty, BigDecimal amount, byte[] id) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("Journal is closed");
+            while ((batchOwner != null || active.remaining() < RECORD_SIZE) && failure == null) hasSpace.awaitUninterruptibly();
+            if (failure != null) throw new UncheckedIOException(failure);
+            long sequence = ++appendedSequence;
+            encode(active, crc, sequence, type, account, counterparty, amount.unscaledValue().longValue(), id);
+            hasRecords.signal();
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appendBatch(int[] accounts, BigDecimal[] nets, int count) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("Journal is closed");
+            while (batchOwner != null && failure == null) hasSpace.awaitUninterruptibly();
+            batchOwner = Thread.currentThread();
+            try {
+                long sequence = appendInBatch(JournalRecordType.BATCH, count, count, 0);
+                for (int i = 0; i < count; i++) {
+                    var type = nets[i].signum() > 0 ? JournalRecordType.DEPOSIT : JournalRecordType.WITHDRAW;
+                    sequence = appendInBatch(type, accounts[i], accounts[i], nets[i].unscaledValue().abs().longValue());
+                }
+                return sequence;
+            } finally {
+                batchOwner = null;
+                hasSpace.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) durable.awaitUninterruptibly();
+            if (durableSequence < sequence) throw new UncheckedIOException(failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long syncs() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            hasRecords.signal();
+        } finally {
+            lock.unlock();
+        }
+        joinUninterruptibly(writer);
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private long appendInBatch(JournalRecordType type, int account, int counterparty, long amount) {
+        while (active.remaining() < RECORD_SIZE && failure == null) hasSpace.awaitUninterruptibly();
+        if (failure != null) throw new UncheckedIOException(failure);
+        long sequence = ++appendedSequence;
+        encode(active, crc, sequence, type, account, counterparty, amount, NO_ID);
+        hasRecords.signal();
+        return sequence;
+    }
+
+    private void writerLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSequence;
+            lock.lock();
+            try {
+                while (active.position() == 0 && !closed) hasRecords.awaitUninterruptibly();
+                if (active.position() == 0) return;
+                batch = active;
+                active = spare;
+                spare = batch;
+                batchSequence = appendedSequence;
+                hasSpace.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) channel.write(batch);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.clear();
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSequence = batchSequence;
+                    syncs++;
+                }
+                durable.signalAll();
+                if (error != null) {
+                    hasSpace.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static void encode(ByteBuffer buffer, CRC32C crc, long sequence, JournalRecordType type, int account, int counterparty, long amount, byte[] id) {
+        int start = buffer.position();
+        buffer.putLong(sequence)
+            .put((byte) type.ordinal())
+            .put((byte) id.length)
+            .putShort((short) 0)
+            .putInt(account)
+            .putInt(counterparty)
+            .putInt(0)
+            .putLong(amount)
+            .put(id)
+            .position(start + CRC_OFFSET);
+        crc.reset();
+        crc.update(buffer.slice(start, CRC_OFFSET));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    static long truncateTornTail(FileChannel channel) throws IOException {
+        var last = new long[1];
+        scan(channel, Long.MAX_VALUE, record -> last[0] = record.sequence());
+        channel.truncate(last[0] * RECORD_SIZE);
+        channel.position(last[0] * RECORD_SIZE);
+        return last[0];
+    }
+
+    static long replay(Path path, Consumer<JournalRecord> visitor) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var last = new long[1];
+            scan(channel, Long.MAX_VALUE, record -> {
+                visitor.accept(record);
+                last[0] = record.sequence();
+            });
+            return last[0];
+        }
+    }
+
+    private static void scan(FileChannel channel, long limit, Consumer<JournalRecord> visitor) throws IOException {
+        var group = new ArrayList<JournalRecord>();
+        var remaining = new int[1];
+        scanRecords(channel, limit, record -> {
+            if (remaining[0] == 0 && record.type() != JournalRecordType.BATCH) {
+                visitor.accept(record);
+                return;
+            }
+            if (remaining[0] == 0) {
+                remaining[0] = record.account() + 1;
+                group.clear();
+            }
+            group.add(record);
+            if (--remaining[0] == 0) group.forEach(visitor);
+        });
+    }
+
+    private static void scanRecords(FileChannel channel, long limit, Consumer<JournalRecord> visitor) throws IOException {
+        var buffer = ByteBuffer.allocate(RECORD_SIZE * BATCH_RECORDS);
+        var crc = new CRC32C();
+        var types = JournalRecordType.values();
+        long position = 0;
+        long expected = 1;
+        while (position < limit) {
+            buffer.clear();
+            if (limit - position < buffer.capacity()) buffer.limit((int) (limit - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) return;
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.slice(start, CRC_OFFSET));
+                long sequence = buffer.getLong(start);
+                int type = buffer.get(start + 8);
+                int idLength = buffer.get(start + 9);
+                if ((int) crc.getValue() != buffer.getInt(start + CRC_OFFSET) || sequence != expected
+                    || type < 0 || type >= types.length || idLength < 0 || idLength > MAX_ID_BYTES) return;
+                var id = new byte[idLength];
+                buffer.get(start + 32, id);
+                visitor.accept(new JournalRecord(sequence, types[type], buffer.getInt(start + 12), buffer.getInt(start + 16),
+                    buffer.getLong(start + 24), new String(id, StandardCharsets.UTF_8)));
+                buffer.position(start + RECORD_SIZE);
+                position += RECORD_SIZE;
+                expected++;
+            }
+            if (buffer.position() == 0) return;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.rbleggi.corebankledger;
+
+import java.time.InstantSource;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+record Posting(long sequence, long timestamp, JournalRecordType type, int account, int counterparty, long units, long balance) {
+}
+
+record Statement(int account, long openingBalance, long closingBalance, List<Posting> postings) {
+}
+
+class PostingHistory {
+    static final int DEFAULT_SNAPSHOT_INTERVAL = 1024;
+
+    private static final JournalRecordType[] TYPES = JournalRecordType.values();
+
+    private final InstantSource clock;
+    private final int snapshotInterval;
+    private AccountHistory[] accounts = new AccountHistory[16];
+    private long sequence;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public PostingHistory() {
+        this(InstantSource.system(), DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public PostingHistory(InstantSource clock, int snapshotInterval) {
+        if (snapshotInterval < 1) throw new IllegalArgumentException("snapshotInterval must be positive");
+        this.clock = clock;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public long record(JournalRecordType type, int account, int counterparty, long units) {
+        if (account < 0) throw new IllegalArgumentException("Unknown account ordinal: " + account);
+        if (account >= accounts.length) accounts = Arrays.copyOf(accounts, Math.max(accounts.length * 2, account + 1));
+        var history = accounts[account];
+        if (history == null) history = accounts[account] = new AccountHistory();
+        lastTimestamp = Math.max(lastTimestamp, clock.millis());
+        history.append(++sequence, lastTimestamp, type, counterparty, units, snapshotInterval);
+        return sequence;
+    }
+
+    public long lastSequence() {
+        return sequence;
+    }
+
+    public int postingCount(int account) {
+        var history = history(account);
+        return history == null ? 0 : history.size;
+    }
+
+    public long balanceAt(int account, long sequence) {
+        var history = history(account);
+        return history == null ? 0 : history.balanceAfter(lastAtOrBefore(history.sequences, history.size, sequence), snapshotInterval);
+    }
+
+    public long balanceAsOf(int account, long epochMillis) {
+        var history = history(account);
+        return history == null ? 0 : history.balanceAfter(lastAtOrBefore(history.timestamps, history.size, epochMillis), snapshotInterval);
+    }
+
+    public Statement statement(int account, long fromMillis, long toMillis) {
+        if (fromMillis > toMillis) throw new IllegalArgumentException("fromMillis must not be after toMillis");
+        var history = history(account);
+        if (history == null) return new Statement(account, 0, 0, List.of());
+        int first = fromMillis == Long.MIN_VALUE ? 0 : lastAtOrBefore(history.timestamps, history.size, fromMillis - 1) + 1;
+        int last = lastAtOrBefore(history.timestamps, history.size, toMillis);
+        long opening = history.balanceAfter(first - 1, snapshotInterval);
+        var balances = new long[Math.max(0, last - first + 1)];
+        long balance = opening;
+        for (int i = 0; i < balances.length; i++) balances[i] = balance += history.units[first + i];
+        return new Statement(account, opening, balance, new StatementPostings(history, account, first, balances));
+    }
+
+    private AccountHistory history(int account) {
+        return account >= 0 && account < accounts.length ? accounts[account] : null;
+    }
+
+    private static int lastAtOrBefore(long[] values, int size, long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private static final class StatementPostings extends AbstractList<Posting> implements RandomAccess {
+        private final long[] sequences;
+        private final long[] timestamps;
+        private final long[] units;
+        private final int[] counterparties;
+        private final byte[] types;
+        private final int account;
+        private final int first;
+        private final long[] balances;
+
+        StatementPostings(AccountHistory history, int account, int first, long[] balances) {
+            this.sequences = history.sequences;
+            this.timestamps = history.timestamps;
+            this.units = history.units;
+            this.counterparties = history.counterparties;
+            this.types = history.types;
+            this.account = account;
+            this.first = first;
+            this.balances = balances;
+        }
+
+        @Override
+        public Posting get(int index) {
+            Objects.checkIndex(index, balances.length);
+            int i = first + index;
+            return new Posting(sequences[i], timestamps[i], TYPES[types[i]], account, counterparties[i], units[i], balances[index]);
+        }
+
+        @Override
+        public int size() {
+            return balances.length;
+        }
+    }
+
+    private static final class AccountHistory {
+        long[] sequences;
+        long[] timestamps;
+        long[] units;
+        int[] counterparties;
+        byte[] types;
+        long[] snapshots;
+        long balance;
+        int size;
+
+        AccountHistory() {
+            sequences = new long[8];
+            timestamps = new long[8];
+            units = new long[8];
+            counterparties = new int[8];
+            types = new byte[8];
+            snapshots = new long[2];
+        }
+
+        void append(long sequence, long timestamp, JournalRecordType type, int counterparty, long delta, int snapshotInterval) {
+            if (size == sequences.length) {
+                int capacity = size * 2;
+                sequences = Arrays.copyOf(sequences, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                units = Arrays.copyOf(units, capacity);
+                counterparties = Arrays.copyOf(counterparties, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            sequences[size] = sequence;
+            timestamps[size] = timestamp;
+            units[size] = delta;
+            counterparties[size] = counterparty;
+            types[size] = (byte) type.ordinal();
+            balance = Math.addExact(balance, delta);
+            size++;
+            if (size % snapshotInterval == 0) {
+                int snapshot = size / snapshotInterval;
+                if (snapshot == snapshots.length) snapshots = Arrays.copyOf(snapshots, snapshots.length * 2);
+                snapshots[snapshot] = balance;
+            }
+        }
+
+        long balanceAfter(int index, int snapshotInterval) {
+            int count = index + 1;
+            int snapshot = count / snapshotInterval;
+            long total = snapshots[snapshot];
+            for (int i = snapshot * snapshotInterval; i < count; i++) total += units[i];
+            return total;
+        }
+    }
+}
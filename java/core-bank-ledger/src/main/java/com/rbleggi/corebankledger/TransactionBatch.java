@@ -0,0 +1,69 @@
+package com.rbleggi.corebankledger;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+class TransactionBatch {
+    static final int NO_ACCOUNT = -1;
+
+    private int[] debits;
+    private int[] credits;
+    private BigDecimal[] amounts;
+    private int size;
+
+    public TransactionBatch() {
+        this(16);
+    }
+
+    public TransactionBatch(int expectedLegs) {
+        if (expectedLegs < 1) throw new IllegalArgumentException("expectedLegs must be positive");
+        debits = new int[expectedLegs];
+        credits = new int[expectedLegs];
+        amounts = new BigDecimal[expectedLegs];
+    }
+
+    public TransactionBatch transfer(int from, int to, BigDecimal amount) {
+        if (from < 0 || to < 0) throw new IllegalArgumentException("account ordinals must not be negative");
+        return add(from, to, amount);
+    }
+
+    public TransactionBatch deposit(int account, BigDecimal amount) {
+        if (account < 0) throw new IllegalArgumentException("account ordinals must not be negative");
+        return add(NO_ACCOUNT, account, amount);
+    }
+
+    public TransactionBatch withdraw(int account, BigDecimal amount) {
+        if (account < 0) throw new IllegalArgumentException("account ordinals must not be negative");
+        return add(account, NO_ACCOUNT, amount);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    int debit(int leg) {
+        return debits[leg];
+    }
+
+    int credit(int leg) {
+        return credits[leg];
+    }
+
+    BigDecimal amount(int leg) {
+        return amounts[leg];
+    }
+
+    private TransactionBatch add(int debit, int credit, BigDecimal amount) {
+        if (amount.signum() <= 0) throw new IllegalArgumentException("amount must be positive");
+        if (size == amounts.length) {
+            debits = Arrays.copyOf(debits, size * 2);
+            credits = Arrays.copyOf(credits, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+        }
+        debits[size] = debit;
+        credits[size] = credit;
+        amounts[size] = amount;
+        size++;
+        return this;
+    }
+}
@@ -1,8 +1,23 @@
 package com.rbleggi.corebankledger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -181,4 +196,558 @@ class CoreBankLedgerTest {
         new Withdraw(bob, new BigDecimal("200"), ledger).execute();
         assertEquals(new BigDecimal("100"), bob.getBalance());
     }
+
+    @Test
+    void testConcurrentLedgerOperations() {
+        var ledger = new ConcurrentLedger(4);
+        ledger.createAccount("Alice", new BigDecimal("100"));
+        ledger.createAccount("Bob");
+        ledger.deposit("Bob", new BigDecimal("25"));
+        assertTrue(ledger.transfer("Alice", "Bob", new BigDecimal("40")));
+        assertFalse(ledger.withdraw("Bob", new BigDecimal("100")));
+        assertTrue(ledger.withdraw("Bob", new BigDecimal("15")));
+        assertFalse(ledger.transfer("Alice", "Bob", new BigDecimal("61")));
+        assertEquals(new BigDecimal("60"), ledger.balance("Alice"));
+        assertEquals(new BigDecimal("50"), ledger.balance("Bob"));
+        assertEquals(new BigDecimal("110"), ledger.totalBalance());
+    }
+
+    @Test
+    void testConcurrentLedgerValidation() {
+        var ledger = new ConcurrentLedger(1, 2);
+        ledger.createAccount("Alice", new BigDecimal("10"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.createAccount("Alice"));
+        assertThrows(IllegalStateException.class, () -> ledger.createAccount("Bob"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit("Alice", BigDecimal.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> ledger.withdraw("Alice", new BigDecimal("-1")));
+        assertThrows(IllegalArgumentException.class, () -> ledger.transfer("Alice", "Nobody", BigDecimal.ONE));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentLedger(1, 3));
+        assertTrue(ledger.transfer("Alice", "Alice", BigDecimal.TEN));
+        assertEquals(new BigDecimal("10"), ledger.balance("Alice"));
+    }
+
+    @Test
+    void testConcurrentTransfersConserveTotalBalance() throws InterruptedException {
+        int accounts = 64;
+        var ledger = new ConcurrentLedger(accounts, 16);
+        for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, new BigDecimal("1000"));
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                var random = new SplittableRandom(seed);
+                awaitQuietly(start);
+                for (int i = 0; i < 50_000; i++) {
+                    int from = random.nextInt(accounts);
+                    int to = random.nextInt(2) == 0 ? (from + 1) % accounts : (from + accounts - 1) % accounts;
+                    ledger.transfer(from, to, BigDecimal.valueOf(random.nextInt(1, 500)));
+                }
+            }));
+        }
+        start.countDown();
+        for (var thread : threads) {
+            thread.join(30_000);
+            assertFalse(thread.isAlive(), "transfers deadlocked");
+        }
+        assertEquals(new BigDecimal("64000"), ledger.totalBalance());
+        for (int i = 0; i < accounts; i++) assertTrue(ledger.balance(i).signum() >= 0);
+    }
+
+    @Test
+    void testConcurrentMixedOperationsBalanceTotals() throws InterruptedException {
+        int accounts = 1_000;
+        var ledger = new ConcurrentLedger(accounts);
+        for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, new BigDecimal("100"));
+        var deposited = new AtomicLong();
+        var withdrawn = new AtomicLong();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                var random = new SplittableRandom(seed);
+                for (int i = 0; i < 50_000; i++) {
+                    int account = random.nextInt(accounts);
+                    int amount = random.nextInt(1, 100);
+                    switch (random.nextInt(4)) {
+                        case 0 -> {
+                            ledger.deposit(account, BigDecimal.valueOf(amount));
+                            deposited.addAndGet(amount);
+                        }
+                        case 1 -> {
+                            if (ledger.withdraw(account, BigDecimal.valueOf(amount))) withdrawn.addAndGet(amount);
+                        }
+                        default -> ledger.transfer(account, random.nextInt(accounts), BigDecimal.valueOf(amount));
+                    }
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.join(30_000);
+            assertFalse(thread.isAlive(), "operations deadlocked");
+        }
+        assertEquals(BigDecimal.valueOf(100_000 + deposited.get() - withdrawn.get()), ledger.totalBalance());
+    }
+
+    @Test
+    void testJournalRecoversBalances(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("ledger.wal");
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(16);
+            ledger.createAccount("Alice", new BigDecimal("100"));
+            ledger.createAccount("Bob");
+            ledger.deposit("Bob", new BigDecimal("12.34"));
+            assertTrue(ledger.transfer("Alice", "Bob", new BigDecimal("40.5")));
+            assertTrue(ledger.withdraw("Bob", new BigDecimal("2.84")));
+            assertFalse(ledger.withdraw("Alice", new BigDecimal("1000")));
+        }
+        assertEquals(5 * LedgerJournal.RECORD_SIZE, Files.size(path));
+
+        try (var journal = LedgerJournal.open(path)) {
+            assertEquals(5, journal.recoveredSequence());
+            var ledger = journal.recover(16);
+            assertEquals(new BigDecimal("59.5000"), ledger.balance("Alice"));
+            assertEquals(new BigDecimal("50.0000"), ledger.balance("Bob"));
+            ledger.deposit("Alice", new BigDecimal("0.5"));
+        }
+
+        try (var journal = LedgerJournal.open(path)) {
+            assertEquals(new BigDecimal("60.0000"), journal.recover(16).balance("Alice"));
+        }
+    }
+
+    @Test
+    void testJournalDiscardsTornTail(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("ledger.wal");
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(4);
+            ledger.createAccount("Alice", new BigDecimal("100"));
+            ledger.deposit("Alice", new BigDecimal("50"));
+            ledger.deposit("Alice", new BigDecimal("25"));
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 2L * LedgerJournal.RECORD_SIZE + 30);
+            channel.write(ByteBuffer.wrap(new byte[10]), 3L * LedgerJournal.RECORD_SIZE);
+        }
+
+        try (var journal = LedgerJournal.open(path)) {
+            assertEquals(2, journal.recoveredSequence());
+            var ledger = journal.recover(4);
+            assertEquals(new BigDecimal("150.0000"), ledger.balance("Alice"));
+            ledger.deposit("Alice", new BigDecimal("1"));
+        }
+        try (var journal = LedgerJournal.open(path)) {
+            assertEquals(3, journal.recoveredSequence());
+            assertEquals(new BigDecimal("151.0000"), journal.recover(4).balance("Alice"));
+        }
+    }
+
+    @Test
+    void testJournalValidatesBeforeWriting(@TempDir Path dir) throws Exception {
+        try (var journal = LedgerJournal.open(dir.resolve("ledger.wal"))) {
+            var ledger = journal.recover(4);
+            ledger.createAccount("Alice", new BigDecimal("10"));
+            assertThrows(IllegalArgumentException.class, () -> ledger.deposit("Alice", new BigDecimal("0.00001")));
+            assertThrows(IllegalArgumentException.class, () -> ledger.createAccount("an-account-id-that-is-far-too-long"));
+            assertEquals(new BigDecimal("10.0000"), ledger.balance("Alice"));
+            assertEquals(1, ledger.size());
+        }
+    }
+
+    @Test
+    void testJournalGroupCommitsConcurrentTransfers(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("ledger.wal");
+        int accounts = 32;
+        int threadCount = 8;
+        int transfers = 500;
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(accounts);
+            for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, new BigDecimal("1000"));
+            long syncsBefore = journal.syncs();
+            var threads = new ArrayList<Thread>();
+            for (int t = 0; t < threadCount; t++) {
+                long seed = t;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    var random = new SplittableRandom(seed);
+                    for (int i = 0; i < transfers; i++) {
+                        ledger.transfer(random.nextInt(accounts), random.nextInt(accounts), BigDecimal.valueOf(random.nextInt(1, 50)));
+                    }
+                }));
+            }
+            for (var thread : threads) thread.join();
+            assertTrue(journal.syncs() - syncsBefore < threadCount * transfers);
+        }
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(accounts);
+            assertEquals(accounts, ledger.size());
+            assertEquals(new BigDecimal("32000.0000"), ledger.totalBalance());
+        }
+    }
+
+    @Test
+    void testFixedPointLedgerOperations() {
+        var ledger = new FixedPointLedger(4);
+        var alice = ledger.createAccount("Alice", new BigDecimal("100.25"));
+        var bob = ledger.createAccount("Bob");
+        assertEquals(10_025, ledger.balanceUnits(alice));
+        ledger.deposit(bob, 150);
+        assertTrue(ledger.transfer(alice, bob, 25));
+        assertFalse(ledger.withdraw(bob, 176));
+        assertTrue(ledger.withdraw("Bob", new BigDecimal("0.75")));
+        assertFalse(ledger.transfer("Alice", "Bob", new BigDecimal("100.01")));
+        assertEquals(new BigDecimal("100.00"), ledger.balance("Alice"));
+        assertEquals(new BigDecimal("1.00"), ledger.balance(bob));
+        assertEquals(new BigDecimal("101.00"), ledger.totalBalance());
+    }
+
+    @Test
+    void testFixedPointLedgerValidation() {
+        var ledger = new FixedPointLedger(2);
+        var alice = ledger.createAccount("Alice", new BigDecimal("10"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.createAccount("Alice"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.createAccount("Bob", new BigDecimal("-1")));
+        assertThrows(IllegalArgumentException.class, () -> ledger.units(new BigDecimal("0.001")));
+        assertThrows(IllegalArgumentException.class, () -> ledger.units(new BigDecimal("1e30")));
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit(alice, 0));
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit(1, 5));
+        assertEquals(new BigDecimal("10.00"), ledger.balance(alice));
+    }
+
+    @Test
+    void testFixedPointLedgerDetectsOverflow() {
+        var ledger = new FixedPointLedger(2, 0);
+        var rich = ledger.createAccount("Rich", BigDecimal.valueOf(Long.MAX_VALUE - 10));
+        var poor = ledger.createAccount("Poor", BigDecimal.valueOf(100));
+        assertThrows(ArithmeticException.class, () -> ledger.deposit(rich, 11));
+        assertThrows(ArithmeticException.class, () -> ledger.transfer(poor, rich, 50));
+        assertEquals(Long.MAX_VALUE - 10, ledger.balanceUnits(rich));
+        assertEquals(100, ledger.balanceUnits(poor));
+        assertThrows(ArithmeticException.class, ledger::totalUnits);
+    }
+
+    @Test
+    void testFixedPointPostingDoesNotAllocate() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var ledger = new FixedPointLedger(1_000);
+        for (int i = 0; i < 1_000; i++) ledger.createAccount("ACC-" + i, new BigDecimal("1000"));
+        var random = new SplittableRandom(7);
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            int account = random.nextInt(1_000);
+            switch (random.nextInt(4)) {
+                case 0 -> ledger.deposit(account, random.nextInt(1, 10_000));
+                case 1 -> ledger.withdraw(account, random.nextInt(1, 10_000));
+                default -> ledger.transfer(account, random.nextInt(1_000), random.nextInt(1, 10_000));
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated < 64 * 1024, "posting allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void testLedgerEngineAppliesCommandsInSequence() throws InterruptedException {
+        var ledger = new FixedPointLedger(4);
+        var engine = new LedgerEngine(ledger, 8);
+        engine.openAccount("Alice", 10_000);
+        engine.openAccount("Bob", 0);
+        int alice = engine.ordinal("Alice");
+        int bob = engine.ordinal("Bob");
+        assertEquals(0, alice);
+        assertEquals(1, bob);
+        assertThrows(IllegalArgumentException.class, () -> engine.openAccount("Bob", 0));
+        assertThrows(IllegalArgumentException.class, () -> engine.ordinal("Carol"));
+        for (int i = 0; i < 20; i++) engine.deposit(bob, 5);
+        engine.transfer(alice, bob, 2_500);
+        engine.withdraw(bob, 1_000_000);
+        long last = engine.withdraw(bob, 600);
+        engine.awaitApplied(last);
+        assertEquals(last, engine.appliedSequence());
+        assertEquals(1, engine.rejected());
+        engine.close();
+        assertEquals(alice, ledger.ordinal("Alice"));
+        assertEquals(bob, ledger.ordinal("Bob"));
+        assertEquals(7_500, ledger.balanceUnits(alice));
+        assertEquals(2_000, ledger.balanceUnits(bob));
+        assertThrows(IllegalStateException.class, () -> engine.deposit(alice, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LedgerEngine(ledger, 6));
+    }
+
+    @Test
+    void testLedgerEngineReplicatesAndReplaysDeterministically(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("engine.wal");
+        int accounts = 100;
+        var ledger = new FixedPointLedger(accounts);
+        var replica = new FixedPointLedger(accounts);
+        long published;
+        try (var journal = EventJournal.open(path, true);
+             var engine = new LedgerEngine(ledger, 1024, journal, LedgerEngine.replicating(replica))) {
+            for (int i = 0; i < accounts; i++) engine.openAccount("ACC-" + i, 1_000);
+            var threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                long seed = t;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    var random = new SplittableRandom(seed);
+                    for (int i = 0; i < 20_000; i++) {
+                        int account = random.nextInt(accounts);
+                        long units = random.nextLong(1, 500);
+                        switch (random.nextInt(4)) {
+                            case 0 -> engine.deposit(account, units);
+                            case 1 -> engine.withdraw(account, units);
+                            default -> engine.transfer(account, random.nextInt(accounts), units);
+                        }
+                    }
+                }));
+            }
+            for (var thread : threads) thread.join();
+            published = accounts + 4 * 20_000;
+        }
+
+        var replayed = new FixedPointLedger(accounts);
+        assertEquals(published, LedgerEngine.replay(path, replayed));
+        assertEquals(accounts, replayed.size());
+        for (int i = 0; i < accounts; i++) {
+            assertEquals(ledger.balanceUnits(i), replica.balanceUnits(i));
+            assertEquals(ledger.balanceUnits(i), replayed.balanceUnits(i));
+        }
+        assertEquals(ledger.totalUnits(), replayed.totalUnits());
+    }
+
+    @Test
+    void testLedgerEngineStopsWhenAHandlerFails() throws Exception {
+        var ledger = new FixedPointLedger(2);
+        LedgerEventHandler journal = (event, sequence, endOfBatch) -> {
+            if (sequence == 2) throw new IOException("disk full");
+        };
+        try (var engine = new LedgerEngine(ledger, 4, journal)) {
+            engine.openAccount("Alice", 100);
+            engine.awaitJournaled(engine.deposit(0, 50));
+            assertEquals(1, engine.journaledSequence());
+
+            long failed = engine.deposit(0, 25);
+            var error = assertThrows(IllegalStateException.class, () -> engine.awaitJournaled(failed));
+            assertInstanceOf(IOException.class, error.getCause());
+            assertInstanceOf(IOException.class, engine.failure());
+            assertEquals(1, engine.journaledSequence());
+            assertThrows(IllegalStateException.class, () -> engine.deposit(0, 1));
+        }
+
+        LedgerEventHandler failsEarly = (event, sequence, endOfBatch) -> {
+            if (sequence == 0) throw new IOException("disk full");
+        };
+        var engine = new LedgerEngine(new FixedPointLedger(2), 4, failsEarly);
+        engine.openAccount("Alice", 100);
+        var stopped = assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 8; i++) engine.deposit(0, 1);
+        });
+        assertInstanceOf(IOException.class, stopped.getCause());
+        assertTimeoutPreemptively(Duration.ofSeconds(5), engine::close);
+    }
+
+    @Test
+    void testLedgerEngineContinuesJournalAfterReplay(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("engine.wal");
+        try (var journal = EventJournal.open(path, false); var engine = new LedgerEngine(new FixedPointLedger(2), 4, journal)) {
+            engine.openAccount("Alice", 100);
+            engine.deposit(0, 50);
+        }
+        var recovered = new FixedPointLedger(2);
+        assertEquals(2, LedgerEngine.replay(path, recovered));
+        try (var journal = EventJournal.open(path, false); var engine = new LedgerEngine(recovered, 4, journal)) {
+            engine.withdraw(engine.ordinal("Alice"), 30);
+            engine.openAccount("Bob", 10);
+            assertEquals(1, engine.ordinal("Bob"));
+            assertThrows(IllegalStateException.class, () -> engine.openAccount("Carol", 0));
+        }
+        assertEquals(120, recovered.balanceUnits(0));
+
+        var replayed = new FixedPointLedger(2);
+        assertEquals(4, LedgerEngine.replay(path, replayed));
+        assertEquals(120, replayed.balanceUnits(0));
+        assertEquals(1, replayed.ordinal("Bob"));
+    }
+
+    @Test
+    void testPostingHistoryPointInTimeQueries() {
+        var now = new long[]{1_000};
+        var history = new PostingHistory(() -> Instant.ofEpochMilli(now[0]), 2);
+        var ledger = new FixedPointLedger(4, 2, history);
+        var alice = ledger.createAccount("Alice", new BigDecimal("100"));
+        var bob = ledger.createAccount("Bob");
+        now[0] = 2_000;
+        ledger.deposit(alice, 5_000);
+        now[0] = 3_000;
+        assertTrue(ledger.transfer(alice, bob, 7_000));
+        assertFalse(ledger.withdraw(bob, 8_000));
+        now[0] = 4_000;
+        assertTrue(ledger.withdraw(bob, 1_000));
+
+        assertEquals(5, history.lastSequence());
+        assertEquals(3, history.postingCount(alice));
+        assertEquals(10_000, history.balanceAt(alice, 1));
+        assertEquals(15_000, history.balanceAt(alice, 2));
+        assertEquals(8_000, history.balanceAt(alice, 3));
+        assertEquals(8_000, history.balanceAt(alice, 5));
+        assertEquals(0, history.balanceAt(bob, 3));
+        assertEquals(7_000, history.balanceAt(bob, 4));
+        assertEquals(0, history.balanceAsOf(alice, 999));
+        assertEquals(15_000, history.balanceAsOf(alice, 2_999));
+        assertEquals(6_000, history.balanceAsOf(bob, 4_000));
+
+        var statement = history.statement(bob, 3_000, 4_000);
+        assertEquals(0, statement.openingBalance());
+        assertEquals(6_000, statement.closingBalance());
+        assertEquals(2, statement.postings().size());
+        assertEquals(new Posting(4, 3_000, JournalRecordType.TRANSFER, bob, alice, 7_000, 7_000), statement.postings().get(0));
+        assertEquals(new Posting(5, 4_000, JournalRecordType.WITHDRAW, bob, bob, -1_000, 6_000), statement.postings().get(1));
+        assertEquals(0, history.statement(3, 0, 10_000).postings().size());
+        assertThrows(IllegalArgumentException.class, () -> history.statement(bob, 2, 1));
+    }
+
+    @Test
+    void testPostingHistoryMatchesFullReplay() {
+        var now = new long[]{0};
+        var history = new PostingHistory(() -> Instant.ofEpochMilli(now[0]), 16);
+        int accounts = 10;
+        var ledger = new FixedPointLedger(accounts, 2, history);
+        for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, BigDecimal.TEN);
+        var random = new SplittableRandom(11);
+        for (int i = 0; i < 20_000; i++) {
+            now[0] += random.nextInt(3);
+            int account = random.nextInt(accounts);
+            switch (random.nextInt(3)) {
+                case 0 -> ledger.deposit(account, random.nextLong(1, 1_000));
+                case 1 -> ledger.withdraw(account, random.nextLong(1, 1_000));
+                default -> ledger.transfer(account, random.nextInt(accounts), random.nextLong(1, 1_000));
+            }
+        }
+        for (int account = 0; account < accounts; account++) {
+            var postings = history.statement(account, Long.MIN_VALUE, Long.MAX_VALUE).postings();
+            assertEquals(ledger.balanceUnits(account), postings.getLast().balance());
+            for (int probe = 0; probe < 200; probe++) {
+                long sequence = random.nextLong(history.lastSequence() + 1);
+                long expected = postings.stream().filter(posting -> posting.sequence() <= sequence).mapToLong(Posting::units).sum();
+                assertEquals(expected, history.balanceAt(account, sequence));
+                long millis = random.nextLong(now[0] + 1);
+                long expectedAt = postings.stream().filter(posting -> posting.timestamp() <= millis).mapToLong(Posting::units).sum();
+                assertEquals(expectedAt, history.balanceAsOf(account, millis));
+            }
+        }
+    }
+
+    @Test
+    void testStatementForAccountWithMillionPostings() {
+        var history = new PostingHistory(InstantSource.system(), PostingHistory.DEFAULT_SNAPSHOT_INTERVAL);
+        for (int i = 0; i < 1_000_000; i++) history.record(JournalRecordType.DEPOSIT, 0, 0, 1);
+        var statement = history.statement(0, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(1_000_000, statement.postings().size());
+        assertEquals(1_000_000, statement.closingBalance());
+        assertEquals(500_000, history.balanceAt(0, 500_000));
+    }
+
+    @Test
+    void testBatchCommitsNetMovements() {
+        var ledger = new ConcurrentLedger(4, 2);
+        var alice = ledger.createAccount("Alice", new BigDecimal("100"));
+        var bob = ledger.createAccount("Bob");
+        var carol = ledger.createAccount("Carol", new BigDecimal("10"));
+        var batch = new TransactionBatch()
+            .transfer(bob, carol, new BigDecimal("60"))
+            .transfer(alice, bob, new BigDecimal("80"))
+            .transfer(carol, alice, new BigDecimal("5"))
+            .deposit(bob, new BigDecimal("1"))
+            .withdraw(carol, new BigDecimal("15"));
+        assertEquals(5, batch.size());
+        assertTrue(ledger.commit(batch));
+        assertEquals(new BigDecimal("25"), ledger.balance(alice));
+        assertEquals(new BigDecimal("21"), ledger.balance(bob));
+        assertEquals(new BigDecimal("50"), ledger.balance(carol));
+        assertEquals(new BigDecimal("96"), ledger.totalBalance());
+        assertTrue(ledger.commit(new TransactionBatch()));
+    }
+
+    @Test
+    void testBatchRollsBackWhenAnyAccountWouldGoNegative() {
+        var ledger = new ConcurrentLedger(4);
+        var alice = ledger.createAccount("Alice", new BigDecimal("100"));
+        var bob = ledger.createAccount("Bob", new BigDecimal("5"));
+        var batch = new TransactionBatch()
+            .transfer(alice, bob, new BigDecimal("50"))
+            .withdraw(bob, new BigDecimal("56"));
+        assertFalse(ledger.commit(batch));
+        assertEquals(new BigDecimal("100"), ledger.balance(alice));
+        assertEquals(new BigDecimal("5"), ledger.balance(bob));
+        assertThrows(IllegalArgumentException.class, () -> ledger.commit(new TransactionBatch().transfer(alice, 3, BigDecimal.ONE)));
+        assertThrows(IllegalArgumentException.class, () -> new TransactionBatch().transfer(alice, bob, BigDecimal.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new TransactionBatch().deposit(-1, BigDecimal.ONE));
+        assertEquals(new BigDecimal("100"), ledger.balance(alice));
+    }
+
+    @Test
+    void testConcurrentBatchesConserveTotalBalance() throws InterruptedException {
+        int accounts = 64;
+        var ledger = new ConcurrentLedger(accounts, 16);
+        for (int i = 0; i < accounts; i++) ledger.createAccount("ACC-" + i, new BigDecimal("1000"));
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                var random = new SplittableRandom(seed);
+                for (int i = 0; i < 2_000; i++) {
+                    var batch = new TransactionBatch();
+                    for (int leg = 0; leg < 20; leg++) {
+                        batch.transfer(random.nextInt(accounts), random.nextInt(accounts), BigDecimal.valueOf(random.nextInt(1, 300)));
+                    }
+                    ledger.commit(batch);
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.join(30_000);
+            assertFalse(thread.isAlive(), "batches deadlocked");
+        }
+        assertEquals(new BigDecimal("64000"), ledger.totalBalance());
+        for (int i = 0; i < accounts; i++) assertTrue(ledger.balance(i).signum() >= 0);
+    }
+
+    @Test
+    void testJournalRecoversBatchesAtomically(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("ledger.wal");
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(4);
+            var alice = ledger.createAccount("Alice", new BigDecimal("100"));
+            var bob = ledger.createAccount("Bob");
+            var carol = ledger.createAccount("Carol");
+            assertTrue(ledger.commit(new TransactionBatch().transfer(alice, bob, new BigDecimal("30")).transfer(alice, carol, new BigDecimal("20"))));
+            assertTrue(ledger.commit(new TransactionBatch().transfer(bob, carol, new BigDecimal("10")).transfer(alice, carol, new BigDecimal("1"))));
+        }
+        assertEquals(11 * LedgerJournal.RECORD_SIZE, Files.size(path));
+
+        try (var journal = LedgerJournal.open(path)) {
+            var ledger = journal.recover(4);
+            assertEquals(new BigDecimal("49.0000"), ledger.balance("Alice"));
+            assertEquals(new BigDecimal("20.0000"), ledger.balance("Bob"));
+            assertEquals(new BigDecimal("31.0000"), ledger.balance("Carol"));
+        }
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(10L * LedgerJournal.RECORD_SIZE);
+        }
+        try (var journal = LedgerJournal.open(path)) {
+            assertEquals(7, journal.recoveredSequence());
+            var ledger = journal.recover(4);
+            assertEquals(new BigDecimal("50.0000"), ledger.balance("Alice"));
+            assertEquals(new BigDecimal("30.0000"), ledger.balance("Bob"));
+            assertEquals(new BigDecimal("20.0000"), ledger.balance("Carol"));
+        }
+        assertEquals(7 * LedgerJournal.RECORD_SIZE, Files.size(path));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
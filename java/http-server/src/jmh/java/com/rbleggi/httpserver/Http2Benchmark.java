@@ -0,0 +1,208 @@
+package com.rbleggi.httpserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Http2Benchmark {
+    public static void main(String[] args) throws Exception {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int delayMillis = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        var router = Main.defaultRouter();
+        router.register(HttpMethod.GET, "/slow", (request, params) -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return HttpResponse.text(200, "done");
+        });
+
+        for (var mode : ServerMode.values()) {
+            try (var server = new HttpServer(router, 0, mode)) {
+                Thread.ofPlatform().name("http-server").start(server);
+                run("h2c " + mode, new Http2Client(server.port(), streams, Math.max(1, seconds / 5)), Math.max(1, seconds / 5));
+                run("h2c " + mode, new Http2Client(server.port(), streams, seconds), seconds);
+                run("http/1.1 " + mode, new Http1Client(server.port(), streams, seconds), seconds);
+            }
+        }
+    }
+
+    private static void run(String label, Client client, int seconds) throws IOException {
+        client.run();
+        var latencies = Arrays.copyOf(client.latencies, client.count);
+        Arrays.sort(latencies);
+        System.out.printf("%-26s 1 connection, %d in flight, %ds: %,.0f req/s, p50 %s, p99 %s, max %s%n",
+            label, client.inFlight, seconds, client.count / (double) seconds,
+            millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)), millis(percentile(latencies, 1.0)));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1_000_000.0);
+    }
+
+    private abstract static class Client {
+        final int port;
+        final int inFlight;
+        final long deadline;
+        long[] latencies = new long[1 << 16];
+        int count;
+
+        Client(int port, int inFlight, int seconds) {
+            this.port = port;
+            this.inFlight = inFlight;
+            this.deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        }
+
+        abstract void run() throws IOException;
+
+        void record(long latency) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latency;
+        }
+
+        static void flush(SocketChannel channel, ByteBuffer out) throws IOException {
+            out.flip();
+            while (out.hasRemaining()) channel.write(out);
+            out.clear();
+        }
+
+        static ByteBuffer fill(SocketChannel channel, ByteBuffer in, int bytes) throws IOException {
+            if (in.remaining() >= bytes) return in;
+            in.compact();
+            if (in.capacity() < bytes) in = ByteBuffer.allocate(bytes * 2).put(in.flip());
+            while (in.position() < bytes) {
+                if (channel.read(in) < 0) throw new IOException("server closed connection");
+            }
+            return in.flip();
+        }
+    }
+
+    private static final class Http2Client extends Client {
+        private final HpackEncoder encoder = new HpackEncoder();
+        private final HpackDecoder decoder = new HpackDecoder(4096);
+        private final Map<Integer, Long> started = new HashMap<>();
+        private final ByteBuffer block = ByteBuffer.allocate(256);
+        private int nextStreamId = 1;
+
+        Http2Client(int port, int inFlight, int seconds) {
+            super(port, inFlight, seconds);
+        }
+
+        @Override
+        void run() throws IOException {
+            try (var channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                channel.socket().setTcpNoDelay(true);
+                var out = ByteBuffer.allocate(64 * 1024).put(Http2Connection.PREFACE);
+                frame(out, Http2Connection.SETTINGS, 0, 0, ByteBuffer.allocate(6).putShort((short) 4).putInt(Integer.MAX_VALUE).flip());
+                frame(out, Http2Connection.WINDOW_UPDATE, 0, 0, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE - 65535).flip());
+                for (int i = 0; i < inFlight; i++) request(out);
+                flush(channel, out);
+                var in = ByteBuffer.allocate(64 * 1024).flip();
+                while (!started.isEmpty()) {
+                    in = fill(channel, in, 9);
+                    int length = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8 | (in.get() & 0xff);
+                    int type = in.get();
+                    int flags = in.get();
+                    int streamId = in.getInt() & 0x7fffffff;
+                    in = fill(channel, in, length);
+                    var payload = in.slice(in.position(), length);
+                    in.position(in.position() + length);
+                    if (type == Http2Connection.HEADERS) decoder.decode(payload);
+                    if (type == Http2Connection.SETTINGS && (flags & Http2Connection.FLAG_ACK) == 0) frame(out, Http2Connection.SETTINGS, Http2Connection.FLAG_ACK, 0, null);
+                    if (type == Http2Connection.GOAWAY) throw new IOException("server sent GOAWAY");
+                    if ((type == Http2Connection.HEADERS || type == Http2Connection.DATA) && (flags & Http2Connection.FLAG_END_STREAM) != 0) {
+                        record(System.nanoTime() - started.remove(streamId));
+                        if (System.nanoTime() < deadline) request(out);
+                    }
+                    if (out.position() > 0 && !in.hasRemaining()) flush(channel, out);
+                }
+            }
+        }
+
+        private void request(ByteBuffer out) {
+            block.clear();
+            encoder.encode(List.of(new HeaderField(":method", "GET"), new HeaderField(":scheme", "http"),
+                new HeaderField(":path", "/slow"), new HeaderField(":authority", "localhost")), block);
+            int streamId = nextStreamId;
+            nextStreamId += 2;
+            started.put(streamId, System.nanoTime());
+            frame(out, Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS | Http2Connection.FLAG_END_STREAM, streamId, block.flip());
+        }
+
+        private static void frame(ByteBuffer out, int type, int flags, int streamId, ByteBuffer payload) {
+            int length = payload == null ? 0 : payload.remaining();
+            out.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+            out.put((byte) type).put((byte) flags).putInt(streamId);
+            if (payload != null) out.put(payload);
+        }
+    }
+
+    private static final class Http1Client extends Client {
+        private static final byte[] REQUEST = "GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        private final long[] started;
+        private int head;
+        private int tail;
+
+        Http1Client(int port, int inFlight, int seconds) {
+            super(port, inFlight, seconds);
+            this.started = new long[inFlight];
+        }
+
+        @Override
+        void run() throws IOException {
+            try (var channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                channel.socket().setTcpNoDelay(true);
+                var out = ByteBuffer.allocate(REQUEST.length * inFlight);
+                for (int i = 0; i < inFlight; i++) request(out);
+                flush(channel, out);
+                var in = ByteBuffer.allocate(64 * 1024).flip();
+                int pending = inFlight;
+                while (pending > 0) {
+                    in = fill(channel, in, in.remaining() + 1);
+                    int end;
+                    while ((end = responseEnd(in)) > 0) {
+                        in.position(end);
+                        record(System.nanoTime() - started[head]);
+                        head = (head + 1) % started.length;
+                        pending--;
+                        if (System.nanoTime() < deadline) {
+                            request(out);
+                            pending++;
+                        }
+                    }
+                    if (out.position() > 0) flush(channel, out);
+                }
+            }
+        }
+
+        private void request(ByteBuffer out) {
+            started[tail] = System.nanoTime();
+            tail = (tail + 1) % started.length;
+            out.put(REQUEST);
+        }
+
+        private static int responseEnd(ByteBuffer in) {
+            var text = StandardCharsets.ISO_8859_1.decode(in.duplicate()).toString();
+            int headerEnd = text.indexOf("\r\n\r\n");
+            if (headerEnd < 0) return -1;
+            int lengthAt = text.indexOf("Content-Length: ");
+            int length = Integer.parseInt(text.substring(lengthAt + 16, text.indexOf("\r\n", lengthAt)));
+            int end = headerEnd + 4 + length;
+            return end <= text.length() ? in.position() + end : -1;
+        }
+    }
+}
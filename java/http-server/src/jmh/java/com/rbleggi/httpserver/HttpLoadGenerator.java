@@ -0,0 +1,175 @@
+package com.rbleggi.httpserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class HttpLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int pipeline = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        String path = args.length > 4 ? args[4] : "/ping";
+        var router = Main.defaultRouter();
+        if (args.length > 5) router.fallback(new StaticFileHandler(Path.of(args[5])));
+
+        if (port != 0) {
+            run("127.0.0.1:" + port, port, connections, pipeline, seconds, path);
+            return;
+        }
+        for (var mode : ServerMode.values()) {
+            try (var server = new HttpServer(router, 0, mode)) {
+                Thread.ofPlatform().name("http-server").start(server);
+                run(mode.name(), server.port(), connections, pipeline, Math.max(1, seconds / 5), path);
+                run(mode.name(), server.port(), connections, pipeline, seconds, path);
+            }
+        }
+    }
+
+    private static void run(String label, int port, int connections, int pipeline, int seconds, String path) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        var clients = new ArrayList<Client>();
+        var threads = new ArrayList<Thread>();
+        for (int c = 0; c < connections; c++) {
+            var client = new Client(port, pipeline, path, deadline);
+            clients.add(client);
+            threads.add(Thread.ofPlatform().start(client));
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        report(label, connections, pipeline, seconds, clients);
+    }
+
+    private static void report(String label, int connections, int pipeline, int seconds, List<Client> clients) {
+        long total = clients.stream().mapToLong(client -> client.count).sum();
+        long bytes = clients.stream().mapToLong(client -> client.bytes).sum();
+        var latencies = new long[(int) total];
+        int position = 0;
+        for (var client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, position, client.count);
+            position += client.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-16s %d connections, pipeline %d, %ds: %,.0f req/s, %,.0f MB/s, p50 %s, p99 %s, max %s%n",
+            label, connections, pipeline, seconds, total / (double) seconds, bytes / (double) seconds / (1 << 20),
+            micros(percentile(latencies, 0.50)), micros(percentile(latencies, 0.99)), micros(percentile(latencies, 1.0)));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.0fus", nanos / 1_000.0);
+    }
+
+    private static final class Client implements Runnable {
+        private final int port;
+        private final int pipeline;
+        private final byte[] request;
+        private final long deadline;
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private long bytes;
+        private long bodyRemaining = -1;
+
+        Client(int port, int pipeline, String path, long deadline) {
+            this.port = port;
+            this.pipeline = pipeline;
+            this.request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            try (var channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                channel.socket().setTcpNoDelay(true);
+                var batch = ByteBuffer.allocate(request.length * pipeline);
+                for (int i = 0; i < pipeline; i++) batch.put(request);
+                var in = ByteBuffer.allocateDirect(256 * 1024);
+                while (System.nanoTime() < deadline) {
+                    long sent = System.nanoTime();
+                    batch.flip();
+                    while (batch.hasRemaining()) channel.write(batch);
+                    batch.limit(batch.capacity());
+                    int pending = pipeline;
+                    while (pending > 0) {
+                        int read = channel.read(in);
+                        if (read < 0) throw new IOException("server closed connection");
+                        bytes += read;
+                        in.flip();
+                        while (pending > 0 && consume(in)) {
+                            record(System.nanoTime() - sent);
+                            pending--;
+                        }
+                        in.compact();
+                        if (!in.hasRemaining()) in = ByteBuffer.allocateDirect(in.capacity() * 2).put(in.flip());
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("load client failed", e);
+            }
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latency;
+        }
+
+        private boolean consume(ByteBuffer in) {
+            if (bodyRemaining < 0) {
+                bodyRemaining = skipHead(in);
+                if (bodyRemaining < 0) return false;
+            }
+            int skipped = (int) Math.min(bodyRemaining, in.remaining());
+            in.position(in.position() + skipped);
+            bodyRemaining -= skipped;
+            if (bodyRemaining > 0) return false;
+            bodyRemaining = -1;
+            return true;
+        }
+
+        private static long skipHead(ByteBuffer in) {
+            int start = in.position();
+            int headerEnd = -1;
+            long contentLength = 0;
+            int lineStart = start;
+            for (int i = start; i + 1 < in.limit(); i++) {
+                if (in.get(i) != '\r' || in.get(i + 1) != '\n') continue;
+                if (i == lineStart) {
+                    headerEnd = i + 2;
+                    break;
+                }
+                if (i - lineStart > 15 && regionMatches(in, lineStart, "content-length:")) {
+                    contentLength = Long.parseLong(ascii(in, lineStart + 15, i).trim());
+                }
+                lineStart = i + 2;
+            }
+            if (headerEnd < 0) return -1;
+            in.position(headerEnd);
+            return contentLength;
+        }
+
+        private static boolean regionMatches(ByteBuffer in, int offset, String lowerCase) {
+            for (int i = 0; i < lowerCase.length(); i++) {
+                if (Character.toLowerCase(in.get(offset + i)) != lowerCase.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private static String ascii(ByteBuffer in, int from, int to) {
+            var bytes = new byte[to - from];
+            in.get(from, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.rbleggi.httpserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+    RouteMetrics route;
+    HttpRouter router;
+    HttpRequest ping;
+    long latency;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        route = new ServerMetrics().route("GET", "/ping");
+        router = Main.defaultRouter();
+        ping = new HttpRequest("GET", "/ping", "HTTP/1.1", Map.of(), new byte[0]);
+    }
+
+    @Benchmark
+    public void record() {
+        latency = (latency + 7919) & 0xfffff;
+        route.record(200, 0, 120, latency);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Sample sample) {
+        sample.latency = (sample.latency + 7919) & 0xfffff;
+        route.record(200, 0, 120, sample.latency);
+    }
+
+    @Benchmark
+    public HttpResponse routerHandle() {
+        return router.handle(ping);
+    }
+
+    @State(Scope.Thread)
+    public static class Sample {
+        long latency = Thread.currentThread().threadId() * 104_729;
+    }
+}
@@ -0,0 +1,87 @@
+package com.rbleggi.httpserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterBenchmark {
+    private static final String[] RESOURCES = {"users", "orders", "products", "invoices", "accounts"};
+
+    @Param({"10", "100", "1000"})
+    int routes;
+
+    LinearRouter linear;
+    HttpRouter router;
+    RouteTree<String> tree;
+    PathParams params;
+    String staticPath;
+    String paramPath;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        linear = new LinearRouter();
+        router = new HttpRouter();
+        tree = new RouteTree<>();
+        params = new PathParams();
+        for (int i = 0; i < routes; i++) {
+            String path = "/api/v" + (i % 3) + "/" + RESOURCES[i % RESOURCES.length] + i;
+            String body = "route" + i;
+            GetRouteHandler handler = requested -> path.equals(requested) ? body : null;
+            linear.registerHandler(handler);
+            router.registerHandler(path, handler);
+            tree.add(path + "/{id}/items/{item}", body);
+            staticPath = path;
+        }
+        paramPath = staticPath + "/42/items/7";
+    }
+
+    @Benchmark
+    public String linearStream() {
+        return linear.route(staticPath);
+    }
+
+    @Benchmark
+    public String radixStatic() {
+        return router.route(staticPath);
+    }
+
+    @Benchmark
+    public String radixWithParams() {
+        return tree.find(paramPath, params);
+    }
+
+    static class LinearRouter {
+        private final List<GetRouteHandler> handlers = new ArrayList<>();
+
+        void registerHandler(GetRouteHandler handler) {
+            handlers.add(handler);
+        }
+
+        String route(String path) {
+            return handlers.stream()
+                .map(handler -> handler.handle(path))
+                .filter(result -> result != null)
+                .findFirst()
+                .orElse("404");
+        }
+    }
+}
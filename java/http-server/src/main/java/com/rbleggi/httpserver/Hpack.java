@@ -0,0 +1,429 @@
+package com.rbleggi.httpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class HpackException extends RuntimeException {
+    HpackException(String message) {
+        super(message);
+    }
+}
+
+record HeaderField(String name, String value) {
+    int size() {
+        return name.length() + value.length() + 32;
+    }
+}
+
+final class HpackTable {
+    static final HeaderField[] STATIC = {
+        null,
+        new HeaderField(":authority", ""),
+        new HeaderField(":method", "GET"),
+        new HeaderField(":method", "POST"),
+        new HeaderField(":path", "/"),
+        new HeaderField(":path", "/index.html"),
+        new HeaderField(":scheme", "http"),
+        new HeaderField(":scheme", "https"),
+        new HeaderField(":status", "200"),
+        new HeaderField(":status", "204"),
+        new HeaderField(":status", "206"),
+        new HeaderField(":status", "304"),
+        new HeaderField(":status", "400"),
+        new HeaderField(":status", "404"),
+        new HeaderField(":status", "500"),
+        new HeaderField("accept-charset", ""),
+        new HeaderField("accept-encoding", "gzip, deflate"),
+        new HeaderField("accept-language", ""),
+        new HeaderField("accept-ranges", ""),
+        new HeaderField("accept", ""),
+        new HeaderField("access-control-allow-origin", ""),
+        new HeaderField("age", ""),
+        new HeaderField("allow", ""),
+        new HeaderField("authorization", ""),
+        new HeaderField("cache-control", ""),
+        new HeaderField("content-disposition", ""),
+        new HeaderField("content-encoding", ""),
+        new HeaderField("content-language", ""),
+        new HeaderField("content-length", ""),
+        new HeaderField("content-location", ""),
+        new HeaderField("content-range", ""),
+        new HeaderField("content-type", ""),
+        new HeaderField("cookie", ""),
+        new HeaderField("date", ""),
+        new HeaderField("etag", ""),
+        new HeaderField("expect", ""),
+        new HeaderField("expires", ""),
+        new HeaderField("from", ""),
+        new HeaderField("host", ""),
+        new HeaderField("if-match", ""),
+        new HeaderField("if-modified-since", ""),
+        new HeaderField("if-none-match", ""),
+        new HeaderField("if-range", ""),
+        new HeaderField("if-unmodified-since", ""),
+        new HeaderField("last-modified", ""),
+        new HeaderField("link", ""),
+        new HeaderField("location", ""),
+        new HeaderField("max-forwards", ""),
+        new HeaderField("proxy-authenticate", ""),
+        new HeaderField("proxy-authorization", ""),
+        new HeaderField("range", ""),
+        new HeaderField("referer", ""),
+        new HeaderField("refresh", ""),
+        new HeaderField("retry-after", ""),
+        new HeaderField("server", ""),
+        new HeaderField("set-cookie", ""),
+        new HeaderField("strict-transport-security", ""),
+        new HeaderField("transfer-encoding", ""),
+        new HeaderField("user-agent", ""),
+        new HeaderField("vary", ""),
+        new HeaderField("via", ""),
+        new HeaderField("www-authenticate", "")
+    };
+    static final int STATIC_SIZE = STATIC.length - 1;
+
+    private HeaderField[] entries = new HeaderField[16];
+    private int head;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    HpackTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    HeaderField get(int index) {
+        if (index <= 0) throw new HpackException("Invalid header index " + index);
+        if (index <= STATIC_SIZE) return STATIC[index];
+        int dynamic = index - STATIC_SIZE - 1;
+        if (dynamic >= count) throw new HpackException("Invalid header index " + index);
+        return entries[(head - 1 - dynamic + entries.length * 2) % entries.length];
+    }
+
+    void add(HeaderField field) {
+        evict(maxSize - field.size());
+        if (field.size() > maxSize) return;
+        if (count == entries.length) grow();
+        entries[head] = field;
+        head = (head + 1) % entries.length;
+        count++;
+        size += field.size();
+    }
+
+    void maxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int find(String name, String value, boolean nameOnly) {
+        int nameMatch = 0;
+        for (int i = 1; i <= STATIC_SIZE; i++) {
+            var field = STATIC[i];
+            if (!field.name().equals(name)) continue;
+            if (!nameOnly && field.value().equals(value)) return i;
+            if (nameMatch == 0) nameMatch = -i;
+        }
+        for (int i = 0; i < count; i++) {
+            var field = entries[(head - 1 - i + entries.length * 2) % entries.length];
+            if (!field.name().equals(name)) continue;
+            if (!nameOnly && field.value().equals(value)) return STATIC_SIZE + 1 + i;
+            if (nameMatch == 0) nameMatch = -(STATIC_SIZE + 1 + i);
+        }
+        return nameMatch;
+    }
+
+    private void evict(int limit) {
+        while (size > limit && count > 0) {
+            int oldest = (head - count + entries.length) % entries.length;
+            size -= entries[oldest].size();
+            entries[oldest] = null;
+            count--;
+        }
+    }
+
+    private void grow() {
+        var bigger = new HeaderField[entries.length * 2];
+        for (int i = 0; i < count; i++) {
+            bigger[i] = entries[(head - count + i + entries.length) % entries.length];
+        }
+        entries = bigger;
+        head = count;
+    }
+}
+
+final class Huffman {
+    private static final int[] CODES = {
+        0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+        0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+        0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+        0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+        0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+        0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+        0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+        0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+        0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+        0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+        0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+        0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+        0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+        0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+        0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+        0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+        0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+        0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+        0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+        0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+        0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+        0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+        0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+        0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+        0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+        0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+        0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+        0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+        0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+        0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+        0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+        0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee
+    };
+    private static final byte[] LENGTHS = {
+        13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+        28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+        6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+        5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+        13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+        7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+        15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+        6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+        20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+        24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+        22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+        21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+        26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+        19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+        20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+        26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+    };
+    private static final int[] TREE = new int[512 * 2];
+    private static final int LEAF = 1 << 16;
+
+    static {
+        int nodes = 1;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int node = 0;
+            for (int bit = LENGTHS[symbol] - 1; bit >= 0; bit--) {
+                int branch = node * 2 + ((CODES[symbol] >>> bit) & 1);
+                if (bit == 0) {
+                    TREE[branch] = LEAF | symbol;
+                } else {
+                    if (TREE[branch] == 0) TREE[branch] = nodes++;
+                    node = TREE[branch];
+                }
+            }
+        }
+    }
+
+    private Huffman() {
+    }
+
+    static String decode(ByteBuffer in, int length) {
+        var out = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        int depth = 0;
+        boolean allOnes = true;
+        for (int i = 0; i < length; i++) {
+            int b = in.get() & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                int value = (b >>> bit) & 1;
+                int next = TREE[node * 2 + value];
+                if (next == 0) throw new HpackException("Invalid Huffman code");
+                depth++;
+                allOnes &= value == 1;
+                if ((next & LEAF) != 0) {
+                    out.append((char) (next & 0xff));
+                    node = 0;
+                    depth = 0;
+                    allOnes = true;
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (depth > 7 || !allOnes) throw new HpackException("Invalid Huffman padding");
+        return out.toString();
+    }
+
+    static int encodedLength(String value) {
+        long bits = 0;
+        for (int i = 0; i < value.length(); i++) bits += LENGTHS[value.charAt(i) & 0xff];
+        return (int) ((bits + 7) / 8);
+    }
+
+    static void encode(String value, ByteBuffer out) {
+        long buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int symbol = value.charAt(i) & 0xff;
+            buffer = (buffer << LENGTHS[symbol]) | CODES[symbol];
+            bits += LENGTHS[symbol];
+            while (bits >= 8) {
+                bits -= 8;
+                out.put((byte) (buffer >>> bits));
+            }
+        }
+        if (bits > 0) out.put((byte) ((buffer << (8 - bits)) | (0xff >>> bits)));
+    }
+}
+
+final class HpackDecoder {
+    private final HpackTable table;
+    private final int maxTableSize;
+
+    HpackDecoder(int maxTableSize) {
+        this.table = new HpackTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+    }
+
+    List<HeaderField> decode(ByteBuffer block) {
+        var fields = new ArrayList<HeaderField>();
+        boolean headerSeen = false;
+        while (block.hasRemaining()) {
+            int first = block.get(block.position()) & 0xff;
+            if ((first & 0x80) != 0) {
+                fields.add(table.get(readInt(block, 7)));
+                headerSeen = true;
+            } else if ((first & 0x40) != 0) {
+                var field = literal(block, 6);
+                table.add(field);
+                fields.add(field);
+                headerSeen = true;
+            } else if ((first & 0x20) != 0) {
+                if (headerSeen) throw new HpackException("Table size update after header field");
+                int size = readInt(block, 5);
+                if (size > maxTableSize) throw new HpackException("Table size update above limit");
+                table.maxSize(size);
+            } else {
+                fields.add(literal(block, 4));
+                headerSeen = true;
+            }
+        }
+        return fields;
+    }
+
+    private HeaderField literal(ByteBuffer block, int prefix) {
+        int index = readInt(block, prefix);
+        String name = index == 0 ? readString(block) : table.get(index).name();
+        return new HeaderField(name, readString(block));
+    }
+
+    static int readInt(ByteBuffer in, int prefix) {
+        int mask = (1 << prefix) - 1;
+        int value = in.get() & mask;
+        if (value < mask) return value;
+        int shift = 0;
+        int b;
+        do {
+            if (!in.hasRemaining()) throw new HpackException("Truncated integer");
+            b = in.get() & 0xff;
+            if (shift > 21) throw new HpackException("Integer overflow");
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(ByteBuffer in) {
+        if (!in.hasRemaining()) throw new HpackException("Truncated string");
+        boolean huffman = (in.get(in.position()) & 0x80) != 0;
+        int length = readInt(in, 7);
+        if (length > in.remaining()) throw new HpackException("Truncated string");
+        if (huffman) return Huffman.decode(in, length);
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
+
+final class HpackEncoder {
+    private final HpackTable table = new HpackTable(4096);
+    private int pendingSizeUpdate = -1;
+
+    void maxTableSize(int size) {
+        int limited = Math.min(size, 4096);
+        if (limited == table.maxSize()) return;
+        table.maxSize(limited);
+        pendingSizeUpdate = limited;
+    }
+
+    void encode(List<HeaderField> fields, ByteBuffer out) {
+        if (pendingSizeUpdate >= 0) {
+            writeInt(out, 0x20, 5, pendingSizeUpdate);
+            pendingSizeUpdate = -1;
+        }
+        for (var field : fields) encode(field.name(), field.value(), out);
+    }
+
+    void encode(String name, String value, ByteBuffer out) {
+        boolean indexable = indexable(name);
+        int index = table.find(name, value, !indexable);
+        if (index > 0) {
+            writeInt(out, 0x80, 7, index);
+            return;
+        }
+        if (indexable) {
+            writeInt(out, 0x40, 6, -index);
+            table.add(new HeaderField(name, value));
+        } else {
+            writeInt(out, 0x00, 4, -index);
+        }
+        if (index == 0) writeString(out, name);
+        writeString(out, value);
+    }
+
+    private static boolean indexable(String name) {
+        return switch (name) {
+            case "content-length", "etag", "last-modified", "content-range", "date", "set-cookie" -> false;
+            default -> true;
+        };
+    }
+
+    static void writeInt(ByteBuffer out, int flags, int prefix, int value) {
+        int mask = (1 << prefix) - 1;
+        if (value < mask) {
+            out.put((byte) (flags | value));
+            return;
+        }
+        out.put((byte) (flags | mask));
+        value -= mask;
+        while (value >= 0x80) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        int huffmanLength = Huffman.encodedLength(value);
+        if (huffmanLength < value.length()) {
+            writeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(value, out);
+        } else {
+            writeInt(out, 0x00, 7, value.length());
+            out.put(value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+}
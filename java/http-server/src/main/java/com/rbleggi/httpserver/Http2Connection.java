@@ -0,0 +1,650 @@
+package com.rbleggi.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+class Http2Exception extends RuntimeException {
+    private final int errorCode;
+    private final int streamId;
+
+    Http2Exception(int errorCode, int streamId, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    int errorCode() {
+        return errorCode;
+    }
+
+    int streamId() {
+        return streamId;
+    }
+}
+
+final class Http2Connection {
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    static final int DATA = 0;
+    static final int HEADERS = 1;
+    static final int PRIORITY = 2;
+    static final int RST_STREAM = 3;
+    static final int SETTINGS = 4;
+    static final int PUSH_PROMISE = 5;
+    static final int PING = 6;
+    static final int GOAWAY = 7;
+    static final int WINDOW_UPDATE = 8;
+    static final int CONTINUATION = 9;
+    static final int FLAG_END_STREAM = 0x1;
+    static final int FLAG_ACK = 0x1;
+    static final int FLAG_END_HEADERS = 0x4;
+    static final int FLAG_PADDED = 0x8;
+    static final int FLAG_PRIORITY = 0x20;
+    static final int NO_ERROR = 0;
+    static final int PROTOCOL_ERROR = 1;
+    static final int FLOW_CONTROL_ERROR = 3;
+    static final int STREAM_CLOSED = 5;
+    static final int FRAME_SIZE_ERROR = 6;
+    static final int REFUSED_STREAM = 7;
+    static final int CANCEL = 8;
+    static final int COMPRESSION_ERROR = 9;
+    static final int MAX_FRAME_SIZE = 16384;
+    static final int MAX_CONCURRENT_STREAMS = 1000;
+    static final int INITIAL_WINDOW_SIZE = 1 << 20;
+    static final int CONNECTION_WINDOW_SIZE = 1 << 24;
+    static final int MAX_HEADER_BLOCK = 64 * 1024;
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final HttpResponse SERVER_ERROR = HttpResponse.text(500, "Internal Server Error");
+
+    private final SocketChannel channel;
+    private final HttpHandler handler;
+    private final HpackDecoder decoder = new HpackDecoder(4096);
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock flowLock = new ReentrantLock();
+    private final Condition flowChanged = flowLock.newCondition();
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private final ByteBuffer frameHead = ByteBuffer.allocate(9);
+    private ByteBuffer headerBlock = ByteBuffer.allocate(4096);
+    private ByteBuffer in = ByteBuffer.allocate(MAX_FRAME_SIZE * 4).flip();
+    private Stream continuation;
+    private int lastStreamId;
+    private int connectionReceiveUnacked;
+    private volatile int peerMaxFrameSize = MAX_FRAME_SIZE;
+    private int peerInitialWindow = DEFAULT_WINDOW_SIZE;
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private volatile boolean closed;
+
+    Http2Connection(SocketChannel channel, HttpHandler handler) {
+        this.channel = channel;
+        this.handler = handler;
+    }
+
+    static boolean isPreface(ByteBuffer in, boolean complete) {
+        int length = Math.min(in.remaining(), PREFACE.length);
+        if (complete && length < PREFACE.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (in.get(in.position() + i) != PREFACE[i]) return false;
+        }
+        return length > 0;
+    }
+
+    static boolean isUpgrade(HttpRequest request) {
+        String upgrade = request.header("upgrade");
+        return upgrade != null && upgrade.toLowerCase(Locale.ROOT).contains("h2c")
+            && request.header("http2-settings") != null && request.body().length == 0;
+    }
+
+    void serve(ByteBuffer leftover, HttpRequest upgradeRequest) throws IOException {
+        in.compact().put(leftover).flip();
+        try {
+            if (upgradeRequest != null) applySettings(ByteBuffer.wrap(Base64.getUrlDecoder().decode(upgradeRequest.header("http2-settings").trim())));
+            sendSettings();
+            sendWindowUpdate(0, CONNECTION_WINDOW_SIZE - DEFAULT_WINDOW_SIZE);
+            if (!fill(PREFACE.length) || !isPreface(in, true)) throw new Http2Exception(PROTOCOL_ERROR, 0, "Invalid connection preface");
+            in.position(in.position() + PREFACE.length);
+            if (upgradeRequest != null) {
+                lastStreamId = 1;
+                var stream = new Stream(1, peerInitialWindow());
+                stream.request = upgradeRequest;
+                streams.put(1, stream);
+                dispatch(stream);
+            }
+            while (readFrame()) {
+            }
+            awaitStreams();
+            sendGoAway(NO_ERROR);
+        } catch (Http2Exception e) {
+            sendGoAway(e.errorCode());
+        } catch (HpackException e) {
+            sendGoAway(COMPRESSION_ERROR);
+        } finally {
+            closed = true;
+            signalFlow();
+        }
+    }
+
+    int activeStreams() {
+        return streams.size();
+    }
+
+    private boolean readFrame() throws IOException {
+        if (!fill(9)) return false;
+        int length = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8 | (in.get() & 0xff);
+        int type = in.get() & 0xff;
+        int flags = in.get() & 0xff;
+        int streamId = in.getInt() & 0x7fffffff;
+        if (length > MAX_FRAME_SIZE) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Frame too large");
+        if (!fill(length)) return false;
+        var payload = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        if (continuation != null && (type != CONTINUATION || streamId != continuation.id)) {
+            throw new Http2Exception(PROTOCOL_ERROR, 0, "Expected CONTINUATION");
+        }
+        try {
+            switch (type) {
+                case DATA -> onData(flags, streamId, payload);
+                case HEADERS -> onHeaders(flags, streamId, payload);
+                case PRIORITY -> onPriority(streamId, payload);
+                case RST_STREAM -> onRstStream(streamId, payload);
+                case SETTINGS -> onSettings(flags, streamId, payload);
+                case PUSH_PROMISE -> throw new Http2Exception(PROTOCOL_ERROR, 0, "Client sent PUSH_PROMISE");
+                case PING -> onPing(flags, streamId, payload);
+                case GOAWAY -> {
+                    return false;
+                }
+                case WINDOW_UPDATE -> onWindowUpdate(streamId, payload);
+                case CONTINUATION -> onContinuation(flags, streamId, payload);
+                default -> {
+                }
+            }
+        } catch (Http2Exception e) {
+            if (e.streamId() == 0) throw e;
+            resetStream(e.streamId(), e.errorCode());
+        }
+        return true;
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "HEADERS on stream 0");
+        unpad(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            if (payload.remaining() < 5) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Truncated priority");
+            payload.position(payload.position() + 5);
+        }
+        var stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId <= lastStreamId || streamId % 2 == 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "Invalid stream id " + streamId);
+            lastStreamId = streamId;
+            stream = new Stream(streamId, peerInitialWindow());
+            stream.refused = streams.size() >= MAX_CONCURRENT_STREAMS;
+            if (!stream.refused) streams.put(streamId, stream);
+        } else if (stream.receivedEnd) {
+            stream.closedRemote = true;
+        } else {
+            stream.trailers = true;
+        }
+        stream.endStream = (flags & FLAG_END_STREAM) != 0;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            headersComplete(stream, payload);
+        } else {
+            stream.block = new ByteArrayOutputStream();
+            append(stream, payload);
+            continuation = stream;
+        }
+    }
+
+    private void onContinuation(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (continuation == null) throw new Http2Exception(PROTOCOL_ERROR, 0, "Unexpected CONTINUATION");
+        var stream = continuation;
+        append(stream, payload);
+        if ((flags & FLAG_END_HEADERS) == 0) return;
+        continuation = null;
+        var block = ByteBuffer.wrap(stream.block.toByteArray());
+        stream.block = null;
+        headersComplete(stream, block);
+    }
+
+    private void append(Stream stream, ByteBuffer payload) {
+        if (stream.block.size() + payload.remaining() > MAX_HEADER_BLOCK) throw new Http2Exception(PROTOCOL_ERROR, 0, "Header block too large");
+        var bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        stream.block.writeBytes(bytes);
+    }
+
+    private void headersComplete(Stream stream, ByteBuffer block) throws IOException {
+        var fields = decoder.decode(block);
+        if (stream.refused) {
+            resetStream(stream.id, REFUSED_STREAM);
+            return;
+        }
+        if (stream.closedRemote) throw new Http2Exception(STREAM_CLOSED, stream.id, "HEADERS after end of stream");
+        if (stream.trailers) {
+            if (!stream.endStream) throw new Http2Exception(PROTOCOL_ERROR, stream.id, "Trailers without END_STREAM");
+        } else {
+            stream.request = toRequest(stream.id, fields);
+        }
+        if (stream.endStream) dispatch(stream);
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "DATA on stream 0");
+        int length = payload.remaining();
+        if (length > CONNECTION_WINDOW_SIZE - connectionReceiveUnacked) {
+            throw new Http2Exception(FLOW_CONTROL_ERROR, 0, "DATA exceeds connection window");
+        }
+        connectionReceiveUnacked += length;
+        if (connectionReceiveUnacked >= CONNECTION_WINDOW_SIZE / 2) {
+            sendWindowUpdate(0, connectionReceiveUnacked);
+            connectionReceiveUnacked = 0;
+        }
+        unpad(flags, payload);
+        var stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) throw new Http2Exception(PROTOCOL_ERROR, 0, "DATA on idle stream");
+            throw new Http2Exception(STREAM_CLOSED, streamId, "DATA on closed stream");
+        }
+        if (stream.request == null || stream.receivedEnd) throw new Http2Exception(STREAM_CLOSED, streamId, "Unexpected DATA");
+        if (length > INITIAL_WINDOW_SIZE - stream.receiveUnacked) throw new Http2Exception(FLOW_CONTROL_ERROR, 0, "DATA exceeds stream window");
+        if (stream.body.size() + payload.remaining() > HttpParser.MAX_BODY_BYTES) throw new Http2Exception(CANCEL, streamId, "Body too large");
+        var bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        stream.body.writeBytes(bytes);
+        if ((flags & FLAG_END_STREAM) != 0) {
+            dispatch(stream);
+            return;
+        }
+        stream.receiveUnacked += length;
+        if (stream.receiveUnacked >= INITIAL_WINDOW_SIZE / 2) {
+            sendWindowUpdate(streamId, stream.receiveUnacked);
+            stream.receiveUnacked = 0;
+        }
+    }
+
+    private void onPriority(int streamId, ByteBuffer payload) {
+        if (streamId == 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "PRIORITY on stream 0");
+        if (payload.remaining() != 5) throw new Http2Exception(FRAME_SIZE_ERROR, streamId, "Invalid PRIORITY length");
+    }
+
+    private void onRstStream(int streamId, ByteBuffer payload) {
+        if (streamId == 0 || streamId > lastStreamId) throw new Http2Exception(PROTOCOL_ERROR, 0, "RST_STREAM on idle stream");
+        if (payload.remaining() != 4) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Invalid RST_STREAM length");
+        var stream = streams.remove(streamId);
+        if (stream != null) stream.reset = true;
+        signalFlow();
+    }
+
+    private void onSettings(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId != 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "SETTINGS on a stream");
+        if ((flags & FLAG_ACK) != 0) {
+            if (payload.hasRemaining()) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "SETTINGS ACK with payload");
+            return;
+        }
+        if (payload.remaining() % 6 != 0) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Invalid SETTINGS length");
+        applySettings(payload);
+        writeFrame(SETTINGS, FLAG_ACK, 0, null);
+    }
+
+    private void applySettings(ByteBuffer payload) {
+        while (payload.remaining() >= 6) {
+            int id = payload.getShort() & 0xffff;
+            long value = payload.getInt() & 0xffffffffL;
+            switch (id) {
+                case 1 -> {
+                    writeLock.lock();
+                    try {
+                        encoder.maxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+                case 2 -> {
+                    if (value > 1) throw new Http2Exception(PROTOCOL_ERROR, 0, "Invalid ENABLE_PUSH");
+                }
+                case 4 -> {
+                    if (value > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, 0, "Invalid INITIAL_WINDOW_SIZE");
+                    flowLock.lock();
+                    try {
+                        int delta = (int) value - peerInitialWindow;
+                        peerInitialWindow = (int) value;
+                        for (var stream : streams.values()) {
+                            stream.sendWindow += delta;
+                            if (stream.sendWindow > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, 0, "Window overflow");
+                        }
+                        flowChanged.signalAll();
+                    } finally {
+                        flowLock.unlock();
+                    }
+                }
+                case 5 -> {
+                    if (value < MAX_FRAME_SIZE || value > 16_777_215) throw new Http2Exception(PROTOCOL_ERROR, 0, "Invalid MAX_FRAME_SIZE");
+                    peerMaxFrameSize = (int) value;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void onPing(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId != 0) throw new Http2Exception(PROTOCOL_ERROR, 0, "PING on a stream");
+        if (payload.remaining() != 8) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Invalid PING length");
+        if ((flags & FLAG_ACK) == 0) writeFrame(PING, FLAG_ACK, 0, ByteBuffer.allocate(8).put(payload).flip());
+    }
+
+    private void onWindowUpdate(int streamId, ByteBuffer payload) {
+        if (payload.remaining() != 4) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Invalid WINDOW_UPDATE length");
+        int increment = payload.getInt() & 0x7fffffff;
+        if (increment == 0) throw new Http2Exception(PROTOCOL_ERROR, streamId, "Zero window increment");
+        flowLock.lock();
+        try {
+            if (streamId == 0) {
+                connectionSendWindow += increment;
+                if (connectionSendWindow > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, 0, "Connection window overflow");
+            } else {
+                var stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                    if (stream.sendWindow > Integer.MAX_VALUE) throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+                }
+            }
+            flowChanged.signalAll();
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    private static void unpad(int flags, ByteBuffer payload) {
+        if ((flags & FLAG_PADDED) == 0) return;
+        if (!payload.hasRemaining()) throw new Http2Exception(FRAME_SIZE_ERROR, 0, "Missing pad length");
+        int padding = payload.get() & 0xff;
+        if (padding > payload.remaining()) throw new Http2Exception(PROTOCOL_ERROR, 0, "Padding exceeds payload");
+        payload.limit(payload.limit() - padding);
+    }
+
+    private static HttpRequest toRequest(int streamId, List<HeaderField> fields) {
+        String method = null;
+        String path = null;
+        String scheme = null;
+        String authority = null;
+        var headers = new HashMap<String, String>();
+        boolean regular = false;
+        for (var field : fields) {
+            String name = field.name();
+            if (name.startsWith(":")) {
+                if (regular) throw malformed(streamId, "Pseudo-header after regular header");
+                switch (name) {
+                    case ":method" -> method = unique(streamId, method, field.value());
+                    case ":path" -> path = unique(streamId, path, field.value());
+                    case ":scheme" -> scheme = unique(streamId, scheme, field.value());
+                    case ":authority" -> authority = unique(streamId, authority, field.value());
+                    default -> throw malformed(streamId, "Unknown pseudo-header " + name);
+                }
+                continue;
+            }
+            regular = true;
+            if (!name.equals(name.toLowerCase(Locale.ROOT))) throw malformed(streamId, "Uppercase header name");
+            switch (name) {
+                case "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade" -> throw malformed(streamId, "Connection-specific header " + name);
+                case "te" -> {
+                    if (!field.value().equals("trailers")) throw malformed(streamId, "Invalid TE header");
+                }
+                default -> {
+                }
+            }
+            headers.merge(name, field.value(), (a, b) -> a + (name.equals("cookie") ? "; " : ", ") + b);
+        }
+        if (method == null || path == null || scheme == null || path.isEmpty()) throw malformed(streamId, "Missing pseudo-header");
+        if (authority != null) headers.putIfAbsent("host", authority);
+        return new HttpRequest(method, path, "HTTP/2.0", headers, new byte[0]);
+    }
+
+    private static String unique(int streamId, String current, String value) {
+        if (current != null) throw malformed(streamId, "Duplicate pseudo-header");
+        return value;
+    }
+
+    private static Http2Exception malformed(int streamId, String message) {
+        return new Http2Exception(PROTOCOL_ERROR, streamId, message);
+    }
+
+    private void dispatch(Stream stream) {
+        stream.receivedEnd = true;
+        var request = stream.request;
+        if (stream.body.size() > 0) {
+            request = new HttpRequest(request.method(), request.target(), request.version(), request.headers(), stream.body.toByteArray());
+        }
+        String contentLength = request.header("content-length");
+        if (contentLength != null && !contentLength.equals(Integer.toString(request.body().length))) {
+            throw malformed(stream.id, "Content-Length does not match DATA");
+        }
+        var dispatched = request;
+        Thread.ofVirtual().name("h2-stream-" + stream.id).start(() -> respond(stream, dispatched));
+    }
+
+    private void respond(Stream stream, HttpRequest request) {
+        HttpResponse response;
+        try {
+            response = handler.handle(request);
+        } catch (RuntimeException e) {
+            response = SERVER_ERROR;
+        }
+        try {
+            writeResponse(stream, response, request.method().equals("HEAD"));
+        } catch (IOException ignored) {
+        } finally {
+            if (response.file() != null) response.file().close();
+            if (streams.remove(stream.id) != null) signalFlow();
+        }
+    }
+
+    private void writeResponse(Stream stream, HttpResponse response, boolean headOnly) throws IOException {
+        var body = response.encoded(false, false);
+        body.position(body.position() + response.headLength());
+        var file = response.file();
+        long total = headOnly ? 0 : body.remaining() + (file == null ? 0 : file.remaining());
+        long sent = 0;
+        int chunk = total == 0 ? 0 : reserve(stream, total);
+        writeLock.lock();
+        try {
+            if (stream.reset) return;
+            writeHeaders(stream.id, response.headerFields(), total == 0);
+            if (chunk > 0) writeData(stream.id, next(body, file, chunk, stream), chunk == total);
+        } finally {
+            writeLock.unlock();
+        }
+        sent += chunk;
+        while (sent < total) {
+            chunk = reserve(stream, total - sent);
+            var data = next(body, file, chunk, stream);
+            writeLock.lock();
+            try {
+                writeData(stream.id, data, sent + chunk == total);
+            } finally {
+                writeLock.unlock();
+            }
+            sent += chunk;
+        }
+    }
+
+    private static ByteBuffer next(ByteBuffer body, FileRegion file, int length, Stream stream) throws IOException {
+        if (body.remaining() >= length) {
+            var slice = body.slice(body.position(), length);
+            body.position(body.position() + length);
+            return slice;
+        }
+        if (stream.fileBuffer == null || stream.fileBuffer.capacity() < length) stream.fileBuffer = ByteBuffer.allocate(length);
+        var buffer = stream.fileBuffer.clear().limit(length);
+        buffer.put(body);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer) < 0) throw new IOException("File truncated while sending");
+        }
+        return buffer.flip();
+    }
+
+    private int reserve(Stream stream, long wanted) throws IOException {
+        flowLock.lock();
+        try {
+            while (!closed && !stream.reset && (stream.sendWindow <= 0 || connectionSendWindow <= 0)) {
+                flowChanged.awaitUninterruptibly();
+            }
+            if (closed || stream.reset) throw new IOException("Stream closed");
+            int granted = (int) Math.min(Math.min(wanted, peerMaxFrameSize), Math.min(stream.sendWindow, connectionSendWindow));
+            stream.sendWindow -= granted;
+            connectionSendWindow -= granted;
+            return granted;
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    private void writeHeaders(int streamId, List<HeaderField> fields, boolean endStream) throws IOException {
+        int estimate = 16;
+        for (var field : fields) estimate += field.name().length() + field.value().length() + 12;
+        if (headerBlock.capacity() < estimate) headerBlock = ByteBuffer.allocate(Math.max(estimate, headerBlock.capacity() * 2));
+        headerBlock.clear();
+        encoder.encode(fields, headerBlock);
+        headerBlock.flip();
+        int type = HEADERS;
+        int endFlag = endStream ? FLAG_END_STREAM : 0;
+        do {
+            int length = Math.min(headerBlock.remaining(), peerMaxFrameSize);
+            var fragment = headerBlock.slice(headerBlock.position(), length);
+            headerBlock.position(headerBlock.position() + length);
+            int flags = (headerBlock.hasRemaining() ? 0 : FLAG_END_HEADERS) | endFlag;
+            writeFrameLocked(type, flags, streamId, fragment);
+            type = CONTINUATION;
+            endFlag = 0;
+        } while (headerBlock.hasRemaining());
+    }
+
+    private void writeData(int streamId, ByteBuffer data, boolean endStream) throws IOException {
+        writeFrameLocked(DATA, endStream ? FLAG_END_STREAM : 0, streamId, data);
+    }
+
+    private void resetStream(int streamId, int errorCode) throws IOException {
+        var stream = streams.remove(streamId);
+        if (stream != null) stream.reset = true;
+        signalFlow();
+        writeFrame(RST_STREAM, 0, streamId, ByteBuffer.allocate(4).putInt(errorCode).flip());
+    }
+
+    private void sendSettings() throws IOException {
+        var settings = ByteBuffer.allocate(18);
+        settings.putShort((short) 3).putInt(MAX_CONCURRENT_STREAMS);
+        settings.putShort((short) 4).putInt(INITIAL_WINDOW_SIZE);
+        settings.putShort((short) 6).putInt(MAX_HEADER_BLOCK);
+        writeFrame(SETTINGS, 0, 0, settings.flip());
+    }
+
+    private void sendWindowUpdate(int streamId, int increment) throws IOException {
+        writeFrame(WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(increment).flip());
+    }
+
+    private void sendGoAway(int errorCode) {
+        try {
+            writeFrame(GOAWAY, 0, 0, ByteBuffer.allocate(8).putInt(lastStreamId).putInt(errorCode).flip());
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void writeFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
+        writeLock.lock();
+        try {
+            writeFrameLocked(type, flags, streamId, payload);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeFrameLocked(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
+        int length = payload == null ? 0 : payload.remaining();
+        frameHead.clear();
+        frameHead.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        frameHead.put((byte) type).put((byte) flags).putInt(streamId).flip();
+        if (payload == null) {
+            while (frameHead.hasRemaining()) channel.write(frameHead);
+            return;
+        }
+        var frame = new ByteBuffer[]{frameHead, payload};
+        while (payload.hasRemaining() || frameHead.hasRemaining()) channel.write(frame);
+    }
+
+    private boolean fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes) return true;
+        in.compact();
+        try {
+            while (in.position() < bytes) {
+                if (channel.read(in) < 0) return false;
+            }
+            return true;
+        } finally {
+            in.flip();
+        }
+    }
+
+    private int peerInitialWindow() {
+        flowLock.lock();
+        try {
+            return peerInitialWindow;
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    private void signalFlow() {
+        flowLock.lock();
+        try {
+            flowChanged.signalAll();
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    private void awaitStreams() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        flowLock.lock();
+        try {
+            while (!streams.isEmpty() && System.nanoTime() < deadline) {
+                flowChanged.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    private static final class Stream {
+        final int id;
+        long sendWindow;
+        volatile boolean reset;
+        HttpRequest request;
+        ByteArrayOutputStream block;
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(0);
+        ByteBuffer fileBuffer;
+        boolean endStream;
+        boolean receivedEnd;
+        boolean closedRemote;
+        boolean trailers;
+        boolean refused;
+        int receiveUnacked;
+
+        Stream(int id, int sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+    }
+}
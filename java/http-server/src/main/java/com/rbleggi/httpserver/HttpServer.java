@@ -0,0 +1,588 @@
+package com.rbleggi.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+enum ServerMode {
+    VIRTUAL_THREADS,
+    EVENT_LOOP
+}
+
+class HttpParseException extends RuntimeException {
+    private final int status;
+
+    HttpParseException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int status() {
+        return status;
+    }
+}
+
+record HttpRequest(String method, String target, String version, Map<String, String> headers, byte[] body) {
+    String header(String name) {
+        return headers.get(name);
+    }
+
+    String path() {
+        int query = target.indexOf('?');
+        return query < 0 ? target : target.substring(0, query);
+    }
+
+    boolean keepAlive() {
+        String connection = headers.get("connection");
+        if ("HTTP/1.0".equals(version)) return connection != null && connection.equalsIgnoreCase("keep-alive");
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+}
+
+interface HttpHandler {
+    HttpResponse handle(HttpRequest request);
+}
+
+final class HttpResponse {
+    private static final byte[] CLOSE_HEADER = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int status;
+    private final ByteBuffer encoded;
+    private final int headLength;
+    private final FileRegion file;
+    private List<HeaderField> headerFields;
+
+    private HttpResponse(int status, ByteBuffer encoded, int headLength, FileRegion file) {
+        this.status = status;
+        this.encoded = encoded;
+        this.headLength = headLength;
+        this.file = file;
+    }
+
+    static HttpResponse of(int status, String contentType, byte[] body) {
+        return of(status, contentType, body, Map.of());
+    }
+
+    static HttpResponse of(int status, String contentType, byte[] body, Map<String, String> headers) {
+        byte[] head = head(status, contentType, body.length, headers);
+        var encoded = ByteBuffer.allocate(head.length + body.length).put(head).put(body).flip();
+        return new HttpResponse(status, encoded, head.length, null);
+    }
+
+    static HttpResponse file(int status, String contentType, FileRegion file, Map<String, String> headers) {
+        byte[] head = head(status, contentType, file.remaining(), headers);
+        return new HttpResponse(status, ByteBuffer.wrap(head), head.length, file);
+    }
+
+    static HttpResponse text(int status, String body) {
+        return of(status, "text/plain; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static HttpResponse preEncoded(int status, String contentType, byte[] body) {
+        return preEncoded(status, contentType, body, Map.of());
+    }
+
+    static HttpResponse preEncoded(int status, String contentType, byte[] body, Map<String, String> headers) {
+        var response = of(status, contentType, body, headers);
+        var direct = ByteBuffer.allocateDirect(response.encoded.remaining()).put(response.encoded.duplicate()).flip();
+        return new HttpResponse(status, direct.asReadOnlyBuffer(), response.headLength, null);
+    }
+
+    int status() {
+        return status;
+    }
+
+    long length() {
+        return encoded.remaining() + (file == null ? 0 : file.remaining());
+    }
+
+    FileRegion file() {
+        return file;
+    }
+
+    int headLength() {
+        return headLength;
+    }
+
+    List<HeaderField> headerFields() {
+        var fields = headerFields;
+        if (fields != null) return fields;
+        var head = encoded.duplicate();
+        head.limit(head.position() + headLength);
+        String text = StandardCharsets.ISO_8859_1.decode(head).toString();
+        var parsed = new ArrayList<HeaderField>();
+        parsed.add(new HeaderField(":status", Integer.toString(status)));
+        int lineStart = text.indexOf("\r\n") + 2;
+        while (lineStart < text.length() - 2) {
+            int lineEnd = text.indexOf("\r\n", lineStart);
+            int colon = text.indexOf(':', lineStart);
+            String name = text.substring(lineStart, colon).toLowerCase(Locale.ROOT);
+            if (!name.equals("connection") && !name.equals("keep-alive") && !name.equals("transfer-encoding") && !name.equals("upgrade")) {
+                parsed.add(new HeaderField(name, text.substring(colon + 1, lineEnd).trim()));
+            }
+            lineStart = lineEnd + 2;
+        }
+        headerFields = fields = List.copyOf(parsed);
+        return fields;
+    }
+
+    ByteBuffer encoded(boolean headOnly, boolean close) {
+        var out = encoded.duplicate();
+        if (headOnly) out.limit(out.position() + headLength);
+        if (!close) return out;
+        var closing = ByteBuffer.allocate(out.remaining() + CLOSE_HEADER.length);
+        int headerEnd = out.position() + headLength - 2;
+        closing.put(out.duplicate().limit(headerEnd)).put(CLOSE_HEADER);
+        return closing.put(out.position(headerEnd)).flip();
+    }
+
+    static String reason(int status) {
+        return switch (status) {
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 413 -> "Payload Too Large";
+            case 416 -> "Range Not Satisfiable";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "Unknown";
+        };
+    }
+
+    private static byte[] head(int status, String contentType, long length, Map<String, String> headers) {
+        var head = new StringBuilder(128).append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        if (status != 304) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        return head.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
+
+final class HttpParser {
+    static final int MAX_HEADER_BYTES = 16 * 1024;
+    static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+
+    private HttpParser() {
+    }
+
+    static HttpRequest parse(ByteBuffer in) {
+        int start = in.position();
+        int headerEnd = indexOf(in, start, in.limit(), "\r\n\r\n");
+        if (headerEnd < 0) {
+            if (in.remaining() > MAX_HEADER_BYTES) throw new HttpParseException(431, "request header too large");
+            return null;
+        }
+        int lineEnd = indexOf(in, start, headerEnd + 2, "\r\n");
+        String requestLine = ascii(in, start, lineEnd);
+        int firstSpace = requestLine.indexOf(' ');
+        int lastSpace = requestLine.lastIndexOf(' ');
+        if (firstSpace <= 0 || lastSpace <= firstSpace) throw new HttpParseException(400, "malformed request line");
+        String method = requestLine.substring(0, firstSpace);
+        String target = requestLine.substring(firstSpace + 1, lastSpace);
+        String version = requestLine.substring(lastSpace + 1);
+        if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")) throw new HttpParseException(505, "unsupported version");
+
+        var headers = new HashMap<String, String>();
+        int position = lineEnd + 2;
+        while (position < headerEnd + 2) {
+            int end = indexOf(in, position, headerEnd + 2, "\r\n");
+            int colon = indexOf(in, position, end, ":");
+            if (colon < 0) throw new HttpParseException(400, "malformed header");
+            String name = ascii(in, position, colon).toLowerCase(Locale.ROOT);
+            String value = ascii(in, colon + 1, end).trim();
+            headers.merge(name, value, (a, b) -> a + ", " + b);
+            position = end + 2;
+        }
+
+        int bodyStart = headerEnd + 4;
+        byte[] body;
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        if (transferEncoding != null) {
+            if (!transferEncoding.equalsIgnoreCase("chunked")) throw new HttpParseException(501, "unsupported transfer encoding");
+            body = chunked(in, bodyStart);
+            if (body == null) return null;
+        } else if (contentLength != null) {
+            long length = parseLength(contentLength);
+            if (length > MAX_BODY_BYTES) throw new HttpParseException(413, "request body too large");
+            if (in.limit() - bodyStart < length) return null;
+            body = new byte[(int) length];
+            in.get(bodyStart, body);
+            in.position(bodyStart + (int) length);
+        } else {
+            body = new byte[0];
+            in.position(bodyStart);
+        }
+        return new HttpRequest(method, target, version, headers, body);
+    }
+
+    private static byte[] chunked(ByteBuffer in, int position) {
+        var body = new ByteArrayOutputStream();
+        while (true) {
+            int lineEnd = indexOf(in, position, in.limit(), "\r\n");
+            if (lineEnd < 0) return null;
+            String sizeLine = ascii(in, position, lineEnd);
+            int extension = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new HttpParseException(400, "malformed chunk size");
+            }
+            if (size < 0 || body.size() + size > MAX_BODY_BYTES) throw new HttpParseException(413, "request body too large");
+            position = lineEnd + 2;
+            if (size == 0) {
+                int trailerEnd = indexOf(in, position - 2, in.limit(), "\r\n\r\n");
+                if (trailerEnd < 0) return null;
+                in.position(trailerEnd + 4);
+                return body.toByteArray();
+            }
+            if (in.limit() - position < size + 2) return null;
+            var chunk = new byte[(int) size];
+            in.get(position, chunk);
+            body.writeBytes(chunk);
+            position += (int) size;
+            if (in.get(position) != '\r' || in.get(position + 1) != '\n') throw new HttpParseException(400, "malformed chunk");
+            position += 2;
+        }
+    }
+
+    private static long parseLength(String value) {
+        try {
+            long length = Long.parseLong(value);
+            if (length < 0) throw new HttpParseException(400, "negative content length");
+            return length;
+        } catch (NumberFormatException e) {
+            throw new HttpParseException(400, "malformed content length");
+        }
+    }
+
+    private static int indexOf(ByteBuffer in, int from, int to, String pattern) {
+        int last = to - pattern.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length(); j++) {
+                if (in.get(i + j) != pattern.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String ascii(ByteBuffer in, int from, int to) {
+        var bytes = new byte[to - from];
+        in.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
+
+class HttpConnection {
+    private static final int INITIAL_BUFFER = 16 * 1024;
+    private static final HttpResponse SERVER_ERROR = HttpResponse.text(500, "Internal Server Error");
+
+    ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+    private final ArrayDeque<Object> out = new ArrayDeque<>();
+    private ByteBuffer[] batch = new ByteBuffer[16];
+    private static final ByteBuffer SWITCHING_PROTOCOLS = ByteBuffer.wrap(
+        "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+
+    private final HttpHandler handler;
+    private boolean closing;
+    private boolean http2;
+    private HttpRequest upgradeRequest;
+    private long requests;
+
+    HttpConnection(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    void ensureReadCapacity() {
+        if (in.hasRemaining()) return;
+        var bigger = ByteBuffer.allocate(in.capacity() * 2);
+        in.flip();
+        in = bigger.put(in);
+    }
+
+    void process() {
+        in.flip();
+        if (requests == 0 && Http2Connection.isPreface(in, false)) {
+            http2 = Http2Connection.isPreface(in, true);
+            closing = http2;
+            in.compact();
+            return;
+        }
+        try {
+            HttpRequest request;
+            while (!closing && (request = HttpParser.parse(in)) != null) {
+                requests++;
+                if (Http2Connection.isUpgrade(request)) {
+                    out.add(SWITCHING_PROTOCOLS.duplicate());
+                    upgradeRequest = request;
+                    http2 = true;
+                    closing = true;
+                    break;
+                }
+                boolean keepAlive = request.keepAlive();
+                var response = dispatch(request);
+                boolean headOnly = request.method().equals("HEAD");
+                out.add(response.encoded(headOnly, !keepAlive));
+                if (response.file() != null) {
+                    if (headOnly) response.file().close();
+                    else out.add(response.file());
+                }
+                if (!keepAlive) closing = true;
+            }
+        } catch (HttpParseException e) {
+            out.add(HttpResponse.text(e.status(), HttpResponse.reason(e.status())).encoded(false, true));
+            closing = true;
+        }
+        in.compact();
+    }
+
+    boolean flush(GatheringByteChannel channel) throws IOException {
+        while (!out.isEmpty()) {
+            if (out.peek() instanceof FileRegion file) {
+                long written = file.transferTo(channel);
+                if (!file.hasRemaining()) {
+                    file.close();
+                    out.poll();
+                } else if (written == 0) {
+                    return false;
+                }
+                continue;
+            }
+            int count = 0;
+            for (var pending : out) {
+                if (!(pending instanceof ByteBuffer buffer)) break;
+                if (count == batch.length) batch = Arrays.copyOf(batch, count * 2);
+                batch[count++] = buffer;
+            }
+            long written = channel.write(batch, 0, count);
+            Arrays.fill(batch, 0, count, null);
+            while (out.peek() instanceof ByteBuffer buffer && !buffer.hasRemaining()) out.poll();
+            if (written == 0 && !out.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    void release() {
+        for (var pending : out) {
+            if (pending instanceof FileRegion file) file.close();
+        }
+        out.clear();
+    }
+
+    boolean closing() {
+        return closing;
+    }
+
+    boolean http2() {
+        return http2;
+    }
+
+    HttpRequest upgradeRequest() {
+        return upgradeRequest;
+    }
+
+    private HttpResponse dispatch(HttpRequest request) {
+        try {
+            return handler.handle(request);
+        } catch (RuntimeException e) {
+            return SERVER_ERROR;
+        }
+    }
+}
+
+class HttpServer implements Closeable, Runnable {
+    private final HttpHandler handler;
+    private final ServerMode mode;
+    private final ServerMetrics metrics;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final List<SelectionKey> handoffs = new ArrayList<>();
+    private volatile boolean running = true;
+
+    HttpServer(HttpHandler handler, int port, ServerMode mode) throws IOException {
+        this(handler, port, mode, new ServerMetrics());
+    }
+
+    HttpServer(HttpHandler handler, int port, ServerMode mode, ServerMetrics metrics) throws IOException {
+        this.handler = handler;
+        this.mode = mode;
+        this.metrics = metrics;
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+        if (mode == ServerMode.EVENT_LOOP) {
+            selector = Selector.open();
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            selector = null;
+        }
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        if (mode == ServerMode.EVENT_LOOP) runEventLoop();
+        else runVirtualThreads();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (selector != null) selector.wakeup();
+        server.close();
+    }
+
+    private void runVirtualThreads() {
+        while (running) {
+            try {
+                var client = server.accept();
+                client.socket().setTcpNoDelay(true);
+                Thread.ofVirtual().name("http-connection").start(() -> serve(client));
+            } catch (IOException e) {
+                if (running) throw new IllegalStateException("HTTP server failed", e);
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        var conn = new HttpConnection(handler);
+        metrics.connectionOpened();
+        try (client) {
+            while (!conn.closing()) {
+                conn.ensureReadCapacity();
+                if (client.read(conn.in) < 0) return;
+                conn.process();
+                conn.flush(client);
+            }
+            if (conn.http2()) new Http2Connection(client, handler).serve(conn.in.flip(), conn.upgradeRequest());
+        } catch (IOException ignored) {
+        } finally {
+            conn.release();
+            metrics.connectionClosed();
+        }
+    }
+
+    private void runEventLoop() {
+        try {
+            while (running) {
+                if (selector.selectedKeys().isEmpty()) selector.select();
+                var keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    var key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else if (key.isWritable()) flush(key);
+                        else if (key.isReadable()) read(key);
+                    } catch (IOException e) {
+                        closeKey(key);
+                    }
+                }
+                if (!handoffs.isEmpty()) handOff();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("HTTP server failed", e);
+        } finally {
+            selector.keys().forEach(this::closeKey);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            client.register(selector, SelectionKey.OP_READ, new HttpConnection(handler));
+            metrics.connectionOpened();
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        var conn = (HttpConnection) key.attachment();
+        conn.ensureReadCapacity();
+        if (((SocketChannel) key.channel()).read(conn.in) < 0) {
+            closeKey(key);
+            return;
+        }
+        conn.process();
+        flush(key);
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        var conn = (HttpConnection) key.attachment();
+        boolean done = conn.flush((SocketChannel) key.channel());
+        if (done && conn.http2()) handoffs.add(key);
+        else if (done && conn.closing()) closeKey(key);
+        else if (key.isValid()) key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    private void handOff() throws IOException {
+        for (var key : handoffs) key.cancel();
+        selector.selectNow();
+        for (var key : handoffs) {
+            var client = (SocketChannel) key.channel();
+            var conn = (HttpConnection) key.attachment();
+            client.configureBlocking(true);
+            Thread.ofVirtual().name("h2-connection").start(() -> serveHttp2(client, conn));
+        }
+        handoffs.clear();
+    }
+
+    private void serveHttp2(SocketChannel client, HttpConnection conn) {
+        try (client) {
+            new Http2Connection(client, handler).serve(conn.in.flip(), conn.upgradeRequest());
+        } catch (IOException ignored) {
+        } finally {
+            metrics.connectionClosed();
+        }
+    }
+
+    private void closeKey(SelectionKey key) {
+        boolean open = key.isValid();
+        key.cancel();
+        if (open && key.attachment() instanceof HttpConnection conn) {
+            conn.release();
+            metrics.connectionClosed();
+        }
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package com.rbleggi.httpserver;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,48 +23,150 @@ class PingHandler implements GetRouteHandler {
     }
 }
 
-class HttpRouter {
+class HttpRouter implements HttpHandler {
+    private static final HttpResponse NOT_FOUND = HttpResponse.preEncoded(404, "text/plain; charset=utf-8", "Not Found".getBytes(StandardCharsets.UTF_8));
+    private static final HttpResponse METHOD_NOT_ALLOWED = HttpResponse.preEncoded(405, "text/plain; charset=utf-8", "Method Not Allowed".getBytes(StandardCharsets.UTF_8));
+    private static final ThreadLocal<PathParams> SCRATCH = ThreadLocal.withInitial(PathParams::new);
+
     private final List<GetRouteHandler> handlers = new ArrayList<>();
+    @SuppressWarnings("unchecked")
+    private final RouteTree<Route>[] trees = new RouteTree[HttpMethod.values().length];
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final RouteMetrics chainMetrics = metrics.route("GET", "(chain)");
+    private final RouteMetrics fallbackMetrics = metrics.route("GET", "(fallback)");
+    private final RouteMetrics unmatchedMetrics = metrics.route("ANY", "(unmatched)");
+    private HttpHandler fallback;
+    private ResponseCache cache;
 
     public void registerHandler(GetRouteHandler handler) {
         handlers.add(handler);
     }
 
+    public void registerHandler(String pattern, GetRouteHandler handler) {
+        register(HttpMethod.GET, pattern, new GetRoute(handler));
+    }
+
+    public void fallback(HttpHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    public void cache(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    public void register(HttpMethod method, String pattern, RouteHandler handler) {
+        var tree = trees[method.ordinal()];
+        if (tree == null) tree = trees[method.ordinal()] = new RouteTree<>();
+        tree.add(pattern, new Route(handler, metrics.route(method.name(), pattern)));
+    }
+
     public String route(String path) {
-        return handlers.stream()
-            .map(handler -> handler.handle(path))
-            .filter(result -> result != null)
-            .findFirst()
-            .orElse("404");
+        var route = find(HttpMethod.GET, path, SCRATCH.get());
+        if (route != null && route.handler() instanceof GetRoute get) {
+            String body = get.handler().handle(path);
+            if (body != null) return body;
+        }
+        for (var handler : handlers) {
+            String body = handler.handle(path);
+            if (body != null) return body;
+        }
+        return "404";
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        long start = System.nanoTime();
+        var method = HttpMethod.of(request.method());
+        if (method == null) return record(unmatchedMetrics, request, METHOD_NOT_ALLOWED, start);
+        String path = request.path();
+        var params = SCRATCH.get();
+        var route = find(method, path, params);
+        if (route == null && method == HttpMethod.HEAD) route = find(HttpMethod.GET, path, params);
+        if (route != null) {
+            if (cache != null && route.handler() instanceof GetRoute get) return record(route.metrics(), request, cached(request, path, get.handler()), start);
+            return record(route.metrics(), request, route.handler().handle(request, params.copy()), start);
+        }
+        if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+            var hit = cache == null ? null : cache.get(path, request.header("accept-encoding"));
+            if (hit != null) return record(chainMetrics, request, hit, start);
+            for (var chained : handlers) {
+                String body = chained.handle(path);
+                if (body != null) {
+                    var response = cache == null ? HttpResponse.text(200, body) : cache.put(path, body, request.header("accept-encoding"));
+                    return record(chainMetrics, request, response, start);
+                }
+            }
+            if (fallback != null) {
+                var response = fallback.handle(request);
+                if (response.status() != 404) return record(fallbackMetrics, request, response, start);
+            }
+        }
+        return record(unmatchedMetrics, request, allowsAnyMethod(path, params) ? METHOD_NOT_ALLOWED : NOT_FOUND, start);
+    }
+
+    private static HttpResponse record(RouteMetrics metrics, HttpRequest request, HttpResponse response, long start) {
+        metrics.record(response.status(), request.body().length, response.length(), System.nanoTime() - start);
+        return response;
+    }
+
+    private HttpResponse cached(HttpRequest request, String path, GetRouteHandler handler) {
+        String acceptEncoding = request.header("accept-encoding");
+        var hit = cache.get(path, acceptEncoding);
+        if (hit != null) return hit;
+        String body = handler.handle(path);
+        return body == null ? NOT_FOUND : cache.put(path, body, acceptEncoding);
+    }
+
+    private Route find(HttpMethod method, String path, PathParams params) {
+        var tree = trees[method.ordinal()];
+        return tree == null ? null : tree.find(path, params);
+    }
+
+    private boolean allowsAnyMethod(String path, PathParams params) {
+        for (var tree : trees) {
+            if (tree != null && tree.find(path, params) != null) return true;
+        }
+        return false;
+    }
+
+    private record Route(RouteHandler handler, RouteMetrics metrics) {
+    }
+
+    private record GetRoute(GetRouteHandler handler) implements RouteHandler {
+        @Override
+        public HttpResponse handle(HttpRequest request, PathParams params) {
+            String body = handler.handle(request.path());
+            return body == null ? NOT_FOUND : HttpResponse.text(200, body);
+        }
     }
 }
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         System.out.println("HTTP Server");
-    }
-
-    private static void handleClient(Socket client, List<GetRouteHandler> handlers) {
-        try (client;
-             var input = new BufferedReader(new InputStreamReader(client.getInputStream()));
-             var output = new PrintWriter(client.getOutputStream())) {
-
-            String requestLine = input.readLine();
-            if (requestLine != null && requestLine.startsWith("GET ")) {
-                String path = requestLine.split(" ")[1];
-                String response = handlers.stream()
-                    .map(handler -> handler.handle(path))
-                    .filter(result -> result != null)
-                    .findFirst()
-                    .orElse("Not Found");
-                String status = "Not Found".equals(response) ? "404 Not Found" : "200 OK";
-                output.println("HTTP/1.1 " + status + "\r\nContent-Type: text/plain\r\n\r\n" + response);
-            } else {
-                output.println("HTTP/1.1 400 Bad Request\r\nContent-Type: text/plain\r\n\r\nBad Request");
+        if (args.length > 0) {
+            var mode = args.length > 1 ? ServerMode.valueOf(args[1]) : ServerMode.VIRTUAL_THREADS;
+            var router = defaultRouter();
+            if (args.length > 2) router.fallback(new StaticFileHandler(Path.of(args[2])));
+            try (var server = new HttpServer(router, Integer.parseInt(args[0]), mode, router.metrics())) {
+                System.out.println("Listening on port " + server.port() + " (" + mode + ")");
+                server.run();
             }
-            output.flush();
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
+
+    static HttpRouter defaultRouter() {
+        var router = new HttpRouter();
+        router.registerHandler("/hello", new HelloHandler());
+        router.registerHandler("/ping", new PingHandler());
+        router.cache(new ResponseCache(16L * 1024 * 1024));
+        var metrics = router.metrics();
+        router.register(HttpMethod.GET, "/metrics", (request, params) ->
+            HttpResponse.of(200, ServerMetrics.CONTENT_TYPE, metrics.render().getBytes(StandardCharsets.UTF_8)));
+        return router;
+    }
 }
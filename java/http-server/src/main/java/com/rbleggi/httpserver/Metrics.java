@@ -0,0 +1,196 @@
+package com.rbleggi.httpserver;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int MAX_EXPONENT = 40;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.getAndIncrement(index(Math.min(value, MAX_VALUE)));
+        sum.add(value);
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long[] snapshot() {
+        var copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) copy[i] = counts.get(i);
+        return copy;
+    }
+
+    static long count(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) total += count;
+        return total;
+    }
+
+    static long valueAtQuantile(long[] snapshot, double quantile) {
+        long total = count(snapshot);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return highestEquivalentValue(i);
+        }
+        return MAX_VALUE;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        return lowestEquivalentValue(index) + (1L << (index / SUB_BUCKETS - 1)) - 1;
+    }
+}
+
+final class RouteMetrics {
+    private final String method;
+    private final String route;
+    private final LongAdder[] requests = new LongAdder[5];
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    RouteMetrics(String method, String route) {
+        this.method = method;
+        this.route = route;
+        for (int i = 0; i < requests.length; i++) requests[i] = new LongAdder();
+    }
+
+    void record(int status, long requestBytes, long responseBytes, long nanos) {
+        requests[Math.clamp(status / 100 - 1, 0, 4)].increment();
+        if (requestBytes > 0) bytesIn.add(requestBytes);
+        bytesOut.add(responseBytes);
+        latency.record(nanos);
+    }
+
+    String method() {
+        return method;
+    }
+
+    String route() {
+        return route;
+    }
+
+    long requests(int statusClass) {
+        return requests[statusClass - 1].sum();
+    }
+
+    long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+}
+
+final class ServerMetrics {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final List<RouteMetrics> routes = new CopyOnWriteArrayList<>();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+
+    RouteMetrics route(String method, String route) {
+        var metrics = new RouteMetrics(method, route);
+        routes.add(metrics);
+        return metrics;
+    }
+
+    void connectionOpened() {
+        connections.increment();
+        activeConnections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    String render() {
+        var out = new StringBuilder(4096);
+        header(out, "http_requests_total", "counter", "Requests handled, by route and status class.");
+        for (var route : routes) {
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                long count = route.requests(statusClass);
+                if (count > 0) sample(labels(out, "http_requests_total", route).append(",status=\"").append(statusClass).append("xx\"}"), count);
+            }
+        }
+        header(out, "http_request_body_bytes_total", "counter", "Request body bytes received, by route.");
+        for (var route : routes) sample(labels(out, "http_request_body_bytes_total", route).append('}'), route.bytesIn());
+        header(out, "http_response_bytes_total", "counter", "Response bytes produced, head and body, by route.");
+        for (var route : routes) sample(labels(out, "http_response_bytes_total", route).append('}'), route.bytesOut());
+        header(out, "http_request_duration_seconds", "summary", "Time spent producing the response, by route.");
+        for (var route : routes) {
+            var snapshot = route.latency().snapshot();
+            for (double quantile : QUANTILES) {
+                labels(out, "http_request_duration_seconds", route).append(",quantile=\"").append(quantile).append("\"} ");
+                out.append(seconds(LatencyHistogram.valueAtQuantile(snapshot, quantile))).append('\n');
+            }
+            labels(out, "http_request_duration_seconds_sum", route).append("} ").append(seconds(route.latency().sum())).append('\n');
+            sample(labels(out, "http_request_duration_seconds_count", route).append('}'), LatencyHistogram.count(snapshot));
+        }
+        header(out, "http_server_active_connections", "gauge", "Open client connections.");
+        sample(out.append("http_server_active_connections"), activeConnections.sum());
+        header(out, "http_server_connections_total", "counter", "Accepted client connections.");
+        sample(out.append("http_server_connections_total"), connections.sum());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static StringBuilder labels(StringBuilder out, String name, RouteMetrics route) {
+        out.append(name).append("{method=\"").append(route.method()).append("\",route=\"");
+        for (int i = 0; i < route.route().length(); i++) {
+            char c = route.route().charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    private static void sample(StringBuilder out, long value) {
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,230 @@
+package com.rbleggi.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+final class LruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final ArrayDeque<Node<K, V>> clock = new ArrayDeque<>();
+    private long weight;
+
+    LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    V get(K key) {
+        var node = entries.get(key);
+        if (node == null) return null;
+        if (!node.referenced) node.referenced = true;
+        return node.value;
+    }
+
+    void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        lock.lock();
+        try {
+            var node = entries.get(key);
+            if (node != null) {
+                weight += valueWeight - node.weight;
+                node.value = value;
+                node.weight = valueWeight;
+                node.referenced = true;
+            } else {
+                node = new Node<>(key, value, valueWeight);
+                entries.put(key, node);
+                clock.addLast(node);
+                weight += valueWeight;
+            }
+            int secondChances = clock.size();
+            while (weight > maxWeight && !clock.isEmpty()) {
+                var candidate = clock.pollFirst();
+                if (candidate.referenced && secondChances-- > 0) {
+                    candidate.referenced = false;
+                    clock.addLast(candidate);
+                } else {
+                    entries.remove(candidate.key);
+                    weight -= candidate.weight;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile boolean referenced;
+        long weight;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
+
+enum ContentCoding {
+    IDENTITY("identity"), GZIP("gzip"), DEFLATE("deflate");
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    String token() {
+        return token;
+    }
+
+    static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) return IDENTITY;
+        var best = IDENTITY;
+        double bestQuality = 0;
+        int start = 0;
+        while (start < acceptEncoding.length()) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) end = acceptEncoding.length();
+            var coding = match(acceptEncoding, start, end);
+            if (coding != null) {
+                double quality = quality(acceptEncoding, start, end);
+                if (quality > bestQuality || (quality == bestQuality && quality > 0 && coding == GZIP)) {
+                    best = coding;
+                    bestQuality = quality;
+                }
+            }
+            start = end + 1;
+        }
+        return best;
+    }
+
+    private static ContentCoding match(String header, int start, int end) {
+        while (start < end && header.charAt(start) == ' ') start++;
+        int nameEnd = start;
+        while (nameEnd < end && header.charAt(nameEnd) != ';' && header.charAt(nameEnd) != ' ') nameEnd++;
+        int length = nameEnd - start;
+        if (length == 4 && header.regionMatches(true, start, "gzip", 0, 4)) return GZIP;
+        if (length == 7 && header.regionMatches(true, start, "deflate", 0, 7)) return DEFLATE;
+        if (length == 1 && header.charAt(start) == '*') return GZIP;
+        return null;
+    }
+
+    private static double quality(String header, int start, int end) {
+        int q = header.indexOf("q=", start);
+        if (q < 0 || q >= end) return 1;
+        try {
+            return Double.parseDouble(header.substring(q + 2, end).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
+
+final class ResponseCache {
+    private static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    private final LruCache<String, Variants> entries;
+    private final int minCompressSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ResponseCache(long maxBytes) {
+        this(maxBytes, 256);
+    }
+
+    ResponseCache(long maxBytes, int minCompressSize) {
+        this.entries = new LruCache<>(maxBytes, Variants::size);
+        this.minCompressSize = minCompressSize;
+    }
+
+    HttpResponse get(String path, String acceptEncoding) {
+        var variants = entries.get(path);
+        if (variants == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return variants.select(ContentCoding.negotiate(acceptEncoding));
+    }
+
+    HttpResponse put(String path, String body, String acceptEncoding) {
+        var variants = encode(body.getBytes(StandardCharsets.UTF_8));
+        entries.put(path, variants);
+        return variants.select(ContentCoding.negotiate(acceptEncoding));
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long cachedBytes() {
+        return entries.weight();
+    }
+
+    private Variants encode(byte[] body) {
+        var identity = HttpResponse.preEncoded(200, CONTENT_TYPE, body, Map.of("Vary", "Accept-Encoding"));
+        if (body.length < minCompressSize) return new Variants(identity, identity, identity, identity.length());
+        var gzip = compressed(ContentCoding.GZIP, body, identity);
+        var deflate = compressed(ContentCoding.DEFLATE, body, identity);
+        long size = identity.length() + (gzip == identity ? 0 : gzip.length()) + (deflate == identity ? 0 : deflate.length());
+        return new Variants(identity, gzip, deflate, size);
+    }
+
+    private static HttpResponse compressed(ContentCoding coding, byte[] body, HttpResponse identity) {
+        var bytes = new ByteArrayOutputStream(body.length / 2 + 32);
+        try (OutputStream out = coding == ContentCoding.GZIP ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (bytes.size() >= body.length) return identity;
+        var headers = new LinkedHashMap<String, String>();
+        headers.put("Content-Encoding", coding.token());
+        headers.put("Vary", "Accept-Encoding");
+        return HttpResponse.preEncoded(200, CONTENT_TYPE, bytes.toByteArray(), headers);
+    }
+
+    private record Variants(HttpResponse identity, HttpResponse gzip, HttpResponse deflate, long size) {
+        HttpResponse select(ContentCoding coding) {
+            return switch (coding) {
+                case IDENTITY -> identity;
+                case GZIP -> gzip;
+                case DEFLATE -> deflate;
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.rbleggi.httpserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+enum HttpMethod {
+    GET, HEAD, POST, PUT, DELETE, PATCH, OPTIONS;
+
+    static HttpMethod of(String method) {
+        return switch (method) {
+            case "GET" -> GET;
+            case "HEAD" -> HEAD;
+            case "POST" -> POST;
+            case "PUT" -> PUT;
+            case "DELETE" -> DELETE;
+            case "PATCH" -> PATCH;
+            case "OPTIONS" -> OPTIONS;
+            default -> null;
+        };
+    }
+}
+
+interface RouteHandler {
+    HttpResponse handle(HttpRequest request, PathParams params);
+}
+
+final class PathParams {
+    static final PathParams EMPTY = new PathParams();
+
+    private String path = "";
+    private String[] names = new String[0];
+    private int[] bounds = new int[8];
+    private int size;
+
+    PathParams reset(String path) {
+        this.path = path;
+        this.size = 0;
+        return this;
+    }
+
+    void push(int start, int end) {
+        if (size * 2 == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        bounds[size * 2] = start;
+        bounds[size * 2 + 1] = end;
+        size++;
+    }
+
+    int mark() {
+        return size;
+    }
+
+    void rewind(int mark) {
+        size = mark;
+    }
+
+    void names(String[] names) {
+        this.names = names;
+    }
+
+    PathParams copy() {
+        if (size == 0) return EMPTY;
+        var copy = new PathParams();
+        copy.path = path;
+        copy.names = names;
+        copy.bounds = Arrays.copyOf(bounds, size * 2);
+        copy.size = size;
+        return copy;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    String value(int index) {
+        return path.substring(bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    String get(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return value(i);
+        }
+        return null;
+    }
+}
+
+final class RouteTree<T> {
+    private final Node<T> root = new Node<>("");
+
+    void add(String pattern, T value) {
+        if (pattern.isEmpty() || pattern.charAt(0) != '/') throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        var names = new ArrayList<String>();
+        var node = root;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                int end = pattern.indexOf('}', i);
+                if (end < 0 || end == i + 1 || pattern.charAt(i - 1) != '/' || (end + 1 < pattern.length() && pattern.charAt(end + 1) != '/')) {
+                    throw new IllegalArgumentException("Path parameter must span a whole segment: " + pattern);
+                }
+                names.add(pattern.substring(i + 1, end));
+                if (node.param == null) node.param = new Node<>("");
+                node = node.param;
+                i = end + 1;
+            } else if (c == '*') {
+                if (i != pattern.length() - 1 || pattern.charAt(i - 1) != '/') throw new IllegalArgumentException("Wildcard must be the last segment: " + pattern);
+                names.add("*");
+                if (node.wildcard == null) node.wildcard = new Node<>("");
+                node = node.wildcard;
+                i++;
+            } else {
+                int end = i;
+                while (end < pattern.length() && pattern.charAt(end) != '{' && pattern.charAt(end) != '*') end++;
+                node = node.insert(pattern.substring(i, end));
+                i = end;
+            }
+        }
+        if (node.value != null) throw new IllegalArgumentException("Duplicate route: " + pattern);
+        node.value = value;
+        node.names = names.toArray(String[]::new);
+    }
+
+    T find(String path, PathParams params) {
+        var node = match(root, path, 0, params.reset(path));
+        if (node == null) return null;
+        params.names(node.names);
+        return node.value;
+    }
+
+    private static <T> Node<T> match(Node<T> node, String path, int position, PathParams params) {
+        if (position == path.length() && node.value != null) return node;
+        if (position < path.length()) {
+            var child = node.child(path.charAt(position));
+            if (child != null && path.startsWith(child.label, position)) {
+                var found = match(child, path, position + child.label.length(), params);
+                if (found != null) return found;
+            }
+            if (node.param != null) {
+                int end = path.indexOf('/', position);
+                if (end < 0) end = path.length();
+                if (end > position) {
+                    int mark = params.mark();
+                    params.push(position, end);
+                    var found = match(node.param, path, end, params);
+                    if (found != null) return found;
+                    params.rewind(mark);
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            params.push(position, path.length());
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    private static final class Node<T> {
+        private String label;
+        private char[] indices = new char[0];
+        @SuppressWarnings("unchecked")
+        private Node<T>[] children = new Node[0];
+        private Node<T> param;
+        private Node<T> wildcard;
+        private T value;
+        private String[] names;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node<T> child(char first) {
+            int index = indexOf(first);
+            return index < 0 ? null : children[index];
+        }
+
+        Node<T> insert(String segment) {
+            var parent = this;
+            while (!segment.isEmpty()) {
+                int index = parent.indexOf(segment.charAt(0));
+                if (index < 0) {
+                    var leaf = new Node<T>(segment);
+                    parent.indices = Arrays.copyOf(parent.indices, parent.indices.length + 1);
+                    parent.children = Arrays.copyOf(parent.children, parent.children.length + 1);
+                    parent.indices[parent.indices.length - 1] = segment.charAt(0);
+                    parent.children[parent.children.length - 1] = leaf;
+                    return leaf;
+                }
+                var child = parent.children[index];
+                int common = 0;
+                while (common < child.label.length() && common < segment.length() && child.label.charAt(common) == segment.charAt(common)) common++;
+                if (common < child.label.length()) {
+                    var split = new Node<T>(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    split.indices = new char[]{child.label.charAt(0)};
+                    @SuppressWarnings("unchecked")
+                    Node<T>[] splitChildren = new Node[]{child};
+                    split.children = splitChildren;
+                    parent.children[index] = split;
+                    child = split;
+                }
+                parent = child;
+                segment = segment.substring(common);
+            }
+            return parent;
+        }
+
+        private int indexOf(char first) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == first) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.rbleggi.httpserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+final class FileRegion {
+    private static final long MAX_TRANSFER = 8L * 1024 * 1024;
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+    private ByteBuffer copyBuffer;
+
+    FileRegion(FileChannel channel, long position, long length) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+    }
+
+    long remaining() {
+        return end - position;
+    }
+
+    boolean hasRemaining() {
+        return position < end;
+    }
+
+    long transferTo(WritableByteChannel target) throws IOException {
+        long written = channel.transferTo(position, Math.min(end - position, MAX_TRANSFER), target);
+        if (written == 0 && target instanceof SelectableChannel selectable && selectable.isBlocking()) written = copyTo(target);
+        position += written;
+        return written;
+    }
+
+    private long copyTo(WritableByteChannel target) throws IOException {
+        if (copyBuffer == null) copyBuffer = ByteBuffer.allocateDirect(COPY_BUFFER);
+        copyBuffer.clear().limit((int) Math.min(COPY_BUFFER, end - position));
+        int read = channel.read(copyBuffer, position);
+        if (read < 0) throw new EOFException("File truncated while sending");
+        copyBuffer.flip();
+        while (copyBuffer.hasRemaining()) target.write(copyBuffer);
+        return read;
+    }
+
+    int read(ByteBuffer target) throws IOException {
+        int limit = target.limit();
+        if (target.remaining() > end - position) target.limit(target.position() + (int) (end - position));
+        int read = channel.read(target, position);
+        target.limit(limit);
+        if (read > 0) position += read;
+        return read;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
+
+class StaticFileHandler implements HttpHandler {
+    private static final HttpResponse NOT_FOUND = HttpResponse.preEncoded(404, "text/plain; charset=utf-8", "Not Found".getBytes(StandardCharsets.UTF_8));
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+        Map.entry("html", "text/html; charset=utf-8"),
+        Map.entry("css", "text/css; charset=utf-8"),
+        Map.entry("js", "text/javascript; charset=utf-8"),
+        Map.entry("json", "application/json"),
+        Map.entry("txt", "text/plain; charset=utf-8"),
+        Map.entry("svg", "image/svg+xml"),
+        Map.entry("png", "image/png"),
+        Map.entry("jpg", "image/jpeg"),
+        Map.entry("jpeg", "image/jpeg"),
+        Map.entry("gif", "image/gif"),
+        Map.entry("ico", "image/x-icon"),
+        Map.entry("wasm", "application/wasm"),
+        Map.entry("pdf", "application/pdf"));
+
+    private final Path root;
+    private final int maxCachedFileSize;
+    private final LruCache<Path, CachedFile> cache;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    StaticFileHandler(Path root) {
+        this(root, 64L * 1024 * 1024, 256 * 1024);
+    }
+
+    StaticFileHandler(Path root, long maxCacheBytes, int maxCachedFileSize) {
+        this.root = realPath(root.toAbsolutePath().normalize());
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.cache = new LruCache<>(maxCacheBytes, cached -> cached.body.length);
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        if (!request.method().equals("GET") && !request.method().equals("HEAD")) return NOT_FOUND;
+        var file = resolve(request.path());
+        if (file == null) return NOT_FOUND;
+        try {
+            file = file.toRealPath();
+            if (!file.startsWith(root)) return NOT_FOUND;
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                file = file.resolve("index.html").toRealPath();
+                if (!file.startsWith(root)) return NOT_FOUND;
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            }
+            if (!attributes.isRegularFile()) return NOT_FOUND;
+            return serve(request, file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return NOT_FOUND;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long cachedBytes() {
+        return cache.weight();
+    }
+
+    long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    long cacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    private Path resolve(String path) {
+        try {
+            if (path.indexOf('%') >= 0) path = URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8);
+            if (path.indexOf('\0') >= 0) return null;
+            var file = root.resolve(path.substring(1)).normalize();
+            return file.startsWith(root) ? file : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    private HttpResponse serve(HttpRequest request, Path file, long size, long modified) throws IOException {
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+        String lastModified = HTTP_DATE.format(Instant.ofEpochMilli(modified));
+        var headers = new LinkedHashMap<String, String>();
+        headers.put("ETag", etag);
+        headers.put("Last-Modified", lastModified);
+        if (notModified(request, etag, modified)) return HttpResponse.of(304, null, new byte[0], headers);
+
+        headers.put("Accept-Ranges", "bytes");
+        String contentType = contentType(file);
+        String range = request.header("range");
+        if (range != null && ifRangeMatches(request.header("if-range"), etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                headers.put("Content-Range", "bytes */" + size);
+                return HttpResponse.of(416, "text/plain; charset=utf-8", new byte[0], headers);
+            }
+            if (bounds.length == 2) {
+                long length = bounds[1] - bounds[0] + 1;
+                headers.put("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+                var cached = size <= maxCachedFileSize ? cached(file, size, modified, contentType, headers) : null;
+                if (cached != null) {
+                    byte[] slice = Arrays.copyOfRange(cached.body, (int) bounds[0], (int) bounds[1] + 1);
+                    return HttpResponse.of(206, contentType, slice, headers);
+                }
+                return HttpResponse.file(206, contentType, open(file, bounds[0], length), headers);
+            }
+        }
+        if (size <= maxCachedFileSize) return cached(file, size, modified, contentType, headers).response;
+        return HttpResponse.file(200, contentType, open(file, 0, size), headers);
+    }
+
+    private CachedFile cached(Path file, long size, long modified, String contentType, Map<String, String> headers) throws IOException {
+        var cached = cache.get(file);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+        byte[] body = Files.readAllBytes(file);
+        var headersWithoutRange = new LinkedHashMap<>(headers);
+        headersWithoutRange.remove("Content-Range");
+        var loaded = new CachedFile(size, modified, body, HttpResponse.preEncoded(200, contentType, body, headersWithoutRange));
+        if (body.length == size) cache.put(file, loaded);
+        return loaded;
+    }
+
+    private static FileRegion open(Path file, long position, long length) throws IOException {
+        return new FileRegion(FileChannel.open(file, StandardOpenOption.READ), position, length);
+    }
+
+    private static boolean notModified(HttpRequest request, String etag, long modified) {
+        String ifNoneMatch = request.header("if-none-match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+        String ifModifiedSince = request.header("if-modified-since");
+        if (ifModifiedSince == null) return false;
+        try {
+            return modified / 1000 <= ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String etag, String lastModified) {
+        return ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified);
+    }
+
+    private static long[] parseRange(String range, long size) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) return new long[0];
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = parseDigits(spec.substring(1));
+                if (suffix < 0) return new long[0];
+                if (suffix == 0 || size == 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = parseDigits(spec.substring(0, dash));
+                long last = dash == spec.length() - 1 ? Long.MAX_VALUE : parseDigits(spec.substring(dash + 1));
+                if (start < 0 || last < 0) return new long[0];
+                if (start >= size) return null;
+                end = Math.min(size - 1, last);
+                if (end < start) return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static long parseDigits(String value) {
+        if (value.isEmpty()) return -1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+        }
+        return Long.parseLong(value);
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return "application/octet-stream";
+        return CONTENT_TYPES.getOrDefault(name.substring(dot + 1).toLowerCase(Locale.ROOT), "application/octet-stream");
+    }
+
+    private record CachedFile(long size, long modified, byte[] body, HttpResponse response) {
+    }
+}
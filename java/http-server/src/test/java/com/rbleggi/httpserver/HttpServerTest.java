@@ -1,8 +1,34 @@
 package com.rbleggi.httpserver;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class HttpServerTest {
 
@@ -62,4 +88,644 @@ class HttpServerTest {
 
         assertEquals("first", router.route("/test"));
     }
+
+    @Test
+    void routeTree_staticAndParamRoutes_prefersStaticAndCapturesParams() {
+        var tree = new RouteTree<String>();
+        tree.add("/users", "list");
+        tree.add("/users/new", "form");
+        tree.add("/users/{id}", "show");
+        tree.add("/users/{id}/posts/{post}", "post");
+        tree.add("/useful", "useful");
+        var params = new PathParams();
+
+        assertEquals("list", tree.find("/users", params));
+        assertEquals("useful", tree.find("/useful", params));
+        assertEquals("form", tree.find("/users/new", params));
+        assertEquals("show", tree.find("/users/42", params));
+        assertEquals("42", params.get("id"));
+        assertEquals("post", tree.find("/users/new/posts/7", params));
+        assertEquals("new", params.get("id"));
+        assertEquals("7", params.get("post"));
+        assertNull(tree.find("/users/42/posts", params));
+        assertNull(tree.find("/users/", params));
+    }
+
+    @Test
+    void routeTree_wildcard_capturesRemainderAfterOtherRoutesFail() {
+        var tree = new RouteTree<String>();
+        tree.add("/static/*", "file");
+        tree.add("/static/app.js", "bundle");
+        var params = new PathParams();
+
+        assertEquals("bundle", tree.find("/static/app.js", params));
+        assertEquals("file", tree.find("/static/css/site.css", params));
+        assertEquals("css/site.css", params.get("*"));
+        assertNull(tree.find("/other", params));
+    }
+
+    @Test
+    void routeTree_invalidPatterns_throw() {
+        var tree = new RouteTree<String>();
+        tree.add("/users/{id}", "show");
+
+        assertThrows(IllegalArgumentException.class, () -> tree.add("/users/{id}", "again"));
+        assertThrows(IllegalArgumentException.class, () -> tree.add("/files/*/name", "x"));
+        assertThrows(IllegalArgumentException.class, () -> tree.add("/users/x{id}", "x"));
+        assertThrows(IllegalArgumentException.class, () -> tree.add("users", "x"));
+    }
+
+    @Test
+    void httpRouter_perMethodRoutes_dispatchAndReport405() {
+        var router = new HttpRouter();
+        router.register(HttpMethod.GET, "/users/{id}", (request, params) -> HttpResponse.text(200, "get " + params.get("id")));
+        router.register(HttpMethod.DELETE, "/users/{id}", (request, params) -> HttpResponse.text(200, "delete " + params.get("id")));
+
+        assertEquals("get 7", body(router.handle(request("GET", "/users/7"))));
+        assertEquals("delete 8", body(router.handle(request("DELETE", "/users/8?force=true"))));
+        assertEquals(200, router.handle(request("HEAD", "/users/9")).status());
+        assertEquals(405, router.handle(request("POST", "/users/7")).status());
+        assertEquals(404, router.handle(request("GET", "/accounts/7")).status());
+    }
+
+    @Test
+    void httpRouter_patternAndChainedHandlers_bothRoute() {
+        var router = new HttpRouter();
+        router.registerHandler("/hello", new HelloHandler());
+        router.registerHandler(new PingHandler());
+
+        assertEquals("Hello, World!", router.route("/hello"));
+        assertEquals("pong", router.route("/ping"));
+        assertEquals("pong", body(router.handle(request("GET", "/ping"))));
+        assertEquals("404", router.route("/missing"));
+    }
+
+    @Test
+    void httpParser_contentLengthBody_parsesRequest() {
+        var in = ascii("POST /echo?x=1 HTTP/1.1\r\nHost: a\r\nContent-Length: 5\r\n\r\nhelloGET");
+        var request = HttpParser.parse(in);
+
+        assertEquals("POST", request.method());
+        assertEquals("/echo", request.path());
+        assertEquals("a", request.header("host"));
+        assertEquals("hello", new String(request.body(), StandardCharsets.UTF_8));
+        assertEquals(3, in.remaining());
+    }
+
+    @Test
+    void httpParser_chunkedBody_decodesChunks() {
+        var in = ascii("POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\n\r\n");
+        var request = HttpParser.parse(in);
+
+        assertEquals("hello world", new String(request.body(), StandardCharsets.UTF_8));
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void httpParser_incompleteRequest_returnsNullWithoutConsuming() {
+        var in = ascii("POST /echo HTTP/1.1\r\nContent-Length: 10\r\n\r\nhello");
+        assertNull(HttpParser.parse(in));
+        assertEquals(0, in.position());
+        assertNull(HttpParser.parse(ascii("GET /ping HTTP/1.1\r\nHost")));
+    }
+
+    @Test
+    void httpParser_malformedRequest_throwsWithStatus() {
+        var error = assertThrows(HttpParseException.class, () -> HttpParser.parse(ascii("GET /ping HTTP/2.0\r\n\r\n")));
+        assertEquals(505, error.status());
+        error = assertThrows(HttpParseException.class, () -> HttpParser.parse(ascii("GET /ping HTTP/1.1\r\nContent-Length: x\r\n\r\n")));
+        assertEquals(400, error.status());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void httpServer_pipelinedKeepAliveRequests_answeredInOrderOnOneConnection(ServerMode mode) throws IOException {
+        try (var server = startServer(mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            write(client, "GET /hello HTTP/1.1\r\n\r\nGET /ping HTTP/1.1\r\n\r\nGET /missing HTTP/1.1\r\n\r\n");
+            String responses = read(client, 3);
+            assertTrue(responses.indexOf("Hello, World!") < responses.indexOf("pong"));
+            assertTrue(responses.contains("HTTP/1.1 404 Not Found"));
+
+            write(client, "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nbody\r\n0\r\n\r\n");
+            assertTrue(read(client, 1).endsWith("\r\n\r\nbody"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void httpServer_connectionClose_closesAfterResponse(ServerMode mode) throws IOException {
+        try (var server = startServer(mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            write(client, "GET /ping HTTP/1.1\r\nConnection: close\r\n\r\nGET /hello HTTP/1.1\r\n\r\n");
+            var all = ByteBuffer.allocate(4096);
+            while (client.read(all) >= 0) {
+            }
+            String response = new String(all.array(), 0, all.position(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+            assertTrue(response.contains("Connection: close\r\n"));
+            assertTrue(response.endsWith("pong"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void httpServer_malformedRequest_returns400AndCloses(ServerMode mode) throws IOException {
+        try (var server = startServer(mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            write(client, "NONSENSE\r\n\r\n");
+            assertTrue(read(client, 1).startsWith("HTTP/1.1 400 Bad Request"));
+        }
+    }
+
+    @Test
+    void staticFileHandler_conditionalRequests_return304(@TempDir Path root) throws IOException {
+        Files.writeString(root.resolve("app.js"), "console.log(1)");
+        var handler = new StaticFileHandler(root);
+
+        var response = handler.handle(request("GET", "/app.js"));
+        String head = head(response);
+        assertEquals(200, response.status());
+        assertTrue(head.contains("Content-Type: text/javascript"));
+        assertEquals("console.log(1)", body(response));
+        String etag = headerValue(head, "ETag");
+        String lastModified = headerValue(head, "Last-Modified");
+
+        var notModified = handler.handle(request("GET", "/app.js", Map.of("if-none-match", "\"other\", " + etag)));
+        assertEquals(304, notModified.status());
+        assertFalse(head(notModified).contains("Content-Length"));
+        assertEquals(304, handler.handle(request("GET", "/app.js", Map.of("if-modified-since", lastModified))).status());
+        assertEquals(200, handler.handle(request("GET", "/app.js", Map.of("if-none-match", "\"other\""))).status());
+    }
+
+    @Test
+    void staticFileHandler_rangeRequests_returnPartialContent(@TempDir Path root) throws IOException {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+        var handler = new StaticFileHandler(root);
+
+        var partial = handler.handle(request("GET", "/data.txt", Map.of("range", "bytes=2-4")));
+        assertEquals(206, partial.status());
+        assertEquals("234", body(partial));
+        assertTrue(head(partial).contains("Content-Range: bytes 2-4/10"));
+        assertEquals("789", body(handler.handle(request("GET", "/data.txt", Map.of("range", "bytes=-3")))));
+        assertEquals("89", body(handler.handle(request("GET", "/data.txt", Map.of("range", "bytes=8-")))));
+
+        var unsatisfiable = handler.handle(request("GET", "/data.txt", Map.of("range", "bytes=10-")));
+        assertEquals(416, unsatisfiable.status());
+        assertTrue(head(unsatisfiable).contains("Content-Range: bytes */10"));
+        assertEquals(200, handler.handle(request("GET", "/data.txt", Map.of("range", "bytes=1-2", "if-range", "\"stale\""))).status());
+
+        for (String malformed : new String[]{"bytes=--5", "bytes=-+5", "bytes=+2-4", "bytes=2-+4", "bytes=2--4"}) {
+            var ignored = handler.handle(request("GET", "/data.txt", Map.of("range", malformed)));
+            assertEquals(200, ignored.status(), malformed);
+            assertEquals("0123456789", body(ignored), malformed);
+        }
+    }
+
+    @Test
+    void staticFileHandler_traversalAndMissingFiles_return404(@TempDir Path root) throws IOException {
+        Files.createDirectories(root.resolve("public"));
+        Files.writeString(root.resolve("secret.txt"), "secret");
+        Files.writeString(root.resolve("public/index.html"), "<h1>home</h1>");
+        var handler = new StaticFileHandler(root.resolve("public"));
+
+        assertEquals("<h1>home</h1>", body(handler.handle(request("GET", "/"))));
+        assertEquals(404, handler.handle(request("GET", "/../secret.txt")).status());
+        assertEquals(404, handler.handle(request("GET", "/%2e%2e/secret.txt")).status());
+        assertEquals(404, handler.handle(request("GET", "/%zz")).status());
+        assertEquals(404, handler.handle(request("GET", "/index.html%")).status());
+        assertEquals(404, handler.handle(request("GET", "/missing.txt")).status());
+    }
+
+    @Test
+    void staticFileHandler_symlinksLeavingRoot_return404(@TempDir Path root) throws IOException {
+        Files.createDirectories(root.resolve("public/docs"));
+        Files.createDirectories(root.resolve("private"));
+        Files.writeString(root.resolve("secret.txt"), "secret");
+        Files.writeString(root.resolve("private/index.html"), "secret");
+        Files.writeString(root.resolve("public/docs/readme.txt"), "readme");
+        try {
+            Files.createSymbolicLink(root.resolve("public/leak.txt"), root.resolve("secret.txt"));
+            Files.createSymbolicLink(root.resolve("public/private"), root.resolve("private"));
+            Files.createSymbolicLink(root.resolve("public/docs/index.html"), root.resolve("secret.txt"));
+            Files.createSymbolicLink(root.resolve("public/readme.txt"), root.resolve("public/docs/readme.txt"));
+        } catch (UnsupportedOperationException | IOException e) {
+            assumeTrue(false, "symbolic links not supported: " + e);
+        }
+        var handler = new StaticFileHandler(root.resolve("public"));
+
+        assertEquals(404, handler.handle(request("GET", "/leak.txt")).status());
+        assertEquals(404, handler.handle(request("GET", "/private/")).status());
+        assertEquals(404, handler.handle(request("GET", "/private/index.html")).status());
+        assertEquals(404, handler.handle(request("GET", "/docs/")).status());
+        assertEquals("readme", body(handler.handle(request("GET", "/readme.txt"))));
+    }
+
+    @Test
+    void staticFileHandler_smallFiles_cachedWithLruEviction(@TempDir Path root) throws IOException {
+        for (String name : new String[]{"a", "b", "c"}) Files.write(root.resolve(name), new byte[100]);
+        var handler = new StaticFileHandler(root, 250, 1024);
+
+        handler.handle(request("GET", "/a"));
+        handler.handle(request("GET", "/b"));
+        handler.handle(request("GET", "/a"));
+        handler.handle(request("GET", "/c"));
+        assertEquals(200, handler.cachedBytes());
+        assertEquals(1, handler.cacheHits());
+
+        handler.handle(request("GET", "/a"));
+        handler.handle(request("GET", "/b"));
+        assertEquals(2, handler.cacheHits());
+        assertEquals(4, handler.cacheMisses());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void httpServer_largeFile_streamedWithTransferTo(ServerMode mode, @TempDir Path root) throws IOException {
+        var content = new byte[3 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(content);
+        Files.write(root.resolve("large.bin"), content);
+        var router = new HttpRouter();
+        router.fallback(new StaticFileHandler(root, 1024 * 1024, 64 * 1024));
+
+        try (var server = new HttpServer(router, 0, mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            Thread.ofPlatform().daemon().start(server);
+            write(client, "GET /large.bin HTTP/1.1\r\n\r\nGET /large.bin HTTP/1.1\r\nRange: bytes=1000-1999\r\nConnection: close\r\n\r\n");
+            var all = ByteBuffer.allocate(content.length + 8192);
+            while (client.read(all) >= 0) {
+            }
+            byte[] received = Arrays.copyOf(all.array(), all.position());
+            int firstBody = indexOf(received, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII), 0) + 4;
+            assertArrayEquals(content, Arrays.copyOfRange(received, firstBody, firstBody + content.length));
+            int secondBody = indexOf(received, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII), firstBody + content.length) + 4;
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 2000), Arrays.copyOfRange(received, secondBody, received.length));
+        }
+    }
+
+    @Test
+    void contentCoding_acceptEncoding_negotiatesByQuality() {
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate(null));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("DEFLATE"));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("gzip;q=0, br"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("*"));
+    }
+
+    @Test
+    void responseCache_getRoute_encodesOnceAndServesCompressedVariants() throws IOException {
+        var calls = new int[1];
+        String payload = "payload ".repeat(100);
+        var router = new HttpRouter();
+        router.registerHandler("/report", path -> {
+            calls[0]++;
+            return payload;
+        });
+        var cache = new ResponseCache(1024 * 1024);
+        router.cache(cache);
+
+        var identity = router.handle(request("GET", "/report"));
+        var gzip = router.handle(request("GET", "/report", Map.of("accept-encoding", "gzip")));
+        var deflate = router.handle(request("GET", "/report", Map.of("accept-encoding", "deflate")));
+
+        assertEquals(1, calls[0]);
+        assertEquals(2, cache.hits());
+        assertEquals(payload, body(identity));
+        assertTrue(head(identity).contains("Vary: Accept-Encoding"));
+        assertTrue(head(gzip).contains("Content-Encoding: gzip"));
+        assertEquals(payload, new String(new GZIPInputStream(new ByteArrayInputStream(bodyBytes(gzip))).readAllBytes(), StandardCharsets.UTF_8));
+        assertTrue(head(deflate).contains("Content-Encoding: deflate"));
+        assertEquals(payload, new String(new InflaterInputStream(new ByteArrayInputStream(bodyBytes(deflate))).readAllBytes(), StandardCharsets.UTF_8));
+        assertSame(identity, router.handle(request("GET", "/report", Map.of("accept-encoding", "br"))));
+    }
+
+    @Test
+    void lruCache_referencedEntries_surviveEvictionSweep() {
+        var cache = new LruCache<String, byte[]>(300, value -> value.length);
+        cache.put("hot", new byte[100]);
+        cache.put("cold", new byte[100]);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get("hot"));
+            cache.put("key" + i, new byte[100]);
+        }
+        assertNotNull(cache.get("hot"));
+        assertNull(cache.get("cold"));
+        assertEquals(3, cache.size());
+        assertEquals(300, cache.weight());
+
+        cache.put("hot", new byte[50]);
+        assertEquals(250, cache.weight());
+        assertEquals(50, cache.get("hot").length);
+    }
+
+    @Test
+    void responseCache_smallBodiesAndSizeBound_skipCompressionAndEvict() {
+        var cache = new ResponseCache(400);
+        var pong = cache.put("/ping", "pong", "gzip");
+        assertFalse(head(pong).contains("Content-Encoding"));
+        assertSame(pong, cache.get("/ping", null));
+
+        for (int i = 0; i < 10; i++) cache.put("/item" + i, "value" + i, null);
+        assertTrue(cache.cachedBytes() <= 400);
+        assertNull(cache.get("/ping", null));
+        assertNotNull(cache.get("/item9", null));
+    }
+
+    @Test
+    void hpackDecoder_rfc7541HuffmanExamples_decodeWithDynamicTable() {
+        var decoder = new HpackDecoder(4096);
+        assertEquals(List.of(new HeaderField(":method", "GET"), new HeaderField(":scheme", "http"), new HeaderField(":path", "/"),
+                new HeaderField(":authority", "www.example.com")),
+            decoder.decode(hex("828684418cf1e3c2e5f23a6ba0ab90f4ff")));
+        assertEquals(new HeaderField("cache-control", "no-cache"), decoder.decode(hex("828684be5886a8eb10649cbf")).get(4));
+        var third = decoder.decode(hex("828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+        assertEquals(new HeaderField(":path", "/index.html"), third.get(2));
+        assertEquals(new HeaderField(":authority", "www.example.com"), third.get(3));
+        assertEquals(new HeaderField("custom-key", "custom-value"), third.get(4));
+        assertThrows(HpackException.class, () -> decoder.decode(hex("ff00")));
+    }
+
+    @Test
+    void hpackEncoder_repeatedHeaders_roundTripAndShrinkThroughDynamicTable() {
+        var encoder = new HpackEncoder();
+        var decoder = new HpackDecoder(4096);
+        var fields = List.of(new HeaderField(":status", "200"), new HeaderField("content-type", "application/json"),
+            new HeaderField("x-request-id", "abc-123"), new HeaderField("content-length", "42"));
+        var first = ByteBuffer.allocate(256);
+        encoder.encode(fields, first);
+        var second = ByteBuffer.allocate(256);
+        encoder.encode(fields, second);
+        assertTrue(second.position() < first.position());
+        assertEquals(fields, decoder.decode(first.flip()));
+        assertEquals(fields, decoder.decode(second.flip()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void http2_upgradeThenConcurrentRequests_multiplexedOverH2c(ServerMode mode) throws Exception {
+        try (var server = startServer(mode);
+             var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build()) {
+            var base = "http://127.0.0.1:" + server.port();
+            var upgraded = client.send(java.net.http.HttpRequest.newBuilder(URI.create(base + "/hello")).build(), BodyHandlers.ofString());
+            assertEquals(HttpClient.Version.HTTP_2, upgraded.version());
+            assertEquals("Hello, World!", upgraded.body());
+
+            var futures = new ArrayList<CompletableFuture<java.net.http.HttpResponse<String>>>();
+            for (int i = 0; i < 200; i++) {
+                var request = i % 2 == 0
+                    ? java.net.http.HttpRequest.newBuilder(URI.create(base + "/ping")).build()
+                    : java.net.http.HttpRequest.newBuilder(URI.create(base + "/echo")).POST(java.net.http.HttpRequest.BodyPublishers.ofString("body" + i)).build();
+                futures.add(client.sendAsync(request, BodyHandlers.ofString()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                var response = futures.get(i).join();
+                assertEquals(HttpClient.Version.HTTP_2, response.version());
+                assertEquals(i % 2 == 0 ? "pong" : "body" + i, response.body());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void http2_priorKnowledge_interleavedStreamsAndStreamErrors(ServerMode mode) throws IOException {
+        try (var server = startServer(mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            var encoder = new HpackEncoder();
+            var out = ByteBuffer.allocate(4096).put(Http2Connection.PREFACE);
+            frame(out, Http2Connection.SETTINGS, 0, 0, new byte[0]);
+            frame(out, Http2Connection.PING, 0, 0, "pingpong".getBytes(StandardCharsets.US_ASCII));
+            String[] paths = {"/hello", "/ping", "/missing"};
+            for (int i = 0; i < paths.length; i++) {
+                var block = ByteBuffer.allocate(256);
+                encoder.encode(List.of(new HeaderField(":method", "GET"), new HeaderField(":scheme", "http"),
+                    new HeaderField(":path", paths[i]), new HeaderField(":authority", "localhost")), block);
+                frame(out, Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS | Http2Connection.FLAG_END_STREAM, 1 + i * 2,
+                    Arrays.copyOf(block.array(), block.position()));
+            }
+            var bad = ByteBuffer.allocate(64);
+            encoder.encode(List.of(new HeaderField(":method", "GET"), new HeaderField(":path", "/hello")), bad);
+            frame(out, Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS | Http2Connection.FLAG_END_STREAM, 7,
+                Arrays.copyOf(bad.array(), bad.position()));
+            out.flip();
+            while (out.hasRemaining()) client.write(out);
+
+            var decoder = new HpackDecoder(4096);
+            var statuses = new HashMap<Integer, String>();
+            var bodies = new HashMap<Integer, String>();
+            boolean pingAcked = false;
+            int resetCode = -1;
+            var in = ByteBuffer.allocate(64 * 1024).flip();
+            while (bodies.size() < 3 || !pingAcked || resetCode < 0) {
+                in = readFully(client, in, 9);
+                int length = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8 | (in.get() & 0xff);
+                int type = in.get();
+                int flags = in.get();
+                int streamId = in.getInt();
+                in = readFully(client, in, length);
+                var payload = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                switch (type) {
+                    case Http2Connection.HEADERS -> statuses.put(streamId, decoder.decode(payload).get(0).value());
+                    case Http2Connection.DATA -> bodies.merge(streamId, StandardCharsets.UTF_8.decode(payload).toString(), String::concat);
+                    case Http2Connection.PING -> pingAcked = (flags & Http2Connection.FLAG_ACK) != 0;
+                    case Http2Connection.RST_STREAM -> resetCode = payload.getInt();
+                    default -> {
+                    }
+                }
+            }
+            assertEquals(Map.of(1, "200", 3, "200", 5, "404"), statuses);
+            assertEquals(Map.of(1, "Hello, World!", 3, "pong", 5, "Not Found"), bodies);
+            assertEquals(Http2Connection.PROTOCOL_ERROR, resetCode);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void http2_bodyLargerThanStreamWindow_replenishedByWindowUpdates(ServerMode mode) throws IOException {
+        HttpHandler handler = request -> HttpResponse.text(200, Integer.toString(request.body().length));
+        try (var server = new HttpServer(handler, 0, mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            Thread.ofPlatform().daemon().start(server);
+            var block = ByteBuffer.allocate(256);
+            new HpackEncoder().encode(List.of(new HeaderField(":method", "POST"), new HeaderField(":scheme", "http"),
+                new HeaderField(":path", "/upload"), new HeaderField(":authority", "localhost")), block);
+            int frames = 3 * Http2Connection.INITIAL_WINDOW_SIZE / Http2Connection.MAX_FRAME_SIZE;
+            var out = ByteBuffer.allocate(1024 + frames * (9 + Http2Connection.MAX_FRAME_SIZE)).put(Http2Connection.PREFACE);
+            frame(out, Http2Connection.SETTINGS, 0, 0, new byte[0]);
+            frame(out, Http2Connection.HEADERS, Http2Connection.FLAG_END_HEADERS, 1, Arrays.copyOf(block.array(), block.position()));
+            var chunk = new byte[Http2Connection.MAX_FRAME_SIZE];
+            for (int i = 0; i < frames; i++) {
+                frame(out, Http2Connection.DATA, i == frames - 1 ? Http2Connection.FLAG_END_STREAM : 0, 1, chunk);
+            }
+            out.flip();
+            while (out.hasRemaining()) client.write(out);
+
+            long streamCredit = 0;
+            String body = null;
+            var in = ByteBuffer.allocate(64 * 1024).flip();
+            while (body == null) {
+                in = readFully(client, in, 9);
+                int length = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8 | (in.get() & 0xff);
+                int type = in.get();
+                in.get();
+                int streamId = in.getInt();
+                in = readFully(client, in, length);
+                var payload = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                switch (type) {
+                    case Http2Connection.WINDOW_UPDATE -> {
+                        if (streamId == 1) streamCredit += payload.getInt();
+                    }
+                    case Http2Connection.DATA -> body = StandardCharsets.UTF_8.decode(payload).toString();
+                    case Http2Connection.GOAWAY -> fail("GOAWAY " + payload.getInt(4));
+                    default -> {
+                    }
+                }
+            }
+            assertEquals(Integer.toString(frames * Http2Connection.MAX_FRAME_SIZE), body);
+            assertTrue(frames * (long) Http2Connection.MAX_FRAME_SIZE <= Http2Connection.INITIAL_WINDOW_SIZE + streamCredit);
+        }
+    }
+
+    @Test
+    void latencyHistogram_logLinearBuckets_quantilesWithinPrecision() {
+        var random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong(1L << 40);
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+        }
+        var histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) histogram.record(micros * 1_000);
+        var snapshot = histogram.snapshot();
+        assertEquals(10_000, LatencyHistogram.count(snapshot));
+        double tolerance = 1.0 / (1 << LatencyHistogram.SUB_BUCKET_BITS);
+        assertEquals(5_000_000, LatencyHistogram.valueAtQuantile(snapshot, 0.5), 5_000_000 * tolerance);
+        assertEquals(9_900_000, LatencyHistogram.valueAtQuantile(snapshot, 0.99), 9_900_000 * tolerance);
+        assertEquals(9_990_000, LatencyHistogram.valueAtQuantile(snapshot, 0.999), 9_990_000 * tolerance);
+        assertEquals(50_005_000_000L, histogram.sum());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ServerMode.class)
+    void httpServer_metricsEndpoint_reportsPerRouteCountersInPrometheusFormat(ServerMode mode) throws IOException {
+        try (var server = startServer(mode);
+             var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+            write(client, "GET /ping HTTP/1.1\r\n\r\nGET /ping HTTP/1.1\r\n\r\nGET /ping HTTP/1.1\r\n\r\nGET /missing HTTP/1.1\r\n\r\n");
+            read(client, 4);
+            write(client, "GET /metrics HTTP/1.1\r\n\r\n");
+            String metrics = read(client, 1);
+            assertTrue(metrics.contains("Content-Type: text/plain; version=0.0.4; charset=utf-8"));
+            assertTrue(metrics.contains("http_requests_total{method=\"GET\",route=\"/ping\",status=\"2xx\"} 3\n"));
+            assertTrue(metrics.contains("http_requests_total{method=\"ANY\",route=\"(unmatched)\",status=\"4xx\"} 1\n"));
+            assertTrue(metrics.contains("http_request_duration_seconds{method=\"GET\",route=\"/ping\",quantile=\"0.999\"} "));
+            assertTrue(metrics.contains("http_request_duration_seconds_count{method=\"GET\",route=\"/ping\"} 3\n"));
+            assertTrue(metrics.contains("http_server_active_connections 1\n"));
+            assertTrue(metrics.contains("# TYPE http_response_bytes_total counter\n"));
+        }
+    }
+
+    private static void frame(ByteBuffer out, int type, int flags, int streamId, byte[] payload) {
+        out.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length);
+        out.put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+    }
+
+    private static ByteBuffer readFully(SocketChannel client, ByteBuffer in, int bytes) throws IOException {
+        if (in.remaining() >= bytes) return in;
+        in.compact();
+        while (in.position() < bytes) {
+            if (client.read(in) < 0) throw new IOException("Connection closed");
+        }
+        return in.flip();
+    }
+
+    private static ByteBuffer hex(String value) {
+        return ByteBuffer.wrap(HexFormat.of().parseHex(value));
+    }
+
+    private static HttpServer startServer(ServerMode mode) throws IOException {
+        var router = Main.defaultRouter();
+        HttpHandler handler = request -> request.method().equals("POST")
+            ? HttpResponse.of(200, "application/octet-stream", request.body())
+            : router.handle(request);
+        var server = new HttpServer(handler, 0, mode, router.metrics());
+        Thread.ofPlatform().daemon().start(server);
+        return server;
+    }
+
+    private static HttpRequest request(String method, String target) {
+        return request(method, target, Map.of());
+    }
+
+    private static HttpRequest request(String method, String target, Map<String, String> headers) {
+        return new HttpRequest(method, target, "HTTP/1.1", headers, new byte[0]);
+    }
+
+    private static byte[] bodyBytes(HttpResponse response) {
+        var encoded = response.encoded(false, false);
+        var bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        int start = indexOf(bytes, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII), 0) + 4;
+        return Arrays.copyOfRange(bytes, start, bytes.length);
+    }
+
+    private static String head(HttpResponse response) {
+        String text = StandardCharsets.ISO_8859_1.decode(response.encoded(true, false)).toString();
+        return text.substring(0, text.indexOf("\r\n\r\n") + 2);
+    }
+
+    private static String headerValue(String head, String name) {
+        int start = head.indexOf(name + ": ") + name.length() + 2;
+        return head.substring(start, head.indexOf("\r\n", start));
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String body(HttpResponse response) {
+        String text = StandardCharsets.UTF_8.decode(response.encoded(false, false)).toString();
+        return text.substring(text.indexOf("\r\n\r\n") + 4);
+    }
+
+    private static ByteBuffer ascii(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void write(SocketChannel client, String request) throws IOException {
+        var out = ascii(request);
+        while (out.hasRemaining()) client.write(out);
+    }
+
+    private static String read(SocketChannel client, int responses) throws IOException {
+        var in = ByteBuffer.allocate(64 * 1024);
+        while (true) {
+            String text = new String(in.array(), 0, in.position(), StandardCharsets.UTF_8);
+            if (complete(text) >= responses) return text;
+            if (client.read(in) < 0) return text;
+        }
+    }
+
+    private static int complete(String text) {
+        int count = 0;
+        int position = 0;
+        while (true) {
+            int headerEnd = text.indexOf("\r\n\r\n", position);
+            if (headerEnd < 0) return count;
+            int lengthAt = text.indexOf("Content-Length: ", position);
+            int length = Integer.parseInt(text.substring(lengthAt + 16, text.indexOf("\r\n", lengthAt)));
+            if (text.length() < headerEnd + 4 + length) return count;
+            position = headerEnd + 4 + length;
+            count++;
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.rbleggi.redisclone;
+
+public class MapFootprintBenchmark {
+    public static void main(String[] args) {
+        int hashes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int fields = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        var encoding = args.length > 2 ? MapEncoding.valueOf(args[2]) : null;
+        for (var mode : encoding != null ? new MapEncoding[]{encoding} : MapEncoding.values()) {
+            measure(mode, hashes, fields);
+        }
+    }
+
+    private static void measure(MapEncoding encoding, int hashes, int fields) {
+        long baseline = usedHeap();
+        var store = new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, System::currentTimeMillis, encoding);
+        long start = System.nanoTime();
+        for (int h = 0; h < hashes; h++) {
+            String map = "user:" + h;
+            for (int f = 0; f < fields; f++) {
+                new MapSetCommand(map, "field" + f, "value" + h).execute(store);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long heap = usedHeap() - baseline;
+        long offHeap = store.offHeapBytes();
+        System.out.printf("%-18s %,d hashes x %d fields: heap %,d MB, off-heap %,d MB, %.0f bytes/hash, load %d ms%n",
+            encoding, hashes, fields, heap >> 20, offHeap >> 20, (heap + offHeap) / (double) hashes, elapsed / 1_000_000);
+        store.maps.clear();
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
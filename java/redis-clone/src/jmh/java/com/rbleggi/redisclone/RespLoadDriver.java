@@ -0,0 +1,70 @@
+package com.rbleggi.redisclone;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RespLoadDriver {
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int pipeline = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 2_000_000;
+
+        RespServer embedded = null;
+        if (port == 0) {
+            embedded = new RespServer(new CommandInvoker(new RedisStore()), 0);
+            port = embedded.port();
+            Thread.ofPlatform().name("resp-server").start(embedded);
+        }
+
+        var completed = new LongAdder();
+        int perClient = requests / clients;
+        var threads = new ArrayList<Thread>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int clientId = c;
+            int serverPort = port;
+            threads.add(Thread.ofPlatform().start(() -> runClient(serverPort, clientId, pipeline, perClient, completed)));
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double opsPerSec = completed.sum() * 1_000_000_000.0 / elapsed;
+        System.out.printf("%d requests, %d clients, pipeline %d: %.0f ops/s%n", completed.sum(), clients, pipeline, opsPerSec);
+        if (embedded != null) embedded.close();
+    }
+
+    private static void runClient(int port, int clientId, int pipeline, int requests, LongAdder completed) {
+        try (var channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            channel.socket().setTcpNoDelay(true);
+            var batch = ByteBuffer.allocate(pipeline * 64);
+            for (int i = 0; i < pipeline; i++) {
+                String key = "key:" + clientId + ":" + i;
+                if (i % 2 == 0) RespCodec.encodeCommand(batch, "SET", key, "xxx");
+                else RespCodec.encodeCommand(batch, "GET", key);
+            }
+            batch.flip();
+            var replies = ByteBuffer.allocate(pipeline * 64);
+            for (int sent = 0; sent < requests; sent += pipeline) {
+                batch.rewind();
+                while (batch.hasRemaining()) channel.write(batch);
+                int pending = pipeline;
+                while (pending > 0) {
+                    if (channel.read(replies) < 0) throw new IOException("server closed connection");
+                    replies.flip();
+                    while (pending > 0 && RespCodec.skipReply(replies)) pending--;
+                    replies.compact();
+                }
+                completed.add(pipeline);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("client " + clientId + " failed", e);
+        }
+    }
+}
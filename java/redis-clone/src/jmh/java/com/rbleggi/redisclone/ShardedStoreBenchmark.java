@@ -0,0 +1,74 @@
+package com.rbleggi.redisclone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ShardedStoreBenchmark {
+    private static final int KEYSPACE = 100_000;
+    private static final int COMMANDS_PER_THREAD = 4096;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"1", "4", "16"})
+        int shards;
+
+        ShardedCommandInvoker invoker;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            invoker = new ShardedCommandInvoker(shards);
+            for (int i = 0; i < KEYSPACE; i++) {
+                invoker.execute(new SetCommand("key:" + i, "value"));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Workload {
+        final Command[] commands = new Command[COMMANDS_PER_THREAD];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            var random = new SplittableRandom();
+            for (int i = 0; i < commands.length; i++) {
+                String key = "key:" + random.nextInt(KEYSPACE);
+                int op = random.nextInt(10);
+                if (op < 5) commands[i] = new GetCommand(key);
+                else if (op < 9) commands[i] = new SetCommand(key, "value");
+                else commands[i] = new AppendCommand(key, "x");
+            }
+        }
+
+        Command next() {
+            var command = commands[next];
+            next = (next + 1) & (COMMANDS_PER_THREAD - 1);
+            return command;
+        }
+    }
+
+    @Benchmark
+    public String mixedGetSetAppend(Store store, Workload workload) {
+        return store.invoker.execute(workload.next());
+    }
+}
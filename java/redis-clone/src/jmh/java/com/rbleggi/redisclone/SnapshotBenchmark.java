@@ -0,0 +1,71 @@
+package com.rbleggi.redisclone;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rewritesPerKey = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        var dir = Files.createTempDirectory("redis-snapshot");
+        try {
+            run(dir, keys, rewritesPerKey);
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(Path dir, int keys, int rewritesPerKey) throws Exception {
+        var aofPath = dir.resolve("appendonly.aof");
+        var rdbPath = dir.resolve("dump.rdb");
+        populateAndSave(aofPath, rdbPath, keys, rewritesPerKey);
+
+        long aofMillis;
+        try (var aof = new AppendOnlyFile(aofPath, FsyncPolicy.NEVER)) {
+            aofMillis = time(() -> new CommandInvoker(new RedisStore(), aof).replay());
+        }
+        long rdbMillis = time(() -> new CommandInvoker(new RedisStore()).load(rdbPath));
+        System.out.printf("AOF replay    %,d MB in %,d ms%n", Files.size(aofPath) >> 20, aofMillis);
+        System.out.printf("Snapshot load %,d MB in %,d ms (%.1fx faster)%n", Files.size(rdbPath) >> 20, rdbMillis, aofMillis / (double) Math.max(rdbMillis, 1));
+    }
+
+    private static void populateAndSave(Path aofPath, Path rdbPath, int keys, int rewritesPerKey) throws Exception {
+        try (var aof = new AppendOnlyFile(aofPath, FsyncPolicy.NEVER)) {
+            var invoker = new CommandInvoker(new RedisStore(), aof);
+            for (int round = 0; round < rewritesPerKey; round++) {
+                for (int i = 0; i < keys; i++) {
+                    invoker.execute(round % 2 == 0
+                        ? new SetCommand("key:" + i, "value:" + round + ":" + i)
+                        : new MapSetCommand("hash:" + i, "field" + round, "value" + i));
+                }
+            }
+            aof.flush();
+
+            long start = System.nanoTime();
+            var saving = invoker.save(rdbPath);
+            long pause = System.nanoTime() - start;
+            long writes = 0;
+            long worst = 0;
+            while (!saving.isDone()) {
+                long before = System.nanoTime();
+                invoker.execute(new SetCommand("key:" + (writes % keys), "during-save"));
+                worst = Math.max(worst, System.nanoTime() - before);
+                writes++;
+            }
+            long records = saving.get();
+            long saveMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("BGSAVE   %,d records, %,d MB in %,d ms; save() returned in %,d us; %,d writes during save, worst %,d us%n",
+                records, Files.size(rdbPath) >> 20, saveMillis, pause / 1_000, writes, worst / 1_000);
+        }
+    }
+
+    private static long time(Runnable load) {
+        System.gc();
+        long start = System.nanoTime();
+        load.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
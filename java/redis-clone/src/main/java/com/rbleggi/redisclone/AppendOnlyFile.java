@@ -0,0 +1,332 @@
+package com.rbleggi.redisclone;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+enum FsyncPolicy {
+    ALWAYS,
+    EVERY_SECOND,
+    NEVER
+}
+
+class AppendOnlyFile implements Closeable {
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+    private static final long MAX_MAP_WINDOW = 1L << 30;
+    private static final int REPLAY_BATCH = 4096;
+
+    private final Path path;
+    private final FsyncPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final Thread flusher;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer rewriteDiff;
+    private long appendedSeq;
+    private long syncedSeq;
+    private boolean syncing;
+    private boolean rewriting;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    AppendOnlyFile(Path path, FsyncPolicy policy) throws IOException {
+        this.path = path;
+        this.policy = policy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        flusher = policy == FsyncPolicy.ALWAYS ? null : Thread.ofPlatform().daemon().name("aof-flusher").start(this::flushLoop);
+    }
+
+    void log(Command command, String result) {
+        var args = mutation(command, result, false);
+        if (args == null) return;
+        long seq;
+        boolean full;
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("AOF is closed");
+            if (failure != null) throw writeFailure();
+            pending = RespCodec.ensureCapacity(pending, RespCodec.encodedCommandBound(args));
+            RespCodec.encodeCommand(pending, args);
+            if (rewriteDiff != null) {
+                var diffArgs = mutation(command, result, true);
+                rewriteDiff = RespCodec.ensureCapacity(rewriteDiff, RespCodec.encodedCommandBound(diffArgs));
+                RespCodec.encodeCommand(rewriteDiff, diffArgs);
+            }
+            seq = ++appendedSeq;
+            full = pending.position() >= FLUSH_THRESHOLD;
+        } finally {
+            lock.unlock();
+        }
+        if (policy == FsyncPolicy.ALWAYS) sync(seq, true);
+        else if (full) sync(seq, false);
+    }
+
+    void checkWritable() {
+        if (closed) throw new IllegalStateException("AOF is closed");
+        if (failure != null) throw writeFailure();
+    }
+
+    void flush() {
+        long seq;
+        lock.lock();
+        try {
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        sync(seq, policy != FsyncPolicy.NEVER);
+    }
+
+    long replay(Consumer<Command> sink) throws IOException {
+        lock.lock();
+        try {
+            long size = channel.size();
+            long position = 0;
+            long replayed = 0;
+            var batch = new Command[REPLAY_BATCH];
+            while (position < size) {
+                long window = Math.min(size - position, MAX_MAP_WINDOW);
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                int consumed = 0;
+                int batched = 0;
+                String[] args;
+                while ((args = RespCodec.decodeFrame(buffer)) != null) {
+                    batch[batched++] = RespCodec.toCommand(args);
+                    consumed = buffer.position();
+                    if (batched == batch.length) {
+                        apply(batch, batched, sink);
+                        replayed += batched;
+                        batched = 0;
+                    }
+                }
+                apply(batch, batched, sink);
+                replayed += batched;
+                boolean lastWindow = position + window == size;
+                position += consumed;
+                if (lastWindow || consumed == 0) break;
+            }
+            channel.truncate(position);
+            channel.position(position);
+            return replayed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CompletableFuture<Void> rewrite(Supplier<List<StoreSnapshot>> snapshot) {
+        lock.lock();
+        try {
+            if (rewriting) throw new IllegalStateException("AOF rewrite already in progress");
+            rewriting = true;
+            rewriteDiff = ByteBuffer.allocate(INITIAL_BUFFER);
+        } finally {
+            lock.unlock();
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                writeRewrite(snapshot.get());
+            } catch (IOException e) {
+                abortRewrite();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                abortRewrite();
+                throw e;
+            }
+        }, runnable -> Thread.ofPlatform().daemon().name("aof-rewrite").start(runnable));
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (flusher != null) {
+                LockSupport.unpark(flusher);
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            lock.lock();
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void sync(long seq, boolean force) {
+        lock.lock();
+        try {
+            while (syncedSeq < seq) {
+                if (failure != null) throw writeFailure();
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                var batch = pending;
+                long batchSeq = appendedSeq;
+                pending = spare;
+                var target = channel;
+                lock.unlock();
+                IOException error = null;
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining()) target.write(batch);
+                    if (force) target.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                    spare = batch.clear();
+                    syncing = false;
+                    if (error == null) syncedSeq = Math.max(syncedSeq, batchSeq);
+                    else failure = error;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            if (closed) return;
+            try {
+                flush();
+            } catch (UncheckedIOException e) {
+                return;
+            }
+        }
+    }
+
+    private void writeRewrite(List<StoreSnapshot> snapshots) throws IOException {
+        var temp = path.resolveSibling(path.getFileName() + ".rewrite");
+        var rewritten = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            var buffer = new ByteBuffer[]{ByteBuffer.allocate(FLUSH_THRESHOLD)};
+            for (var snapshot : snapshots) {
+                snapshot.forEach((key, value, map, deadline) -> {
+                    if (value != null) buffer[0] = writeCommand(rewritten, buffer[0], "SET", key, value);
+                    if (map != null) {
+                        for (Map.Entry<String, String> field : map.entrySet()) {
+                            buffer[0] = writeCommand(rewritten, buffer[0], "HSET", key, field.getKey(), field.getValue());
+                        }
+                    }
+                    if (deadline >= 0) buffer[0] = writeCommand(rewritten, buffer[0], "PEXPIREAT", key, Long.toString(deadline));
+                });
+            }
+            writeFully(rewritten, buffer[0]);
+            rewritten.force(false);
+            finishRewrite(temp, rewritten);
+        } catch (IOException | RuntimeException e) {
+            rewritten.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            snapshots.forEach(StoreSnapshot::finish);
+        }
+    }
+
+    private void finishRewrite(Path temp, FileChannel rewritten) throws IOException {
+        lock.lock();
+        try {
+            while (syncing) synced.awaitUninterruptibly();
+            writeFully(rewritten, rewriteDiff);
+            rewritten.force(false);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = rewritten;
+            pending.clear();
+            syncedSeq = appendedSeq;
+            rewriteDiff = null;
+            rewriting = false;
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private UncheckedIOException writeFailure() {
+        return new UncheckedIOException("MISCONF Errors writing to the AOF file: " + failure.getMessage(), failure);
+    }
+
+    private void abortRewrite() {
+        lock.lock();
+        try {
+            rewriteDiff = null;
+            rewriting = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer writeCommand(FileChannel target, ByteBuffer buffer, String... args) throws IOException {
+        int bound = RespCodec.encodedCommandBound(args);
+        if (buffer.remaining() < bound) {
+            writeFully(target, buffer);
+            buffer = RespCodec.ensureCapacity(buffer, bound);
+        }
+        RespCodec.encodeCommand(buffer, args);
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) target.write(buffer);
+        buffer.clear();
+    }
+
+    private static void apply(Command[] batch, int count, Consumer<Command> sink) {
+        for (int i = 0; i < count; i++) {
+            sink.accept(batch[i]);
+            batch[i] = null;
+        }
+    }
+
+    static String[] mutation(Command command, String result, boolean idempotent) {
+        return switch (command) {
+            case SetCommand c -> new String[]{"SET", c.key(), c.value()};
+            case RemoveCommand c -> new String[]{"DEL", c.key()};
+            case UnlinkCommand c -> "1".equals(result) ? new String[]{"UNLINK", c.key()} : null;
+            case AppendCommand c -> idempotent
+                ? new String[]{"SET", c.key(), result}
+                : new String[]{"APPEND", c.key(), c.value()};
+            case MapSetCommand c -> new String[]{"HSET", c.map(), c.key(), c.value()};
+            case ExpireAtCommand c -> "1".equals(result)
+                ? new String[]{"PEXPIREAT", c.key(), Long.toString(c.deadlineMillis())}
+                : null;
+            case PersistCommand c -> "1".equals(result) ? new String[]{"PERSIST", c.key()} : null;
+            default -> null;
+        };
+    }
+}
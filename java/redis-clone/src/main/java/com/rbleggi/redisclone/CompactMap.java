@@ -0,0 +1,347 @@
+package com.rbleggi.redisclone;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+enum MapEncoding {
+    HASHTABLE,
+    LISTPACK,
+    LISTPACK_OFF_HEAP
+}
+
+interface MapMemory {
+    MapMemory HEAP = new MapMemory() {
+        @Override
+        public MemorySegment allocate(int capacity) {
+            return MemorySegment.ofArray(new byte[capacity]);
+        }
+
+        @Override
+        public void free(MemorySegment segment) {
+        }
+    };
+
+    MemorySegment allocate(int capacity);
+
+    void free(MemorySegment segment);
+}
+
+class OffHeapSlab implements MapMemory {
+    private static final int MIN_CLASS_SHIFT = 5;
+    private static final int MAX_CLASS_SHIFT = 16;
+    private static final long CHUNK_SIZE = 1 << 20;
+
+    private final Arena arena = Arena.ofAuto();
+    private final List<ArrayDeque<MemorySegment>> free = new ArrayList<>();
+    private MemorySegment chunk;
+    private long chunkUsed;
+    private long reserved;
+
+    OffHeapSlab() {
+        for (int shift = 0; shift <= MAX_CLASS_SHIFT; shift++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public MemorySegment allocate(int capacity) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        if (shift > MAX_CLASS_SHIFT) return Arena.ofAuto().allocate(capacity);
+        var segment = free.get(shift).poll();
+        if (segment != null) return segment;
+        long size = 1L << shift;
+        if (chunk == null || chunkUsed + size > CHUNK_SIZE) {
+            chunk = arena.allocate(CHUNK_SIZE);
+            chunkUsed = 0;
+            reserved += CHUNK_SIZE;
+        }
+        segment = chunk.asSlice(chunkUsed, size);
+        chunkUsed += size;
+        return segment;
+    }
+
+    @Override
+    public void free(MemorySegment segment) {
+        long size = segment.byteSize();
+        int shift = Long.numberOfTrailingZeros(size);
+        if (Long.bitCount(size) == 1 && shift >= MIN_CLASS_SHIFT && shift <= MAX_CLASS_SHIFT) free.get(shift).push(segment);
+    }
+
+    long reservedBytes() {
+        return reserved;
+    }
+}
+
+final class CompactMap extends AbstractMap<String, String> {
+    static final int MAX_ENTRIES = 128;
+    static final int MAX_VALUE_LENGTH = 64;
+    private static final int INITIAL_CAPACITY = 32;
+    private static final long OBJECT_OVERHEAD = 64;
+
+    private final MapMemory memory;
+    private MemorySegment data;
+    private int used;
+    private int count;
+
+    CompactMap(MapMemory memory) {
+        this(memory, INITIAL_CAPACITY);
+    }
+
+    private CompactMap(MapMemory memory, int capacity) {
+        this.memory = memory;
+        this.data = memory.allocate(capacity);
+    }
+
+    static CompactMap decode(MapMemory memory, byte[] source, int offset, int length, int count) {
+        var map = new CompactMap(memory, Math.max(length, INITIAL_CAPACITY));
+        MemorySegment.copy(source, offset, map.data, ValueLayout.JAVA_BYTE, 0, length);
+        map.used = length;
+        map.count = count;
+        return map;
+    }
+
+    int encodedLength() {
+        return used;
+    }
+
+    void encodeTo(ByteBuffer target) {
+        MemorySegment.copy(data, 0, MemorySegment.ofBuffer(target), 0, used);
+        target.position(target.position() + used);
+    }
+
+    boolean accepts(String key, String value) {
+        if (key.length() > MAX_VALUE_LENGTH || value.length() > MAX_VALUE_LENGTH) return false;
+        return count < MAX_ENTRIES || find(utf8(key)) >= 0;
+    }
+
+    long footprint() {
+        return OBJECT_OVERHEAD + data.byteSize();
+    }
+
+    void release() {
+        memory.free(data);
+        data = MemorySegment.NULL;
+        used = 0;
+        count = 0;
+    }
+
+    CompactMap copy(MapMemory target) {
+        var copy = new CompactMap(target, (int) data.byteSize());
+        MemorySegment.copy(data, 0, copy.data, 0, used);
+        copy.used = used;
+        copy.count = count;
+        return copy;
+    }
+
+    String joinKeys(String separator) {
+        return join(true, separator);
+    }
+
+    String joinValues(String separator) {
+        return join(false, separator);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String k && find(utf8(k)) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String k)) return null;
+        int at = find(utf8(k));
+        return at < 0 ? null : decode(valueOffset(at));
+    }
+
+    @Override
+    public String put(String key, String value) {
+        byte[] keyBytes = utf8(key);
+        byte[] valueBytes = utf8(value);
+        int at = find(keyBytes);
+        if (at < 0) {
+            splice(used, used, encode(keyBytes, valueBytes));
+            count++;
+            return null;
+        }
+        int valueAt = valueOffset(at);
+        String old = decode(valueAt);
+        splice(valueAt, skip(valueAt), encode(valueBytes));
+        return old;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String k)) return null;
+        int at = find(utf8(k));
+        if (at < 0) return null;
+        int valueAt = valueOffset(at);
+        String old = decode(valueAt);
+        splice(at, skip(valueAt), new byte[0]);
+        count--;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        used = 0;
+        count = 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int offset;
+
+                    @Override
+                    public boolean hasNext() {
+                        return offset < used;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        String key = decode(offset);
+                        int valueAt = skip(offset);
+                        offset = skip(valueAt);
+                        return new SimpleImmutableEntry<>(key, decode(valueAt));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private String join(boolean keys, String separator) {
+        byte[] sep = utf8(separator);
+        int total = count > 0 ? (count - 1) * sep.length : 0;
+        for (int offset = 0; offset < used; ) {
+            int field = keys ? offset : skip(offset);
+            total += readLength(field);
+            offset = skip(skip(offset));
+        }
+        var out = new byte[total];
+        int position = 0;
+        for (int offset = 0; offset < used; ) {
+            int field = keys ? offset : skip(offset);
+            int length = readLength(field);
+            if (position > 0) {
+                System.arraycopy(sep, 0, out, position, sep.length);
+                position += sep.length;
+            }
+            MemorySegment.copy(data, ValueLayout.JAVA_BYTE, field + lengthSize(length), out, position, length);
+            position += length;
+            offset = skip(skip(offset));
+        }
+        return new String(out, StandardCharsets.UTF_8);
+    }
+
+    private int find(byte[] key) {
+        var probe = MemorySegment.ofArray(key);
+        for (int offset = 0; offset < used; ) {
+            int length = readLength(offset);
+            int start = offset + lengthSize(length);
+            if (length == key.length && MemorySegment.mismatch(data, start, start + length, probe, 0, length) < 0) {
+                return offset;
+            }
+            offset = skip(start + length);
+        }
+        return -1;
+    }
+
+    private int valueOffset(int entry) {
+        return skip(entry);
+    }
+
+    private int skip(int offset) {
+        int length = readLength(offset);
+        return offset + lengthSize(length) + length;
+    }
+
+    private String decode(int offset) {
+        int length = readLength(offset);
+        var bytes = new byte[length];
+        MemorySegment.copy(data, ValueLayout.JAVA_BYTE, offset + lengthSize(length), bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readLength(int offset) {
+        int first = data.get(ValueLayout.JAVA_BYTE, offset) & 0xFF;
+        if (first < 0x80) return first;
+        int length = first & 0x7F;
+        int shift = 7;
+        int b;
+        do {
+            b = data.get(ValueLayout.JAVA_BYTE, ++offset) & 0xFF;
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b >= 0x80);
+        return length;
+    }
+
+    private static int lengthSize(int length) {
+        int size = 1;
+        while (length >= 0x80) {
+            length >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void splice(int start, int end, byte[] replacement) {
+        int newUsed = used - (end - start) + replacement.length;
+        if (newUsed > data.byteSize()) {
+            var grown = memory.allocate(Math.max(newUsed, (int) data.byteSize() * 2));
+            MemorySegment.copy(data, 0, grown, 0, used);
+            memory.free(data);
+            data = grown;
+        }
+        MemorySegment.copy(data, end, data, start + replacement.length, used - end);
+        MemorySegment.copy(replacement, 0, data, ValueLayout.JAVA_BYTE, start, replacement.length);
+        used = newUsed;
+    }
+
+    private static byte[] encode(byte[]... fields) {
+        int total = 0;
+        for (var field : fields) total += lengthSize(field.length) + field.length;
+        var out = new byte[total];
+        int position = 0;
+        for (var field : fields) {
+            int length = field.length;
+            while (length >= 0x80) {
+                out[position++] = (byte) (length & 0x7F | 0x80);
+                length >>>= 7;
+            }
+            out[position++] = (byte) length;
+            System.arraycopy(field, 0, out, position, field.length);
+            position += field.length;
+        }
+        return out;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
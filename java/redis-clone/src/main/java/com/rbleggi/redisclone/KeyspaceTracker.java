@@ -0,0 +1,112 @@
+package com.rbleggi.redisclone;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+enum EvictionPolicy {
+    ALLKEYS_LRU,
+    ALLKEYS_LFU
+}
+
+record StoreStats(long keys, long volatileKeys, long usedMemory, long maxMemory, long expiredKeys, long evictedKeys) {
+    StoreStats plus(StoreStats other) {
+        return new StoreStats(keys + other.keys, volatileKeys + other.volatileKeys, usedMemory + other.usedMemory,
+            maxMemory + other.maxMemory, expiredKeys + other.expiredKeys, evictedKeys + other.evictedKeys);
+    }
+
+    String format() {
+        return "keys:" + keys + "\r\n"
+            + "expires:" + volatileKeys + "\r\n"
+            + "used_memory:" + usedMemory + "\r\n"
+            + "maxmemory:" + maxMemory + "\r\n"
+            + "expired_keys:" + expiredKeys + "\r\n"
+            + "evicted_keys:" + evictedKeys;
+    }
+}
+
+class KeyspaceTracker {
+    static final int SAMPLES = 5;
+    private static final int LFU_INIT = 5;
+    private static final int LFU_MAX = 255;
+    private static final int LFU_LOG_FACTOR = 10;
+    private static final long LFU_DECAY_MILLIS = 60_000;
+
+    private final EvictionPolicy policy;
+    private final Map<String, KeyMeta> meta = new HashMap<>();
+    private final SplittableRandom random = new SplittableRandom();
+    private KeyMeta[] keys = new KeyMeta[16];
+    private int size;
+
+    KeyspaceTracker(EvictionPolicy policy) {
+        this.policy = policy;
+    }
+
+    void touch(String key, long now) {
+        var entry = meta.get(key);
+        if (entry == null) {
+            if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+            entry = new KeyMeta(key, size);
+            keys[size++] = entry;
+            meta.put(key, entry);
+        } else if (policy == EvictionPolicy.ALLKEYS_LFU) {
+            entry.frequency = increment(decayed(entry, now));
+        }
+        entry.lastAccess = now;
+    }
+
+    void remove(String key) {
+        var entry = meta.remove(key);
+        if (entry == null) return;
+        var last = keys[--size];
+        keys[entry.index] = last;
+        last.index = entry.index;
+        keys[size] = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String sample(long now) {
+        KeyMeta best = null;
+        for (int i = 0; i < SAMPLES; i++) {
+            var candidate = keys[random.nextInt(size)];
+            if (best == null || isBetterVictim(candidate, best, now)) best = candidate;
+        }
+        return best.key;
+    }
+
+    private boolean isBetterVictim(KeyMeta candidate, KeyMeta best, long now) {
+        if (policy == EvictionPolicy.ALLKEYS_LFU) {
+            int candidateFrequency = decayed(candidate, now);
+            int bestFrequency = decayed(best, now);
+            if (candidateFrequency != bestFrequency) return candidateFrequency < bestFrequency;
+        }
+        return candidate.lastAccess < best.lastAccess;
+    }
+
+    private int increment(int frequency) {
+        if (frequency == LFU_MAX) return frequency;
+        double p = 1.0 / ((Math.max(frequency - LFU_INIT, 0)) * LFU_LOG_FACTOR + 1);
+        return random.nextDouble() < p ? frequency + 1 : frequency;
+    }
+
+    private static int decayed(KeyMeta entry, long now) {
+        long periods = (now - entry.lastAccess) / LFU_DECAY_MILLIS;
+        return (int) Math.max(entry.frequency - periods, 0);
+    }
+
+    private static final class KeyMeta {
+        final String key;
+        int index;
+        long lastAccess;
+        int frequency = LFU_INIT;
+
+        KeyMeta(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+}
@@ -1,21 +1,234 @@
 package com.rbleggi.redisclone;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 interface Command {
+    String NIL = new String("(nil)");
+
     String execute(RedisStore store);
 }
 
+interface MultiBulkCommand extends Command {
+    List<String> elements(RedisStore store);
+}
+
 class RedisStore {
-    final Map<String, String> strings = new HashMap<>();
-    final Map<String, Map<String, String>> maps = new HashMap<>();
+    private static final long ENTRY_OVERHEAD = 64;
+
+    final Map<String, String> strings = new ConcurrentHashMap<>();
+    final Map<String, Map<String, String>> maps = new ConcurrentHashMap<>();
+    final TimingWheel expires;
+    private final LongSupplier clock;
+    private final MapEncoding mapEncoding;
+    private final MapMemory mapMemory;
+    private final long maxMemory;
+    private final KeyspaceTracker tracker;
+    private final List<String> evicted = new ArrayList<>();
+    private boolean evicting = true;
+    private long usedMemory;
+    private long expiredKeys;
+    private long evictedKeys;
+    private volatile StoreSnapshot snapshot;
+
+    RedisStore() {
+        this(0, EvictionPolicy.ALLKEYS_LRU, System::currentTimeMillis);
+    }
+
+    RedisStore(long maxMemory, EvictionPolicy policy, LongSupplier clock) {
+        this(maxMemory, policy, clock, MapEncoding.LISTPACK);
+    }
+
+    RedisStore(long maxMemory, EvictionPolicy policy, LongSupplier clock, MapEncoding mapEncoding) {
+        this.clock = clock;
+        this.mapEncoding = mapEncoding;
+        this.mapMemory = mapEncoding == MapEncoding.LISTPACK_OFF_HEAP ? new OffHeapSlab() : MapMemory.HEAP;
+        this.maxMemory = maxMemory;
+        this.tracker = maxMemory > 0 ? new KeyspaceTracker(policy) : null;
+        this.expires = new TimingWheel(clock.getAsLong());
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    Map<String, String> newMap() {
+        return mapEncoding == MapEncoding.HASHTABLE ? new HashMap<>() : new CompactMap(mapMemory);
+    }
+
+    long offHeapBytes() {
+        return mapMemory instanceof OffHeapSlab slab ? slab.reservedBytes() : 0;
+    }
+
+    boolean exists(String key) {
+        return strings.containsKey(key) || maps.containsKey(key);
+    }
+
+    StoreSnapshot beginSnapshot() {
+        var active = snapshot;
+        if (active != null && !active.finished()) throw new IllegalStateException("Snapshot already in progress");
+        if (active != null) active.releaseRetired();
+        snapshot = new StoreSnapshot(this);
+        return snapshot;
+    }
+
+    CompletableFuture<Void> snapshotInProgress() {
+        var active = snapshot;
+        return active == null || active.finished() ? null : active.done();
+    }
+
+    void beforeWrite(String key) {
+        var active = snapshot;
+        if (active != null) active.preserve(key);
+    }
+
+    Map<String, String> mutableMap(String key) {
+        var map = maps.get(key);
+        var active = snapshot;
+        if (active == null) return map;
+        active.preserve(key);
+        if (map == null || !active.shares(key, map)) return map;
+        Map<String, String> copy;
+        if (map instanceof CompactMap compact) {
+            copy = compact.copy(mapMemory);
+            active.retire(compact);
+        } else {
+            copy = new HashMap<>(map);
+        }
+        maps.put(key, copy);
+        return copy;
+    }
+
+    void restore(String key, String value, Map<String, String> map, long deadline) {
+        if (deadline >= 0 && deadline <= now()) return;
+        beforeWrite(key);
+        if (value != null) {
+            String old = strings.put(key, value);
+            written(key, old == null ? sizeOf(key, value) : 2L * (value.length() - old.length()));
+        } else {
+            if (map instanceof CompactMap compact && mapEncoding == MapEncoding.HASHTABLE) map = new HashMap<>(compact);
+            else if (map instanceof CompactMap compact && mapMemory != MapMemory.HEAP) map = compact.copy(mapMemory);
+            var old = maps.put(key, map);
+            if (old instanceof CompactMap compact) release(compact);
+            written(key, sizeOf(key, map) - (old == null ? 0 : sizeOf(key, old)));
+        }
+        if (deadline >= 0) expires.schedule(key, deadline);
+    }
+
+    void release(CompactMap map) {
+        var active = snapshot;
+        if (active != null) active.retire(map);
+        else map.release();
+    }
+
+    void touch(String key) {
+        if (tracker != null) tracker.touch(key, now());
+    }
+
+    void written(String key, long bytes) {
+        usedMemory += bytes;
+        if (tracker == null) return;
+        tracker.touch(key, now());
+        while (evicting && usedMemory > maxMemory && tracker.size() > 0) {
+            String victim = tracker.sample(now());
+            delete(victim);
+            evicted.add(victim);
+            evictedKeys++;
+        }
+    }
+
+    boolean evictions(boolean enabled) {
+        boolean previous = evicting;
+        evicting = enabled;
+        return previous;
+    }
+
+    List<String> drainEvicted() {
+        if (evicted.isEmpty()) return List.of();
+        var keys = List.copyOf(evicted);
+        evicted.clear();
+        return keys;
+    }
+
+    boolean removeString(String key) {
+        beforeWrite(key);
+        var value = strings.remove(key);
+        if (value == null) return false;
+        usedMemory -= sizeOf(key, value);
+        if (!maps.containsKey(key)) forget(key);
+        return true;
+    }
+
+    boolean delete(String key) {
+        beforeWrite(key);
+        var value = strings.remove(key);
+        if (value != null) usedMemory -= sizeOf(key, value);
+        var map = maps.remove(key);
+        if (map != null) usedMemory -= sizeOf(key, map);
+        if (map instanceof CompactMap compact) release(compact);
+        forget(key);
+        return value != null || map != null;
+    }
+
+    void clear() {
+        for (var key : new ArrayList<>(strings.keySet())) delete(key);
+        for (var key : new ArrayList<>(maps.keySet())) delete(key);
+    }
+
+    void expireDue() {
+        var active = snapshot;
+        expires.advance(now(), (key, deadline) -> {
+            if (active != null) active.preserve(key, deadline);
+            delete(key);
+            expiredKeys++;
+        });
+        if (active != null && active.finished()) {
+            snapshot = null;
+            active.releaseRetired();
+        }
+    }
+
+    StoreStats stats() {
+        long keys = strings.size() + maps.keySet().stream().filter(key -> !strings.containsKey(key)).count();
+        return new StoreStats(keys, expires.size(), usedMemory, maxMemory, expiredKeys, evictedKeys);
+    }
+
+    static long sizeOf(String key, String value) {
+        return ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+    }
+
+    static long sizeOf(String key, Map<String, String> map) {
+        if (map instanceof CompactMap compact) return sizeOf(key, "") + compact.footprint();
+        long size = sizeOf(key, "");
+        for (var field : map.entrySet()) {
+            size += sizeOf(field.getKey(), field.getValue());
+        }
+        return size;
+    }
+
+    private void forget(String key) {
+        expires.cancel(key);
+        if (tracker != null) tracker.remove(key);
+    }
 }
 
 record SetCommand(String key, String value) implements Command {
     @Override
     public String execute(RedisStore store) {
-        store.strings.put(key, value);
+        store.beforeWrite(key);
+        String old = store.strings.put(key, value);
+        store.expires.cancel(key);
+        store.written(key, old == null ? RedisStore.sizeOf(key, value) : 2L * (value.length() - old.length()));
         return "OK";
     }
 }
@@ -23,22 +236,35 @@ record SetCommand(String key, String value) implements Command {
 record GetCommand(String key) implements Command {
     @Override
     public String execute(RedisStore store) {
-        return store.strings.getOrDefault(key, "(nil)");
+        String value = store.strings.get(key);
+        if (value == null) return Command.NIL;
+        store.touch(key);
+        return value;
     }
 }
 
 record RemoveCommand(String key) implements Command {
     @Override
     public String execute(RedisStore store) {
-        return store.strings.remove(key) != null ? "OK" : "(nil)";
+        return store.removeString(key) ? "OK" : Command.NIL;
+    }
+}
+
+record UnlinkCommand(String key) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        return store.delete(key) ? "1" : "0";
     }
 }
 
 record AppendCommand(String key, String value) implements Command {
     @Override
     public String execute(RedisStore store) {
-        String newValue = store.strings.getOrDefault(key, "") + value;
+        store.beforeWrite(key);
+        String old = store.strings.get(key);
+        String newValue = old == null ? value : old + value;
         store.strings.put(key, newValue);
+        store.written(key, old == null ? RedisStore.sizeOf(key, newValue) : 2L * value.length());
         return newValue;
     }
 }
@@ -46,7 +272,28 @@ record AppendCommand(String key, String value) implements Command {
 record MapSetCommand(String map, String key, String value) implements Command {
     @Override
     public String execute(RedisStore store) {
-        store.maps.computeIfAbsent(map, k -> new HashMap<>()).put(key, value);
+        long bytes = 0;
+        Map<String, String> m = store.mutableMap(map);
+        if (m == null) {
+            m = store.newMap();
+            store.maps.put(map, m);
+            bytes += RedisStore.sizeOf(map, m);
+        }
+        if (m instanceof CompactMap compact) {
+            if (compact.accepts(key, value)) {
+                long before = compact.footprint();
+                compact.put(key, value);
+                store.written(map, bytes + compact.footprint() - before);
+                return "OK";
+            }
+            m = new HashMap<>(compact);
+            store.maps.put(map, m);
+            bytes += RedisStore.sizeOf(map, m) - RedisStore.sizeOf(map, compact);
+            store.release(compact);
+        }
+        String old = m.put(key, value);
+        bytes += old == null ? RedisStore.sizeOf(key, value) : 2L * (value.length() - old.length());
+        store.written(map, bytes);
         return "OK";
     }
 }
@@ -55,40 +302,287 @@ record MapGetCommand(String map, String key) implements Command {
     @Override
     public String execute(RedisStore store) {
         Map<String, String> m = store.maps.get(map);
-        return m != null ? m.getOrDefault(key, "(nil)") : "(nil)";
+        if (m == null) return Command.NIL;
+        store.touch(map);
+        return m.getOrDefault(key, Command.NIL);
     }
 }
 
-record MapKeysCommand(String map) implements Command {
+record MapKeysCommand(String map) implements MultiBulkCommand {
     @Override
     public String execute(RedisStore store) {
         Map<String, String> m = store.maps.get(map);
-        return m != null ? String.join(", ", m.keySet()) : "(nil)";
+        if (m == null) return Command.NIL;
+        store.touch(map);
+        return m instanceof CompactMap compact ? compact.joinKeys(", ") : String.join(", ", m.keySet());
+    }
+
+    @Override
+    public List<String> elements(RedisStore store) {
+        Map<String, String> m = store.maps.get(map);
+        if (m == null) return List.of();
+        store.touch(map);
+        return new ArrayList<>(m.keySet());
     }
 }
 
-record MapValuesCommand(String map) implements Command {
+record MapValuesCommand(String map) implements MultiBulkCommand {
     @Override
     public String execute(RedisStore store) {
         Map<String, String> m = store.maps.get(map);
-        return m != null ? String.join(", ", m.values()) : "(nil)";
+        if (m == null) return Command.NIL;
+        store.touch(map);
+        return m instanceof CompactMap compact ? compact.joinValues(", ") : String.join(", ", m.values());
+    }
+
+    @Override
+    public List<String> elements(RedisStore store) {
+        Map<String, String> m = store.maps.get(map);
+        if (m == null) return List.of();
+        store.touch(map);
+        return new ArrayList<>(m.values());
+    }
+}
+
+record ExpireCommand(String key, long seconds) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        return at(store.now()).execute(store);
+    }
+
+    ExpireAtCommand at(long now) {
+        try {
+            return new ExpireAtCommand(key, Math.addExact(now, Math.multiplyExact(seconds, 1000)));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("invalid expire time in 'expire' command");
+        }
+    }
+}
+
+record ExpireAtCommand(String key, long deadlineMillis) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        if (!store.exists(key)) return "0";
+        store.beforeWrite(key);
+        if (deadlineMillis <= store.now()) store.delete(key);
+        else store.expires.schedule(key, deadlineMillis);
+        return "1";
+    }
+}
+
+record TtlCommand(String key) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        if (!store.exists(key)) return "-2";
+        long deadline = store.expires.deadline(key);
+        if (deadline < 0) return "-1";
+        return Long.toString((deadline - store.now() + 999) / 1000);
+    }
+}
+
+record PersistCommand(String key) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        store.beforeWrite(key);
+        return store.expires.cancel(key) ? "1" : "0";
+    }
+}
+
+record RestoreCommand(String key, String value, Map<String, String> map, long deadline) implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        store.restore(key, value, map, deadline);
+        return "OK";
+    }
+}
+
+record InfoCommand() implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        return store.stats().format();
+    }
+}
+
+record PingCommand() implements Command {
+    @Override
+    public String execute(RedisStore store) {
+        return "PONG";
     }
 }
 
 class CommandInvoker {
     private final RedisStore store;
+    private final AppendOnlyFile aof;
+    private final ReplicationPrimary replication;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean readOnly;
 
     CommandInvoker(RedisStore store) {
+        this(store, null);
+    }
+
+    CommandInvoker(RedisStore store, AppendOnlyFile aof) {
+        this(store, aof, null);
+    }
+
+    CommandInvoker(RedisStore store, AppendOnlyFile aof, ReplicationPrimary replication) {
         this.store = store;
+        this.aof = aof;
+        this.replication = replication;
+        if (replication != null) replication.attach(this::syncPoint);
     }
 
     String execute(Command command) {
-        return command.execute(store);
+        if (readOnly && !ReplicationReplica.isRead(command)) {
+            throw new IllegalArgumentException("READONLY You can't write against a read only replica");
+        }
+        return apply(command);
+    }
+
+    String apply(Command command) {
+        lock.lock();
+        try {
+            if (aof != null && !ReplicationReplica.isRead(command)) aof.checkWritable();
+            store.expireDue();
+            command = resolve(command, store);
+            String result = command.execute(store);
+            if (aof != null) aof.log(command, result);
+            if (replication != null) replication.feed(command, result);
+            propagateEvictions();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<String> elements(MultiBulkCommand command) {
+        lock.lock();
+        try {
+            store.expireDue();
+            var elements = command.elements(store);
+            propagateEvictions();
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static Command resolve(Command command, RedisStore store) {
+        return command instanceof ExpireCommand expire ? expire.at(store.now()) : command;
+    }
+
+    void readOnly(boolean readOnly) {
+        lock.lock();
+        try {
+            this.readOnly = readOnly;
+            store.evictions(!readOnly);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void expireDue() {
+        lock.lock();
+        try {
+            store.expireDue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long replay() {
+        boolean evicting = store.evictions(false);
+        try {
+            return aof.replay(command -> command.execute(store));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            store.evictions(evicting);
+        }
+    }
+
+    CompletableFuture<Void> rewriteAppendOnlyFile() {
+        return aof.rewrite(() -> withSnapshot(List::of));
+    }
+
+    CompletableFuture<Long> save(Path path) {
+        lock.lock();
+        try {
+            var pending = store.snapshotInProgress();
+            if (pending != null) return pending.thenCompose(ignored -> save(path));
+            return SnapshotFile.save(path, List.of(store.beginSnapshot()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long load(Path path) {
+        lock.lock();
+        boolean evicting = store.evictions(false);
+        try {
+            return SnapshotFile.load(path, command -> command.execute(store));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            store.evictions(evicting);
+            lock.unlock();
+        }
+    }
+
+    long resync(Path path) {
+        lock.lock();
+        try {
+            SnapshotFile.verify(path);
+            store.clear();
+            return load(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void propagateEvictions() {
+        for (var key : store.drainEvicted()) {
+            var unlink = new UnlinkCommand(key);
+            if (aof != null) aof.log(unlink, "1");
+            if (replication != null) replication.feed(unlink, "1");
+        }
+    }
+
+    private SyncPoint syncPoint() {
+        return withSnapshot(snapshot -> new SyncPoint(List.of(snapshot), replication.offset()));
+    }
+
+    private <T> T withSnapshot(Function<StoreSnapshot, T> action) {
+        while (true) {
+            CompletableFuture<Void> pending;
+            lock.lock();
+            try {
+                store.expireDue();
+                pending = store.snapshotInProgress();
+                if (pending == null) return action.apply(store.beginSnapshot());
+            } finally {
+                lock.unlock();
+            }
+            pending.join();
+        }
     }
 }
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         System.out.println("Redis Clone");
+        if (args.length > 0) {
+            var aof = args.length > 1 ? new AppendOnlyFile(Path.of(args[1]), FsyncPolicy.EVERY_SECOND) : null;
+            var invoker = new CommandInvoker(new RedisStore(), aof);
+            if (aof != null) System.out.println("Replayed " + invoker.replay() + " commands from " + args[1]);
+            try (var server = new RespServer(invoker, Integer.parseInt(args[0]))) {
+                System.out.println("Listening on port " + server.port());
+                server.run();
+            } finally {
+                if (aof != null) aof.close();
+            }
+        }
     }
 }
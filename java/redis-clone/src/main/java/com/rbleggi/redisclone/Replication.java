@@ -0,0 +1,445 @@
+package com.rbleggi.redisclone;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+record SyncPoint(List<StoreSnapshot> snapshots, long offset) {
+}
+
+final class ReplicationBacklog {
+    private final byte[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private long end;
+    private boolean closed;
+
+    ReplicationBacklog(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("backlog capacity must be positive: " + capacity);
+        ring = new byte[capacity];
+    }
+
+    void append(ByteBuffer source) {
+        lock.lock();
+        try {
+            int length = source.remaining();
+            if (length > ring.length) {
+                source.position(source.position() + length - ring.length);
+                end += length - ring.length;
+                length = ring.length;
+            }
+            int at = (int) (end % ring.length);
+            int first = Math.min(length, ring.length - at);
+            source.get(ring, at, first);
+            source.get(ring, 0, length - first);
+            end += length;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long offset() {
+        lock.lock();
+        try {
+            return end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean covers(long offset) {
+        lock.lock();
+        try {
+            return offset >= start() && offset <= end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int read(long from, byte[] target, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = timeoutNanos;
+            while (from == end && !closed && nanos > 0) nanos = appended.awaitNanos(nanos);
+            if (closed || from < start() || from > end) return -1;
+            int length = (int) Math.min(target.length, end - from);
+            int at = (int) (from % ring.length);
+            int first = Math.min(length, ring.length - at);
+            System.arraycopy(ring, at, target, 0, first);
+            System.arraycopy(ring, 0, target, first, length - first);
+            return length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long start() {
+        return Math.max(0, end - ring.length);
+    }
+}
+
+final class RespStreamReader {
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024).flip();
+
+    RespStreamReader(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    ByteBuffer buffer() {
+        return in;
+    }
+
+    String line() throws IOException {
+        while (true) {
+            for (int i = in.position(); i + 1 < in.limit(); i++) {
+                if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                    var line = new String(in.array(), in.position(), i - in.position(), StandardCharsets.UTF_8);
+                    in.position(i + 2);
+                    return line;
+                }
+            }
+            fill();
+        }
+    }
+
+    String[] frame() throws IOException {
+        String[] args;
+        while ((args = RespCodec.decodeFrame(in)) == null) fill();
+        return args;
+    }
+
+    void fill() throws IOException {
+        in.compact();
+        if (!in.hasRemaining()) in = RespCodec.ensureCapacity(in, in.capacity());
+        if (channel.read(in) < 0) throw new EOFException("Replication stream closed");
+        in.flip();
+    }
+}
+
+class ReplicationPrimary implements Closeable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ReplicationBacklog backlog;
+    private final ServerSocketChannel server;
+    private final String replicationId;
+    private final Set<SocketChannel> replicas = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock fullSyncLock = new ReentrantLock();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private volatile Supplier<SyncPoint> syncSource;
+    private volatile boolean closed;
+
+    ReplicationPrimary(int port, int backlogSize) throws IOException {
+        backlog = new ReplicationBacklog(backlogSize);
+        var id = new byte[20];
+        ThreadLocalRandom.current().nextBytes(id);
+        replicationId = HexFormat.of().formatHex(id);
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    void attach(Supplier<SyncPoint> source) {
+        if (syncSource != null) throw new IllegalStateException("Replication source already attached");
+        syncSource = source;
+        Thread.ofPlatform().daemon().name("repl-acceptor").start(this::acceptLoop);
+    }
+
+    void feed(Command command, String result) {
+        var args = AppendOnlyFile.mutation(command, result, true);
+        if (args == null) return;
+        scratch.clear();
+        scratch = RespCodec.ensureCapacity(scratch, RespCodec.encodedCommandBound(args));
+        RespCodec.encodeCommand(scratch, args);
+        backlog.append(scratch.flip());
+    }
+
+    long offset() {
+        return backlog.offset();
+    }
+
+    String replicationId() {
+        return replicationId;
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    int connectedReplicas() {
+        return replicas.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        backlog.close();
+        server.close();
+        for (var replica : replicas) replica.close();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                var channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+                replicas.add(channel);
+                Thread.ofPlatform().daemon().name("repl-sender").start(() -> serve(channel));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            var args = new RespStreamReader(channel).frame();
+            if (args.length != 3 || !args[0].equalsIgnoreCase("PSYNC")) {
+                write(channel, "-ERR expected PSYNC <replid> <offset>\r\n");
+                return;
+            }
+            long offset = parseOffset(args[2]);
+            long position;
+            if (replicationId.equals(args[1]) && backlog.covers(offset)) {
+                write(channel, "+CONTINUE\r\n");
+                position = offset;
+            } else {
+                position = fullResync(channel);
+            }
+            stream(channel, position);
+        } catch (IOException | RuntimeException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(channel);
+        }
+    }
+
+    private long fullResync(SocketChannel channel) throws IOException {
+        var file = Files.createTempFile("repl-", ".rdb");
+        fullSyncLock.lock();
+        try {
+            var point = syncSource.get();
+            SnapshotFile.write(file, point.snapshots());
+            try (var snapshot = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = snapshot.size();
+                write(channel, "+FULLRESYNC " + replicationId + " " + point.offset() + "\r\n$" + size + "\r\n");
+                for (long sent = 0; sent < size; ) {
+                    sent += snapshot.transferTo(sent, size - sent, channel);
+                }
+            }
+            return point.offset();
+        } finally {
+            fullSyncLock.unlock();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void stream(SocketChannel channel, long position) throws IOException, InterruptedException {
+        var chunk = new byte[CHUNK_SIZE];
+        while (!closed) {
+            int read = backlog.read(position, chunk, POLL_NANOS);
+            if (read < 0) return;
+            var out = ByteBuffer.wrap(chunk, 0, read);
+            while (out.hasRemaining()) channel.write(out);
+            position += read;
+        }
+    }
+
+    private static long parseOffset(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void write(SocketChannel channel, String line) throws IOException {
+        var out = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (out.hasRemaining()) channel.write(out);
+    }
+}
+
+class ReplicationReplica implements Closeable {
+    private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final CommandInvoker invoker;
+    private final InetSocketAddress primary;
+    private final Thread worker;
+    private volatile String replicationId;
+    private volatile long offset;
+    private volatile long fullSyncs;
+    private volatile long partialSyncs;
+    private volatile long failures;
+    private volatile Exception lastError;
+    private volatile SocketChannel channel;
+    private volatile boolean closed;
+
+    ReplicationReplica(CommandInvoker invoker, String host, int port) {
+        this(invoker, host, port, "?", -1);
+    }
+
+    ReplicationReplica(CommandInvoker invoker, String host, int port, String replicationId, long offset) {
+        this.invoker = invoker;
+        this.primary = new InetSocketAddress(host, port);
+        this.replicationId = replicationId;
+        this.offset = offset;
+        invoker.readOnly(true);
+        worker = Thread.ofPlatform().daemon().name("repl-replica").start(this::run);
+    }
+
+    static boolean isRead(Command command) {
+        return command instanceof GetCommand || command instanceof MapGetCommand || command instanceof MapKeysCommand
+            || command instanceof MapValuesCommand || command instanceof TtlCommand || command instanceof InfoCommand
+            || command instanceof PingCommand;
+    }
+
+    String replicationId() {
+        return replicationId;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    long fullSyncs() {
+        return fullSyncs;
+    }
+
+    long partialSyncs() {
+        return partialSyncs;
+    }
+
+    long failures() {
+        return failures;
+    }
+
+    Exception lastError() {
+        return lastError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        var current = channel;
+        if (current != null) current.close();
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        invoker.readOnly(false);
+    }
+
+    private void run() {
+        while (!closed) {
+            try (var link = SocketChannel.open(primary)) {
+                channel = link;
+                if (closed) return;
+                link.socket().setTcpNoDelay(true);
+                replicate(link);
+            } catch (IOException | RuntimeException e) {
+                if (closed) return;
+                lastError = e;
+                failures++;
+            }
+            LockSupport.parkNanos(RETRY_NANOS);
+        }
+    }
+
+    private void replicate(SocketChannel link) throws IOException {
+        var request = ByteBuffer.allocate(256);
+        RespCodec.encodeCommand(request, "PSYNC", replicationId, Long.toString(offset));
+        request.flip();
+        while (request.hasRemaining()) link.write(request);
+
+        var reader = new RespStreamReader(link);
+        String reply = reader.line();
+        if (reply.startsWith("+FULLRESYNC ")) {
+            var parts = reply.split(" ");
+            long size = Long.parseLong(reader.line().substring(1));
+            var file = Files.createTempFile("replica-", ".rdb");
+            try {
+                receive(link, reader, file, size);
+                invoker.resync(file);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+            replicationId = parts[1];
+            offset = Long.parseLong(parts[2]);
+            fullSyncs++;
+        } else if (reply.equals("+CONTINUE")) {
+            partialSyncs++;
+        } else {
+            throw new IOException("Unexpected PSYNC reply: " + reply);
+        }
+
+        while (!closed) {
+            var in = reader.buffer();
+            String[] args;
+            int start = in.position();
+            try {
+                while ((args = RespCodec.decodeFrame(in)) != null) {
+                    invoker.apply(RespCodec.toCommand(args));
+                    offset += in.position() - start;
+                    start = in.position();
+                }
+            } catch (RuntimeException e) {
+                replicationId = "?";
+                offset = -1;
+                throw e;
+            }
+            reader.fill();
+        }
+    }
+
+    private static void receive(SocketChannel link, RespStreamReader reader, Path file, long size) throws IOException {
+        try (var target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            var in = reader.buffer();
+            int buffered = (int) Math.min(in.remaining(), size);
+            var head = in.slice(in.position(), buffered);
+            while (head.hasRemaining()) target.write(head);
+            in.position(in.position() + buffered);
+            long remaining = size - buffered;
+            var chunk = ByteBuffer.allocate(64 * 1024);
+            while (remaining > 0) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), remaining));
+                if (link.read(chunk) < 0) throw new EOFException("Replication stream closed during full resync");
+                chunk.flip();
+                remaining -= chunk.remaining();
+                while (chunk.hasRemaining()) target.write(chunk);
+            }
+        }
+    }
+}
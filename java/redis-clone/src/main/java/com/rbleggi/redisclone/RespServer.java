@@ -0,0 +1,387 @@
+package com.rbleggi.redisclone;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class RespProtocolException extends RuntimeException {
+    RespProtocolException(String message) {
+        super(message);
+    }
+}
+
+final class RespCodec {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private RespCodec() {
+    }
+
+    static String[] decodeFrame(ByteBuffer in) {
+        int start = in.position();
+        if (!in.hasRemaining()) return null;
+        if (in.get() != '*') throw new RespProtocolException("expected array");
+        long count = readLong(in);
+        if (count == Long.MIN_VALUE) return rewind(in, start);
+        if (count < 1 || count > 1024 * 1024) throw new RespProtocolException("invalid multibulk length");
+        var args = new String[(int) count];
+        for (int i = 0; i < count; i++) {
+            if (!in.hasRemaining()) return rewind(in, start);
+            if (in.get() != '$') throw new RespProtocolException("expected bulk string");
+            long len = readLong(in);
+            if (len == Long.MIN_VALUE) return rewind(in, start);
+            if (len < 0 || len > 512L * 1024 * 1024) throw new RespProtocolException("invalid bulk length");
+            if (in.remaining() < len + 2) return rewind(in, start);
+            args[i] = decodeString(in, (int) len);
+            if (in.get() != '\r' || in.get() != '\n') throw new RespProtocolException("expected CRLF after bulk string");
+        }
+        return args;
+    }
+
+    static Command toCommand(String[] args) {
+        String name = args[0];
+        if (name.equalsIgnoreCase("GET") && args.length == 2) return new GetCommand(args[1]);
+        if (name.equalsIgnoreCase("SET") && args.length == 3) return new SetCommand(args[1], args[2]);
+        if (name.equalsIgnoreCase("DEL") && args.length == 2) return new RemoveCommand(args[1]);
+        if (name.equalsIgnoreCase("UNLINK") && args.length == 2) return new UnlinkCommand(args[1]);
+        if (name.equalsIgnoreCase("APPEND") && args.length == 3) return new AppendCommand(args[1], args[2]);
+        if (name.equalsIgnoreCase("HSET") && args.length == 4) return new MapSetCommand(args[1], args[2], args[3]);
+        if (name.equalsIgnoreCase("HGET") && args.length == 3) return new MapGetCommand(args[1], args[2]);
+        if (name.equalsIgnoreCase("HKEYS") && args.length == 2) return new MapKeysCommand(args[1]);
+        if (name.equalsIgnoreCase("HVALS") && args.length == 2) return new MapValuesCommand(args[1]);
+        if (name.equalsIgnoreCase("EXPIRE") && args.length == 3) return new ExpireCommand(args[1], Long.parseLong(args[2]));
+        if (name.equalsIgnoreCase("PEXPIREAT") && args.length == 3) return new ExpireAtCommand(args[1], Long.parseLong(args[2]));
+        if (name.equalsIgnoreCase("TTL") && args.length == 2) return new TtlCommand(args[1]);
+        if (name.equalsIgnoreCase("PERSIST") && args.length == 2) return new PersistCommand(args[1]);
+        if (name.equalsIgnoreCase("INFO") && args.length == 1) return new InfoCommand();
+        if (name.equalsIgnoreCase("PING") && args.length == 1) return new PingCommand();
+        throw new IllegalArgumentException("unknown command or wrong number of arguments for '" + name + "'");
+    }
+
+    static void encodeCommand(ByteBuffer out, String... args) {
+        out.put((byte) '*');
+        putLong(out, args.length);
+        for (var arg : args) {
+            var bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.put((byte) '$');
+            putLong(out, bytes.length);
+            out.put(bytes).put(CRLF);
+        }
+    }
+
+    static void encodeReply(ByteBuffer out, Command command, String reply) {
+        switch (command) {
+            case SetCommand _, MapSetCommand _, RestoreCommand _, PingCommand _ -> {
+                out.put((byte) '+');
+                putAscii(out, reply);
+                out.put(CRLF);
+            }
+            case RemoveCommand _ -> encodeInteger(out, reply == Command.NIL ? 0 : 1);
+            case UnlinkCommand _, ExpireCommand _, ExpireAtCommand _, TtlCommand _, PersistCommand _ -> encodeInteger(out, Long.parseLong(reply));
+            default -> encodeBulk(out, reply);
+        }
+    }
+
+    static void encodeBulk(ByteBuffer out, String reply) {
+        if (reply == Command.NIL) {
+            out.put(NULL_BULK);
+            return;
+        }
+        var bytes = reply.getBytes(StandardCharsets.UTF_8);
+        out.put((byte) '$');
+        putLong(out, bytes.length);
+        out.put(bytes).put(CRLF);
+    }
+
+    static void encodeArray(ByteBuffer out, List<String> elements) {
+        out.put((byte) '*');
+        putLong(out, elements.size());
+        for (var element : elements) {
+            encodeBulk(out, element);
+        }
+    }
+
+    static void encodeInteger(ByteBuffer out, long value) {
+        out.put((byte) ':');
+        putLong(out, value);
+    }
+
+    static void encodeError(ByteBuffer out, String message) {
+        out.put((byte) '-');
+        if (!hasErrorCode(message)) putAscii(out, "ERR ");
+        out.put(message.replace('\r', ' ').replace('\n', ' ').getBytes(StandardCharsets.UTF_8));
+        out.put(CRLF);
+    }
+
+    private static boolean hasErrorCode(String message) {
+        int space = message.indexOf(' ');
+        if (space < 1) return false;
+        for (int i = 0; i < space; i++) {
+            char c = message.charAt(i);
+            if (c < 'A' || c > 'Z') return false;
+        }
+        return true;
+    }
+
+    static int encodedReplyBound(String reply) {
+        return reply.length() * 3 + 16;
+    }
+
+    static int encodedArrayBound(List<String> elements) {
+        int bound = 16;
+        for (var element : elements) {
+            bound += encodedReplyBound(element);
+        }
+        return bound;
+    }
+
+    static int encodedCommandBound(String... args) {
+        int bound = 16;
+        for (var arg : args) {
+            bound += arg.length() * 3 + 16;
+        }
+        return bound;
+    }
+
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        var bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+
+    static boolean skipReply(ByteBuffer in) {
+        int start = in.position();
+        if (!in.hasRemaining()) return false;
+        byte type = in.get();
+        if (type == '+' || type == '-' || type == ':') {
+            while (in.remaining() >= 2) {
+                if (in.get() == '\r' && in.get(in.position()) == '\n') {
+                    in.get();
+                    return true;
+                }
+            }
+            in.position(start);
+            return false;
+        }
+        if (type != '$') throw new RespProtocolException("unexpected reply type " + (char) type);
+        long len = readLong(in);
+        if (len == Long.MIN_VALUE) {
+            in.position(start);
+            return false;
+        }
+        if (len < 0) return true;
+        if (in.remaining() < len + 2) {
+            in.position(start);
+            return false;
+        }
+        in.position(in.position() + (int) len);
+        if (in.get() != '\r' || in.get() != '\n') throw new RespProtocolException("expected CRLF after bulk string");
+        return true;
+    }
+
+    private static String[] rewind(ByteBuffer in, int start) {
+        in.position(start);
+        return null;
+    }
+
+    private static long readLong(ByteBuffer in) {
+        long value = 0;
+        boolean negative = false;
+        if (in.hasRemaining() && in.get(in.position()) == '-') {
+            negative = true;
+            in.get();
+        }
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\r') {
+                if (!in.hasRemaining()) return Long.MIN_VALUE;
+                if (in.get() != '\n') throw new RespProtocolException("expected LF");
+                return negative ? -value : value;
+            }
+            if (b < '0' || b > '9') throw new RespProtocolException("invalid integer");
+            value = value * 10 + (b - '0');
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static String decodeString(ByteBuffer in, int len) {
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), len, StandardCharsets.UTF_8);
+            in.position(in.position() + len);
+        } else {
+            var bytes = new byte[len];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void putLong(ByteBuffer out, long value) {
+        putAscii(out, Long.toString(value));
+        out.put(CRLF);
+    }
+
+    private static void putAscii(ByteBuffer out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.put((byte) value.charAt(i));
+        }
+    }
+}
+
+class RespConnection {
+    private static final int INITIAL_BUFFER = 16 * 1024;
+
+    ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+    ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER);
+
+    void ensureReadCapacity() {
+        in = RespCodec.ensureCapacity(in, 1);
+    }
+
+    void ensureWriteCapacity(int bytes) {
+        out = RespCodec.ensureCapacity(out, bytes);
+    }
+}
+
+class RespServer implements Closeable, Runnable {
+    private static final long CRON_MILLIS = 100;
+
+    private final CommandInvoker invoker;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    RespServer(CommandInvoker invoker, int port) throws IOException {
+        this.invoker = invoker;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(CRON_MILLIS);
+                invoker.expireDue();
+                var keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    var key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else if (key.isWritable()) flush(key);
+                        else if (key.isReadable()) read(key);
+                    } catch (IOException e) {
+                        closeKey(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("RESP server failed", e);
+        } finally {
+            selector.keys().forEach(this::closeKey);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        server.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            client.register(selector, SelectionKey.OP_READ, new RespConnection());
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        var channel = (SocketChannel) key.channel();
+        var conn = (RespConnection) key.attachment();
+        conn.ensureReadCapacity();
+        if (channel.read(conn.in) < 0) {
+            closeKey(key);
+            return;
+        }
+        conn.in.flip();
+        try {
+            executeBatch(conn);
+        } catch (RespProtocolException e) {
+            conn.ensureWriteCapacity(RespCodec.encodedReplyBound(e.getMessage()) + 48);
+            RespCodec.encodeError(conn.out, "Protocol error: " + e.getMessage());
+            flush(key);
+            closeKey(key);
+            return;
+        }
+        conn.in.compact();
+        flush(key);
+    }
+
+    private void executeBatch(RespConnection conn) {
+        String[] args;
+        while ((args = RespCodec.decodeFrame(conn.in)) != null) {
+            Command command;
+            String reply;
+            try {
+                command = RespCodec.toCommand(args);
+                if (command instanceof MultiBulkCommand multiBulk) {
+                    var elements = invoker.elements(multiBulk);
+                    conn.ensureWriteCapacity(RespCodec.encodedArrayBound(elements));
+                    RespCodec.encodeArray(conn.out, elements);
+                    continue;
+                }
+                reply = invoker.execute(command);
+            } catch (RuntimeException e) {
+                String message = e.getMessage() == null ? e.toString() : e.getMessage();
+                conn.ensureWriteCapacity(RespCodec.encodedReplyBound(message) + 4);
+                RespCodec.encodeError(conn.out, message);
+                continue;
+            }
+            conn.ensureWriteCapacity(RespCodec.encodedReplyBound(reply));
+            RespCodec.encodeReply(conn.out, command, reply);
+        }
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        var conn = (RespConnection) key.attachment();
+        if (conn.out.position() == 0) return;
+        conn.out.flip();
+        ((SocketChannel) key.channel()).write(conn.out);
+        boolean pending = conn.out.hasRemaining();
+        conn.out.compact();
+        if (key.isValid()) key.interestOps(pending ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void closeKey(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.rbleggi.redisclone;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+class ShardedCommandInvoker {
+    private final RedisStore[] shards;
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final AppendOnlyFile aof;
+
+    ShardedCommandInvoker(int shardCount) {
+        this(shardCount, null);
+    }
+
+    ShardedCommandInvoker(int shardCount, AppendOnlyFile aof) {
+        this(shardCount, aof, RedisStore::new);
+    }
+
+    ShardedCommandInvoker(int shardCount, AppendOnlyFile aof, Supplier<RedisStore> storeFactory) {
+        if (shardCount < 1 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("shardCount must be a power of two: " + shardCount);
+        }
+        shards = new RedisStore[shardCount];
+        locks = new ReentrantLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = storeFactory.get();
+            locks[i] = new ReentrantLock();
+        }
+        mask = shardCount - 1;
+        this.aof = aof;
+    }
+
+    String execute(Command command) {
+        if (command instanceof PingCommand) return "PONG";
+        if (command instanceof InfoCommand) {
+            expireDue();
+            return stats().format();
+        }
+        int index = shardIndex(routingKey(command));
+        var lock = locks[index];
+        lock.lock();
+        try {
+            if (aof != null && !ReplicationReplica.isRead(command)) aof.checkWritable();
+            shards[index].expireDue();
+            command = CommandInvoker.resolve(command, shards[index]);
+            String result = command.execute(shards[index]);
+            if (aof != null) aof.log(command, result);
+            for (var key : shards[index].drainEvicted()) {
+                if (aof != null) aof.log(new UnlinkCommand(key), "1");
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long replay() {
+        for (var shard : shards) shard.evictions(false);
+        try {
+            return aof.replay(command -> command.execute(shards[shardIndex(routingKey(command))]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (var shard : shards) shard.evictions(true);
+        }
+    }
+
+    CompletableFuture<Void> rewriteAppendOnlyFile() {
+        return aof.rewrite(() -> {
+            while (true) {
+                CompletableFuture<Void> pending = null;
+                for (var lock : locks) lock.lock();
+                try {
+                    for (int i = 0; i < shards.length && pending == null; i++) pending = shards[i].snapshotInProgress();
+                    if (pending == null) {
+                        var snapshots = new ArrayList<StoreSnapshot>(shards.length);
+                        for (var shard : shards) snapshots.add(shard.beginSnapshot());
+                        return snapshots;
+                    }
+                } finally {
+                    for (var lock : locks) lock.unlock();
+                }
+                pending.join();
+            }
+        });
+    }
+
+    CompletableFuture<Long> save(Path path) {
+        var snapshots = new ArrayList<StoreSnapshot>(shards.length);
+        for (var lock : locks) lock.lock();
+        try {
+            for (var shard : shards) {
+                var pending = shard.snapshotInProgress();
+                if (pending != null) return pending.thenCompose(ignored -> save(path));
+            }
+            for (var shard : shards) snapshots.add(shard.beginSnapshot());
+        } catch (RuntimeException e) {
+            snapshots.forEach(StoreSnapshot::finish);
+            throw e;
+        } finally {
+            for (var lock : locks) lock.unlock();
+        }
+        return SnapshotFile.save(path, snapshots);
+    }
+
+    long load(Path path) {
+        for (var shard : shards) shard.evictions(false);
+        try {
+            return SnapshotFile.load(path, command -> command.execute(shards[shardIndex(routingKey(command))]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (var shard : shards) shard.evictions(true);
+        }
+    }
+
+    void expireDue() {
+        for (int i = 0; i < shards.length; i++) {
+            locks[i].lock();
+            try {
+                shards[i].expireDue();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    StoreStats stats() {
+        var total = new StoreStats(0, 0, 0, 0, 0, 0);
+        for (int i = 0; i < shards.length; i++) {
+            locks[i].lock();
+            try {
+                total = total.plus(shards[i].stats());
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    RedisStore shardFor(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    private int shardIndex(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    static String routingKey(Command command) {
+        return switch (command) {
+            case SetCommand c -> c.key();
+            case GetCommand c -> c.key();
+            case RemoveCommand c -> c.key();
+            case UnlinkCommand c -> c.key();
+            case AppendCommand c -> c.key();
+            case MapSetCommand c -> c.map();
+            case MapGetCommand c -> c.map();
+            case MapKeysCommand c -> c.map();
+            case MapValuesCommand c -> c.map();
+            case ExpireCommand c -> c.key();
+            case ExpireAtCommand c -> c.key();
+            case TtlCommand c -> c.key();
+            case PersistCommand c -> c.key();
+            case RestoreCommand c -> c.key();
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,356 @@
+package com.rbleggi.redisclone;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+record KeyImage(String value, Map<String, String> map, long deadline) {
+}
+
+final class StoreSnapshot {
+    private final RedisStore store;
+    private final ConcurrentHashMap<String, KeyImage> preImages = new ConcurrentHashMap<>();
+    private final List<CompactMap> retired = new ArrayList<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile boolean finished;
+
+    StoreSnapshot(RedisStore store) {
+        this.store = store;
+    }
+
+    void preserve(String key) {
+        if (!finished && !preImages.containsKey(key)) preserve(key, store.expires.deadline(key));
+    }
+
+    void preserve(String key, long deadline) {
+        if (finished || preImages.containsKey(key)) return;
+        preImages.put(key, new KeyImage(store.strings.get(key), store.maps.get(key), deadline));
+    }
+
+    boolean shares(String key, Map<String, String> map) {
+        var image = preImages.get(key);
+        return image != null && image.map() == map;
+    }
+
+    void retire(CompactMap map) {
+        retired.add(map);
+    }
+
+    void releaseRetired() {
+        retired.forEach(CompactMap::release);
+        retired.clear();
+    }
+
+    int preservedKeys() {
+        return preImages.size();
+    }
+
+    boolean finished() {
+        return finished;
+    }
+
+    CompletableFuture<Void> done() {
+        return done;
+    }
+
+    void finish() {
+        finished = true;
+        done.complete(null);
+    }
+
+    void forEach(KeyVisitor visitor) throws IOException {
+        for (var entry : store.strings.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            long deadline = store.expires.deadline(key);
+            if (!preImages.containsKey(key)) visitor.visit(key, value, null, deadline);
+        }
+        for (var entry : store.maps.entrySet()) {
+            String key = entry.getKey();
+            var map = entry.getValue();
+            long deadline = store.expires.deadline(key);
+            if (!preImages.containsKey(key)) visitor.visit(key, null, map, deadline);
+        }
+        for (var entry : preImages.entrySet()) {
+            var image = entry.getValue();
+            if (image.value() != null || image.map() != null) {
+                visitor.visit(entry.getKey(), image.value(), image.map(), image.deadline());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface KeyVisitor {
+        void visit(String key, String value, Map<String, String> map, long deadline) throws IOException;
+    }
+}
+
+final class SnapshotFile {
+    private static final byte[] MAGIC = "RCDB0001".getBytes(StandardCharsets.US_ASCII);
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_HASH = 2;
+    private static final byte TYPE_LISTPACK = 3;
+    private static final byte TYPE_EOF = (byte) 0xFF;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotFile() {
+    }
+
+    static CompletableFuture<Long> save(Path path, List<StoreSnapshot> snapshots) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return write(path, snapshots);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, runnable -> Thread.ofPlatform().daemon().name("snapshot-writer").start(runnable));
+    }
+
+    static long write(Path path, List<StoreSnapshot> snapshots) throws IOException {
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var out = new Output(channel);
+            out.put(MAGIC);
+            long[] records = new long[1];
+            for (var snapshot : snapshots) {
+                snapshot.forEach((key, value, map, deadline) -> {
+                    if (value != null) {
+                        out.header(TYPE_STRING, deadline, key);
+                        out.putString(value);
+                        records[0]++;
+                    }
+                    if (map instanceof CompactMap compact) {
+                        out.header(TYPE_LISTPACK, deadline, key);
+                        out.putListpack(compact);
+                        records[0]++;
+                    } else if (map != null) {
+                        out.header(TYPE_HASH, deadline, key);
+                        out.putInt(map.size());
+                        for (var field : map.entrySet()) {
+                            out.putString(field.getKey());
+                            out.putString(field.getValue());
+                        }
+                        records[0]++;
+                    }
+                });
+            }
+            out.finish();
+            channel.force(true);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return records[0];
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            snapshots.forEach(StoreSnapshot::finish);
+        }
+    }
+
+    static void verify(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long body = channel.size() - Long.BYTES;
+            if (body < MAGIC.length + Byte.BYTES) throw new EOFException("Truncated snapshot");
+            var crc = new CRC32C();
+            var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (long position = 0; position < body; ) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), body - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) throw new EOFException("Truncated snapshot");
+                position += read;
+                crc.update(buffer.flip());
+            }
+            var trailer = ByteBuffer.allocate(Long.BYTES);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, body + trailer.position()) < 0) throw new EOFException("Truncated snapshot");
+            }
+            if (trailer.getLong(0) != crc.getValue()) throw new IOException("Snapshot checksum mismatch in " + path);
+        }
+    }
+
+    static long load(Path path, Consumer<Command> sink) throws IOException {
+        verify(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var in = new Input(channel);
+            if (!Arrays.equals(in.bytes(MAGIC.length), MAGIC)) throw new IOException("Not a snapshot file: " + path);
+            long records = 0;
+            while (true) {
+                byte type = in.get();
+                if (type == TYPE_EOF) break;
+                long deadline = in.getLong();
+                String key = in.getString();
+                if (type == TYPE_STRING) {
+                    sink.accept(new RestoreCommand(key, in.getString(), null, deadline));
+                } else if (type == TYPE_LISTPACK) {
+                    sink.accept(new RestoreCommand(key, null, in.getListpack(), deadline));
+                } else if (type == TYPE_HASH) {
+                    int fields = in.getLength();
+                    var map = new HashMap<String, String>(fields * 2);
+                    for (int i = 0; i < fields; i++) map.put(in.getString(), in.getString());
+                    sink.accept(new RestoreCommand(key, null, map, deadline));
+                } else {
+                    throw new IOException("Corrupt snapshot record type " + type + " in " + path);
+                }
+                records++;
+            }
+            long expected = in.checksum();
+            if (in.getLong() != expected) throw new IOException("Snapshot checksum mismatch in " + path);
+            return records;
+        }
+    }
+
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32C crc = new CRC32C();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void header(byte type, long deadline, String key) throws IOException {
+            reserve(Byte.BYTES + Long.BYTES);
+            buffer.put(type).putLong(deadline);
+            putString(key);
+        }
+
+        void putInt(int value) throws IOException {
+            reserve(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putListpack(CompactMap map) throws IOException {
+            int length = map.encodedLength();
+            reserve(2 * Integer.BYTES + length);
+            buffer.putInt(map.size()).putInt(length);
+            map.encodeTo(buffer);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            put(bytes);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.capacity()) {
+                drain();
+                var wrapped = ByteBuffer.wrap(bytes);
+                crc.update(wrapped.duplicate());
+                while (wrapped.hasRemaining()) channel.write(wrapped);
+                return;
+            }
+            reserve(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void finish() throws IOException {
+            reserve(Byte.BYTES);
+            buffer.put(TYPE_EOF);
+            drain();
+            buffer.putLong(crc.getValue()).flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    private static final class Input {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private final CRC32C crc = new CRC32C();
+        private int checked;
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        byte get() throws IOException {
+            require(Byte.BYTES);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        int getLength() throws IOException {
+            int length = getInt();
+            if (length < 0) throw new IOException("Corrupt snapshot length " + length);
+            return length;
+        }
+
+        String getString() throws IOException {
+            int length = getLength();
+            require(length);
+            var value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        CompactMap getListpack() throws IOException {
+            int count = getLength();
+            int length = getLength();
+            require(length);
+            var map = CompactMap.decode(MapMemory.HEAP, buffer.array(), buffer.position(), length, count);
+            buffer.position(buffer.position() + length);
+            return map;
+        }
+
+        byte[] bytes(int length) throws IOException {
+            require(length);
+            var bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        long checksum() {
+            crc.update(buffer.array(), checked, buffer.position() - checked);
+            checked = buffer.position();
+            return crc.getValue();
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            if (bytes > buffer.remaining() + channel.size() - channel.position()) throw new EOFException("Truncated snapshot");
+            checksum();
+            buffer.compact();
+            checked = 0;
+            if (buffer.capacity() < bytes) buffer = ByteBuffer.allocate(bytes).put(buffer.flip());
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) throw new EOFException("Truncated snapshot");
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.rbleggi.redisclone;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
+
+class TimingWheel {
+    private static final int LEVELS = 6;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private long current;
+
+    TimingWheel(long nowMillis) {
+        this.current = nowMillis;
+    }
+
+    void schedule(String key, long deadlineMillis) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entries.put(key, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.deadline = deadlineMillis;
+        place(entry, current + 1);
+    }
+
+    boolean cancel(String key) {
+        if (entries.isEmpty()) return false;
+        var entry = entries.remove(key);
+        if (entry == null) return false;
+        unlink(entry);
+        return true;
+    }
+
+    long deadline(String key) {
+        var entry = entries.get(key);
+        return entry != null ? entry.deadline : -1;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void forEach(ObjLongConsumer<String> action) {
+        entries.values().forEach(entry -> action.accept(entry.key, entry.deadline));
+    }
+
+    void advance(long nowMillis, ObjLongConsumer<String> onExpire) {
+        while (current < nowMillis) {
+            if (entries.isEmpty()) {
+                current = nowMillis;
+                return;
+            }
+            long tick = current + 1;
+            int index = (int) (tick & SLOT_MASK);
+            if (index != 0) {
+                long pending = occupied[0] & (-1L << index);
+                long next = pending != 0
+                    ? (tick & ~SLOT_MASK) + Long.numberOfTrailingZeros(pending)
+                    : (tick | SLOT_MASK) + 1;
+                if (next > nowMillis) {
+                    current = nowMillis;
+                    return;
+                }
+                tick = next;
+            }
+            current = tick;
+            if ((tick & SLOT_MASK) == 0) cascade(tick, 1);
+            expireSlot((int) (tick & SLOT_MASK), onExpire);
+        }
+    }
+
+    private void cascade(long tick, int level) {
+        if (level >= LEVELS) return;
+        int index = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        if (index == 0) cascade(tick, level + 1);
+        var entry = slots[level][index];
+        slots[level][index] = null;
+        occupied[level] &= ~(1L << index);
+        while (entry != null) {
+            var next = entry.next;
+            entry.prev = entry.next = null;
+            place(entry, tick);
+            entry = next;
+        }
+    }
+
+    private void expireSlot(int index, ObjLongConsumer<String> onExpire) {
+        var entry = slots[0][index];
+        slots[0][index] = null;
+        occupied[0] &= ~(1L << index);
+        while (entry != null) {
+            var next = entry.next;
+            entry.prev = entry.next = null;
+            entries.remove(entry.key);
+            onExpire.accept(entry.key, entry.deadline);
+            entry = next;
+        }
+    }
+
+    private void place(Entry entry, long earliest) {
+        long delta = Math.min(Math.max(entry.deadline, earliest) - current, MAX_DELTA);
+        long due = current + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) level++;
+        int index = (int) ((due >>> (SLOT_BITS * level)) & SLOT_MASK);
+        entry.level = level;
+        entry.slot = index;
+        entry.next = slots[level][index];
+        if (entry.next != null) entry.next.prev = entry;
+        slots[level][index] = entry;
+        occupied[level] |= 1L << index;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) entry.prev.next = entry.next;
+        else slots[entry.level][entry.slot] = entry.next;
+        if (entry.next != null) entry.next.prev = entry.prev;
+        if (slots[entry.level][entry.slot] == null) occupied[entry.level] &= ~(1L << entry.slot);
+        entry.prev = entry.next = null;
+    }
+
+    private static final class Entry {
+        final String key;
+        volatile long deadline;
+        int level;
+        int slot;
+        Entry prev;
+        Entry next;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -2,7 +2,25 @@ package com.rbleggi.redisclone;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class RedisCloneTest {
     private RedisStore store;
@@ -88,4 +106,694 @@ class RedisCloneTest {
     void testMapValuesNonExistent() {
         assertEquals("(nil)", invoker.execute(new MapValuesCommand("nonexistent")));
     }
+
+    @Test
+    void testRespDecodeFrameToCommand() {
+        var buffer = ByteBuffer.allocate(128);
+        RespCodec.encodeCommand(buffer, "SET", "key1", "value1");
+        buffer.flip();
+        var args = RespCodec.decodeFrame(buffer);
+        assertEquals(new SetCommand("key1", "value1"), RespCodec.toCommand(args));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testRespDecodePartialFrameWaitsForMoreBytes() {
+        var buffer = ByteBuffer.allocate(128);
+        RespCodec.encodeCommand(buffer, "HSET", "map1", "field1", "value1");
+        buffer.flip();
+        buffer.limit(buffer.limit() - 3);
+        assertNull(RespCodec.decodeFrame(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void testRespBulkStringWithoutCrlfRejected() {
+        var buffer = ByteBuffer.wrap("*1\r\n$4\r\nPINGxx*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(RespProtocolException.class, () -> RespCodec.decodeFrame(buffer));
+    }
+
+    @Test
+    void testRespUnknownCommandRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RespCodec.toCommand(new String[]{"FLUSHALL"}));
+        assertThrows(IllegalArgumentException.class, () -> RespCodec.toCommand(new String[]{"GET"}));
+    }
+
+    @Test
+    void testRespServerExecutesPipelinedBatch() throws Exception {
+        try (var server = new RespServer(invoker, 0)) {
+            var serverThread = Thread.ofPlatform().start(server);
+            try (var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+                var request = ByteBuffer.allocate(512);
+                RespCodec.encodeCommand(request, "SET", "key1", "Hello");
+                RespCodec.encodeCommand(request, "APPEND", "key1", " World");
+                RespCodec.encodeCommand(request, "GET", "key1");
+                RespCodec.encodeCommand(request, "GET", "missing");
+                RespCodec.encodeCommand(request, "HSET", "map1", "a", "1");
+                RespCodec.encodeCommand(request, "HGET", "map1", "a");
+                RespCodec.encodeCommand(request, "NOPE");
+                request.flip();
+                while (request.hasRemaining()) client.write(request);
+
+                String expected = "+OK\r\n$11\r\nHello World\r\n$11\r\nHello World\r\n$-1\r\n+OK\r\n$1\r\n1\r\n"
+                    + "-ERR unknown command or wrong number of arguments for 'NOPE'\r\n";
+                assertEquals(expected, readExactly(client, expected.length()));
+            }
+            server.close();
+            serverThread.join(2000);
+        }
+        assertEquals("Hello World", store.strings.get("key1"));
+    }
+
+    @Test
+    void testRespRepliesEncodedByCommandType() throws Exception {
+        try (var server = new RespServer(invoker, 0)) {
+            var serverThread = Thread.ofPlatform().start(server);
+            try (var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+                var request = ByteBuffer.allocate(512);
+                RespCodec.encodeCommand(request, "SET", "key1", "(nil)");
+                RespCodec.encodeCommand(request, "GET", "key1");
+                RespCodec.encodeCommand(request, "SET", "key2", "PONG");
+                RespCodec.encodeCommand(request, "GET", "key2");
+                RespCodec.encodeCommand(request, "EXPIRE", "key2", "10");
+                RespCodec.encodeCommand(request, "TTL", "key2");
+                RespCodec.encodeCommand(request, "DEL", "key1");
+                RespCodec.encodeCommand(request, "DEL", "key1");
+                RespCodec.encodeCommand(request, "HGET", "map1", "a");
+                RespCodec.encodeCommand(request, "HKEYS", "map1");
+                RespCodec.encodeCommand(request, "HSET", "map1", "a, b", "1");
+                RespCodec.encodeCommand(request, "HKEYS", "map1");
+                RespCodec.encodeCommand(request, "HVALS", "map1");
+                RespCodec.encodeCommand(request, "X\r\n+OK");
+                request.flip();
+                while (request.hasRemaining()) client.write(request);
+
+                String expected = "+OK\r\n$5\r\n(nil)\r\n+OK\r\n$4\r\nPONG\r\n:1\r\n:10\r\n:1\r\n:0\r\n$-1\r\n"
+                    + "*0\r\n+OK\r\n*1\r\n$4\r\na, b\r\n*1\r\n$1\r\n1\r\n"
+                    + "-ERR unknown command or wrong number of arguments for 'X  +OK'\r\n";
+                assertEquals(expected, readExactly(client, expected.length()));
+            }
+            server.close();
+            serverThread.join(2000);
+        }
+    }
+
+    @Test
+    void testRespErrorKeepsNonAsciiCommandNameOnOneLine() throws Exception {
+        try (var server = new RespServer(invoker, 0)) {
+            var serverThread = Thread.ofPlatform().start(server);
+            try (var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+                var request = ByteBuffer.allocate(512);
+                RespCodec.encodeCommand(request, "\u010D\u010A+OK");
+                RespCodec.encodeCommand(request, "PING");
+                request.flip();
+                while (request.hasRemaining()) client.write(request);
+
+                String expected = "-ERR unknown command or wrong number of arguments for '\u010D\u010A+OK'\r\n+PONG\r\n";
+                assertEquals(expected, readExactly(client, expected.getBytes(StandardCharsets.UTF_8).length));
+            }
+            server.close();
+            serverThread.join(2000);
+        }
+    }
+
+    @Test
+    void testShardedInvokerRoutesKeysToSingleShard() {
+        var sharded = new ShardedCommandInvoker(4);
+        assertEquals("OK", sharded.execute(new SetCommand("key1", "value1")));
+        assertEquals("value1", sharded.execute(new GetCommand("key1")));
+        assertEquals("value1", sharded.shardFor("key1").strings.get("key1"));
+        assertEquals("OK", sharded.execute(new MapSetCommand("map1", "a", "1")));
+        assertEquals("a", sharded.execute(new MapKeysCommand("map1")));
+    }
+
+    @Test
+    void testShardedInvokerInfoCoversAllShards() {
+        var sharded = new ShardedCommandInvoker(4);
+        for (int i = 0; i < 64; i++) sharded.execute(new SetCommand("key" + i, "value"));
+        assertTrue(sharded.execute(new InfoCommand()).startsWith("keys:64\r\n"));
+        assertEquals("PONG", sharded.execute(new PingCommand()));
+    }
+
+    @Test
+    void testShardedInvokerRejectsNonPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardedCommandInvoker(3));
+    }
+
+    @Test
+    void testShardedInvokerAppendIsAtomicPerKey() throws InterruptedException {
+        var sharded = new ShardedCommandInvoker(16);
+        var threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sharded.execute(new AppendCommand("counter", "x"));
+                    sharded.execute(new MapSetCommand("map1", Thread.currentThread().getName() + i, "v"));
+                }
+            });
+        }
+        for (var thread : threads) thread.join();
+        assertEquals(8000, sharded.execute(new GetCommand("counter")).length());
+        assertEquals(8000, sharded.shardFor("map1").maps.get("map1").size());
+    }
+
+    @Test
+    void testAofReplayRestoresMutations(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.EVERY_SECOND)) {
+            var logged = new CommandInvoker(new RedisStore(), aof);
+            logged.execute(new SetCommand("key1", "Hello"));
+            logged.execute(new AppendCommand("key1", " World"));
+            logged.execute(new SetCommand("key2", "gone"));
+            logged.execute(new RemoveCommand("key2"));
+            logged.execute(new MapSetCommand("map1", "a", "1"));
+            logged.execute(new GetCommand("key1"));
+        }
+
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var restored = new RedisStore();
+            assertEquals(5, new CommandInvoker(restored, aof).replay());
+            assertEquals("Hello World", restored.strings.get("key1"));
+            assertFalse(restored.strings.containsKey("key2"));
+            assertEquals("1", restored.maps.get("map1").get("a"));
+        }
+    }
+
+    @Test
+    void testAofReplayTruncatesIncompleteTail(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.ALWAYS)) {
+            new CommandInvoker(new RedisStore(), aof).execute(new SetCommand("key1", "value1"));
+        }
+        long validLength = Files.size(path);
+        Files.writeString(path, "*3\r\n$3\r\nSET\r\n$4\r\nke", StandardOpenOption.APPEND);
+
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.ALWAYS)) {
+            var restored = new RedisStore();
+            assertEquals(1, new CommandInvoker(restored, aof).replay());
+            assertEquals("value1", restored.strings.get("key1"));
+            assertEquals(validLength, aof.size());
+        }
+    }
+
+    @Test
+    void testAofAlwaysPolicyGroupCommitsConcurrentWriters(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.ALWAYS)) {
+            var sharded = new ShardedCommandInvoker(4, aof);
+            var threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int id = t;
+                threads[t] = Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 200; i++) sharded.execute(new SetCommand("key" + id + ":" + i, "v"));
+                });
+            }
+            for (var thread : threads) thread.join();
+        }
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.ALWAYS)) {
+            var restored = new ShardedCommandInvoker(4, aof);
+            assertEquals(800, restored.replay());
+            assertEquals("v", restored.execute(new GetCommand("key3:199")));
+        }
+    }
+
+    @Test
+    void testAofWriteFailureRejectsWritesWithoutStoppingServer() throws Exception {
+        var devFull = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(devFull));
+        var aof = new AppendOnlyFile(devFull, FsyncPolicy.ALWAYS);
+        var logged = new CommandInvoker(new RedisStore(), aof);
+        var failure = assertThrows(UncheckedIOException.class, () -> logged.execute(new SetCommand("key1", "v")));
+        assertTrue(failure.getMessage().startsWith("MISCONF "));
+        assertThrows(UncheckedIOException.class, () -> logged.execute(new SetCommand("key2", "v")));
+        assertEquals("(nil)", logged.execute(new GetCommand("key2")));
+
+        try (var server = new RespServer(logged, 0)) {
+            var serverThread = Thread.ofPlatform().start(server);
+            try (var client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()))) {
+                var request = ByteBuffer.allocate(256);
+                RespCodec.encodeCommand(request, "SET", "key3", "v");
+                RespCodec.encodeCommand(request, "PING");
+                request.flip();
+                while (request.hasRemaining()) client.write(request);
+
+                String expected = "-" + failure.getMessage() + "\r\n+PONG\r\n";
+                assertEquals(expected, readExactly(client, expected.length()));
+            }
+            server.close();
+            serverThread.join(2000);
+            assertFalse(serverThread.isAlive());
+        }
+        assertThrows(UncheckedIOException.class, aof::close);
+    }
+
+    @Test
+    void testAofRewriteCompactsLogAndKeepsConcurrentWrites(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.EVERY_SECOND)) {
+            var logged = new CommandInvoker(new RedisStore(), aof);
+            for (int i = 0; i < 1000; i++) logged.execute(new SetCommand("key1", "value" + i));
+            logged.execute(new MapSetCommand("map1", "a", "1"));
+            aof.flush();
+            long before = aof.size();
+
+            var save = logged.save(dir.resolve("dump.rdb"));
+            var rewrite = logged.rewriteAppendOnlyFile();
+            logged.execute(new AppendCommand("key1", "!"));
+            rewrite.join();
+            assertEquals(2L, save.join());
+            logged.execute(new SetCommand("key2", "after"));
+            assertTrue(aof.size() < before);
+        }
+
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var restored = new RedisStore();
+            new CommandInvoker(restored, aof).replay();
+            assertEquals("value999!", restored.strings.get("key1"));
+            assertEquals("after", restored.strings.get("key2"));
+            assertEquals("1", restored.maps.get("map1").get("a"));
+        }
+    }
+
+    @Test
+    void testTimingWheelExpiresEachKeyAtItsDeadline() {
+        var wheel = new TimingWheel(0);
+        long[] deadlines = {1, 63, 64, 65, 4095, 4096, 4097, 300_000, 20_000_000};
+        for (int i = 0; i < deadlines.length; i++) wheel.schedule("key" + i, deadlines[i]);
+        wheel.schedule("cancelled", 100);
+        assertTrue(wheel.cancel("cancelled"));
+
+        var expired = new ArrayList<String>();
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.advance(deadlines[i] - 1, (key, deadline) -> expired.add(key));
+            assertEquals(i, expired.size());
+            wheel.advance(deadlines[i], (key, deadline) -> expired.add(key));
+            assertEquals(List.of("key" + i), expired.subList(i, i + 1));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testExpireRejectsOverflowAndLogsScheduledDeadline(@TempDir Path dir) throws IOException {
+        var clock = new AtomicLong(5_000);
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.ALWAYS)) {
+            var logged = new CommandInvoker(new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, clock::get), aof);
+            logged.execute(new SetCommand("key1", "value1"));
+            var error = assertThrows(IllegalArgumentException.class, () -> logged.execute(new ExpireCommand("key1", 9_223_372_036_854_776L)));
+            assertEquals("invalid expire time in 'expire' command", error.getMessage());
+            assertEquals("-1", logged.execute(new TtlCommand("key1")));
+            assertEquals("1", logged.execute(new ExpireCommand("key1", 10)));
+        }
+        assertTrue(Files.readString(path).endsWith("*3\r\n$9\r\nPEXPIREAT\r\n$4\r\nkey1\r\n$5\r\n15000\r\n"));
+    }
+
+    @Test
+    void testExpireTtlAndPersist() {
+        var clock = new AtomicLong(1_000);
+        var ttlInvoker = new CommandInvoker(new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, clock::get));
+        assertEquals("0", ttlInvoker.execute(new ExpireCommand("key1", 10)));
+        ttlInvoker.execute(new SetCommand("key1", "value1"));
+        assertEquals("-1", ttlInvoker.execute(new TtlCommand("key1")));
+        assertEquals("1", ttlInvoker.execute(new ExpireCommand("key1", 10)));
+        assertEquals("10", ttlInvoker.execute(new TtlCommand("key1")));
+
+        clock.addAndGet(9_500);
+        assertEquals("1", ttlInvoker.execute(new TtlCommand("key1")));
+        assertEquals("1", ttlInvoker.execute(new PersistCommand("key1")));
+        assertEquals("-1", ttlInvoker.execute(new TtlCommand("key1")));
+        assertEquals("0", ttlInvoker.execute(new PersistCommand("key1")));
+
+        ttlInvoker.execute(new ExpireCommand("key1", 1));
+        clock.addAndGet(1_000);
+        assertEquals("(nil)", ttlInvoker.execute(new GetCommand("key1")));
+        assertEquals("-2", ttlInvoker.execute(new TtlCommand("key1")));
+        assertTrue(ttlInvoker.execute(new InfoCommand()).contains("expired_keys:1"));
+    }
+
+    @Test
+    void testSetClearsExpiry() {
+        var clock = new AtomicLong();
+        var ttlInvoker = new CommandInvoker(new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, clock::get));
+        ttlInvoker.execute(new MapSetCommand("key1", "a", "1"));
+        ttlInvoker.execute(new ExpireCommand("key1", 5));
+        ttlInvoker.execute(new SetCommand("key1", "value1"));
+        clock.addAndGet(10_000);
+        assertEquals("value1", ttlInvoker.execute(new GetCommand("key1")));
+        assertEquals("1", ttlInvoker.execute(new MapGetCommand("key1", "a")));
+    }
+
+    @Test
+    void testMaxMemoryEvictsLeastRecentlyUsedKeys() {
+        var clock = new AtomicLong();
+        var bounded = new RedisStore(20_000, EvictionPolicy.ALLKEYS_LRU, clock::get);
+        var boundedInvoker = new CommandInvoker(bounded);
+        boundedInvoker.execute(new SetCommand("hot", "value"));
+        for (int i = 0; i < 1_000; i++) {
+            clock.incrementAndGet();
+            boundedInvoker.execute(new SetCommand("key" + i, "value" + i));
+            boundedInvoker.execute(new GetCommand("hot"));
+        }
+        var stats = bounded.stats();
+        assertTrue(stats.usedMemory() <= 20_000);
+        assertTrue(stats.evictedKeys() > 0);
+        assertEquals(1_001, stats.keys() + stats.evictedKeys());
+        assertEquals("value", boundedInvoker.execute(new GetCommand("hot")));
+    }
+
+    @Test
+    void testMaxMemoryLfuKeepsFrequentlyUsedKeys() {
+        var clock = new AtomicLong();
+        var bounded = new RedisStore(20_000, EvictionPolicy.ALLKEYS_LFU, clock::get);
+        var boundedInvoker = new CommandInvoker(bounded);
+        boundedInvoker.execute(new MapSetCommand("hot", "a", "1"));
+        for (int i = 0; i < 200; i++) boundedInvoker.execute(new MapGetCommand("hot", "a"));
+        for (int i = 0; i < 1_000; i++) boundedInvoker.execute(new SetCommand("key" + i, "value" + i));
+        assertTrue(bounded.stats().usedMemory() <= 20_000);
+        assertEquals("1", boundedInvoker.execute(new MapGetCommand("hot", "a")));
+    }
+
+    @Test
+    void testAofReplaysAbsoluteExpiry(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("appendonly.aof");
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var logged = new CommandInvoker(new RedisStore(), aof);
+            logged.execute(new SetCommand("gone", "a"));
+            logged.execute(new ExpireAtCommand("gone", 1));
+            logged.execute(new AppendCommand("gone", "b"));
+            logged.execute(new SetCommand("kept", "c"));
+            logged.execute(new ExpireCommand("kept", 3600));
+        }
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var restored = new RedisStore();
+            var restoredInvoker = new CommandInvoker(restored, aof);
+            restoredInvoker.replay();
+            assertEquals("b", restoredInvoker.execute(new GetCommand("gone")));
+            assertEquals("3600", restoredInvoker.execute(new TtlCommand("kept")));
+        }
+    }
+
+    @Test
+    void testMaxMemoryEvictionsAreLoggedAndReplayed(@TempDir Path dir) throws IOException {
+        var path = dir.resolve("appendonly.aof");
+        var clock = new AtomicLong();
+        var bounded = new RedisStore(20_000, EvictionPolicy.ALLKEYS_LRU, clock::get);
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var logged = new CommandInvoker(bounded, aof);
+            for (int i = 0; i < 500; i++) {
+                clock.incrementAndGet();
+                logged.execute(new SetCommand("key" + i, "value" + i));
+                logged.execute(new MapSetCommand("map" + i, "a", "1"));
+            }
+        }
+        assertTrue(bounded.stats().evictedKeys() > 0);
+        assertTrue(Files.readString(path).contains("UNLINK"));
+
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var unbounded = new RedisStore();
+            new CommandInvoker(unbounded, aof).replay();
+            assertEquals(bounded.strings.keySet(), unbounded.strings.keySet());
+            assertEquals(bounded.maps.keySet(), unbounded.maps.keySet());
+        }
+        try (var aof = new AppendOnlyFile(path, FsyncPolicy.NEVER)) {
+            var replayed = new RedisStore(20_000, EvictionPolicy.ALLKEYS_LRU, clock::get);
+            new CommandInvoker(replayed, aof).replay();
+            assertEquals(bounded.strings.keySet(), replayed.strings.keySet());
+            assertEquals(bounded.maps.keySet(), replayed.maps.keySet());
+            assertEquals(0, replayed.stats().evictedKeys());
+        }
+    }
+
+    @Test
+    void testCompactMapPutReplaceRemove() {
+        var map = new CompactMap(MapMemory.HEAP);
+        assertNull(map.put("a", "1"));
+        assertNull(map.put("b", "2"));
+        assertEquals("1", map.put("a", "one"));
+        assertEquals("one", map.get("a"));
+        assertEquals("2", map.remove("b"));
+        assertNull(map.get("b"));
+        assertEquals(1, map.size());
+        assertEquals(java.util.Map.of("a", "one"), map);
+    }
+
+    @Test
+    void testCompactMapJoinsKeysAndValuesInInsertionOrder() {
+        var map = new CompactMap(new OffHeapSlab());
+        map.put("a", "1");
+        map.put("b", "ß".repeat(100));
+        map.put("c", "3");
+        assertEquals("a, b, c", map.joinKeys(", "));
+        assertEquals("1, " + "ß".repeat(100) + ", 3", map.joinValues(", "));
+    }
+
+    @Test
+    void testMapSetConvertsCompactMapPastThreshold() {
+        for (int i = 0; i < CompactMap.MAX_ENTRIES; i++) {
+            invoker.execute(new MapSetCommand("map1", "field" + i, "value" + i));
+        }
+        assertInstanceOf(CompactMap.class, store.maps.get("map1"));
+        invoker.execute(new MapSetCommand("map1", "field0", "updated"));
+        assertInstanceOf(CompactMap.class, store.maps.get("map1"));
+
+        invoker.execute(new MapSetCommand("map1", "overflow", "value"));
+        assertInstanceOf(java.util.HashMap.class, store.maps.get("map1"));
+        assertEquals(CompactMap.MAX_ENTRIES + 1, store.maps.get("map1").size());
+        assertEquals("updated", invoker.execute(new MapGetCommand("map1", "field0")));
+
+        invoker.execute(new MapSetCommand("map2", "a", "x".repeat(CompactMap.MAX_VALUE_LENGTH + 1)));
+        assertInstanceOf(java.util.HashMap.class, store.maps.get("map2"));
+    }
+
+    @Test
+    void testSnapshotRoundTripsStringsHashesAndExpiry(@TempDir Path dir) throws Exception {
+        var clock = new AtomicLong(1_000);
+        var source = new CommandInvoker(new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, clock::get));
+        source.execute(new SetCommand("key1", "value1"));
+        source.execute(new SetCommand("key2", "ß".repeat(2_000_000)));
+        source.execute(new MapSetCommand("map1", "a", "1"));
+        source.execute(new MapSetCommand("map2", "big", "x".repeat(CompactMap.MAX_VALUE_LENGTH + 1)));
+        source.execute(new ExpireAtCommand("key1", 60_000));
+        source.execute(new SetCommand("short", "lived"));
+        source.execute(new ExpireAtCommand("short", 2_000));
+
+        var path = dir.resolve("dump.rdb");
+        assertEquals(5L, source.save(path).get());
+
+        clock.set(10_000);
+        var restoredStore = new RedisStore(0, EvictionPolicy.ALLKEYS_LRU, clock::get);
+        var restored = new CommandInvoker(restoredStore);
+        assertEquals(5, restored.load(path));
+        assertEquals("value1", restored.execute(new GetCommand("key1")));
+        assertEquals("ß".repeat(2_000_000), restored.execute(new GetCommand("key2")));
+        assertEquals("1", restored.execute(new MapGetCommand("map1", "a")));
+        assertEquals("x".repeat(CompactMap.MAX_VALUE_LENGTH + 1), restored.execute(new MapGetCommand("map2", "big")));
+        assertEquals("50", restored.execute(new TtlCommand("key1")));
+        assertEquals("-2", restored.execute(new TtlCommand("short")));
+    }
+
+    @Test
+    void testSnapshotKeepsPointInTimeViewWhileWritesContinue(@TempDir Path dir) throws IOException {
+        invoker.execute(new SetCommand("key1", "before"));
+        invoker.execute(new AppendCommand("key2", "a"));
+        invoker.execute(new SetCommand("key3", "deleted later"));
+        invoker.execute(new MapSetCommand("map1", "a", "1"));
+        var snapshot = store.beginSnapshot();
+        var shared = store.maps.get("map1");
+
+        invoker.execute(new SetCommand("key1", "after"));
+        invoker.execute(new AppendCommand("key2", "b"));
+        invoker.execute(new RemoveCommand("key3"));
+        invoker.execute(new SetCommand("key4", "created later"));
+        invoker.execute(new MapSetCommand("map1", "a", "2"));
+        invoker.execute(new MapSetCommand("map1", "b", "3"));
+        assertNotSame(shared, store.maps.get("map1"));
+        assertEquals("1", shared.get("a"));
+        assertThrows(IllegalStateException.class, store::beginSnapshot);
+
+        var path = dir.resolve("dump.rdb");
+        SnapshotFile.write(path, List.of(snapshot));
+        invoker.execute(new PingCommand());
+        assertDoesNotThrow(() -> store.beginSnapshot().finish());
+
+        var restored = new CommandInvoker(new RedisStore());
+        restored.load(path);
+        assertEquals("before", restored.execute(new GetCommand("key1")));
+        assertEquals("a", restored.execute(new GetCommand("key2")));
+        assertEquals("deleted later", restored.execute(new GetCommand("key3")));
+        assertEquals("(nil)", restored.execute(new GetCommand("key4")));
+        assertEquals("1", restored.execute(new MapGetCommand("map1", "a")));
+        assertEquals("(nil)", restored.execute(new MapGetCommand("map1", "b")));
+        assertEquals("after", invoker.execute(new GetCommand("key1")));
+        assertEquals("3", invoker.execute(new MapGetCommand("map1", "b")));
+    }
+
+    @Test
+    void testOverlappingSavesQueueBehindSnapshotInProgress(@TempDir Path dir) throws Exception {
+        invoker.execute(new SetCommand("key1", "value1"));
+        assertEquals(1L, invoker.save(dir.resolve("first.rdb")).get());
+        invoker.execute(new SetCommand("key2", "value2"));
+        var second = invoker.save(dir.resolve("second.rdb"));
+        var third = invoker.save(dir.resolve("third.rdb"));
+        invoker.execute(new SetCommand("key3", "value3"));
+        assertEquals(2L, second.get());
+        assertTrue(third.get() >= 2L);
+
+        var sharded = new ShardedCommandInvoker(4);
+        sharded.execute(new SetCommand("key1", "value1"));
+        var overlapping = List.of(sharded.save(dir.resolve("a.rdb")), sharded.save(dir.resolve("b.rdb")));
+        for (var save : overlapping) assertEquals(1L, save.get());
+    }
+
+    @Test
+    void testShardedSnapshotLoadsIntoShardsAndRejectsCorruption(@TempDir Path dir) throws Exception {
+        var sharded = new ShardedCommandInvoker(4);
+        for (int i = 0; i < 1_000; i++) {
+            sharded.execute(new SetCommand("key" + i, "value" + i));
+            sharded.execute(new MapSetCommand("map" + i, "field", "value" + i));
+        }
+        var path = dir.resolve("dump.rdb");
+        assertEquals(2_000L, sharded.save(path).get());
+
+        var restored = new ShardedCommandInvoker(8);
+        assertEquals(2_000, restored.load(path));
+        assertEquals(2_000, restored.stats().keys());
+        assertEquals("value999", restored.execute(new GetCommand("key999")));
+        assertEquals("value7", restored.execute(new MapGetCommand("map7", "field")));
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        var corrupted = new ShardedCommandInvoker(1);
+        assertThrows(UncheckedIOException.class, () -> corrupted.load(path));
+        assertEquals(0, corrupted.stats().keys());
+
+        var replica = new CommandInvoker(new RedisStore());
+        replica.execute(new SetCommand("kept", "value"));
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(UncheckedIOException.class, () -> replica.resync(path));
+        bytes[bytes.length / 2] ^= 1;
+        bytes[20] = (byte) 0xFF;
+        Files.write(path, bytes);
+        assertThrows(UncheckedIOException.class, () -> replica.resync(path));
+        assertEquals("value", replica.execute(new GetCommand("kept")));
+    }
+
+    @Test
+    void testReplicaFullSyncStreamsWritesAndServesReads() throws Exception {
+        try (var primary = new ReplicationPrimary(0, 1 << 20)) {
+            var primaryInvoker = new CommandInvoker(new RedisStore(), null, primary);
+            primaryInvoker.execute(new SetCommand("key1", "value1"));
+            primaryInvoker.execute(new MapSetCommand("map1", "a", "1"));
+            var replicaInvoker = new CommandInvoker(new RedisStore());
+            try (var replica = new ReplicationReplica(replicaInvoker, "127.0.0.1", primary.port())) {
+                awaitReplication(primary, replica);
+                assertEquals("value1", replicaInvoker.execute(new GetCommand("key1")));
+                assertEquals("1", replicaInvoker.execute(new MapGetCommand("map1", "a")));
+
+                primaryInvoker.execute(new AppendCommand("key1", "!"));
+                primaryInvoker.execute(new MapSetCommand("map1", "b", "2"));
+                primaryInvoker.execute(new SetCommand("key2", "value2"));
+                primaryInvoker.execute(new RemoveCommand("key2"));
+                awaitReplication(primary, replica);
+                assertEquals("value1!", replicaInvoker.execute(new GetCommand("key1")));
+                assertEquals("2", replicaInvoker.execute(new MapGetCommand("map1", "b")));
+                assertEquals("(nil)", replicaInvoker.execute(new GetCommand("key2")));
+                assertThrows(IllegalArgumentException.class, () -> replicaInvoker.execute(new SetCommand("key3", "value3")));
+                assertEquals(1, replica.fullSyncs());
+                assertEquals(0, replica.partialSyncs());
+            }
+        }
+    }
+
+    @Test
+    void testReplicaConnectingBeforeAttachWaitsForSyncSource() throws Exception {
+        try (var primary = new ReplicationPrimary(0, 1 << 20)) {
+            var replicaInvoker = new CommandInvoker(new RedisStore());
+            try (var replica = new ReplicationReplica(replicaInvoker, "127.0.0.1", primary.port())) {
+                Thread.sleep(200);
+                assertEquals(0, replica.fullSyncs());
+                var primaryInvoker = new CommandInvoker(new RedisStore(), null, primary);
+                primaryInvoker.execute(new SetCommand("key1", "value1"));
+                awaitReplication(primary, replica);
+                assertEquals("value1", replicaInvoker.execute(new GetCommand("key1")));
+                assertEquals(1, replica.fullSyncs());
+                assertThrows(IllegalStateException.class, () -> new CommandInvoker(new RedisStore(), null, primary));
+            }
+        }
+    }
+
+    @Test
+    void testReplicaPartiallyResyncsFromBacklogOffset() throws Exception {
+        try (var primary = new ReplicationPrimary(0, 4096)) {
+            var primaryInvoker = new CommandInvoker(new RedisStore(), null, primary);
+            var replicaInvoker = new CommandInvoker(new RedisStore());
+            String replicationId;
+            long offset;
+            try (var replica = new ReplicationReplica(replicaInvoker, "127.0.0.1", primary.port())) {
+                primaryInvoker.execute(new SetCommand("key1", "value1"));
+                awaitReplication(primary, replica);
+                replicationId = replica.replicationId();
+                offset = replica.offset();
+            }
+
+            primaryInvoker.execute(new SetCommand("key2", "value2"));
+            try (var replica = new ReplicationReplica(replicaInvoker, "127.0.0.1", primary.port(), replicationId, offset)) {
+                awaitReplication(primary, replica);
+                assertEquals(1, replica.partialSyncs());
+                assertEquals(0, replica.fullSyncs());
+                assertEquals("value2", replicaInvoker.execute(new GetCommand("key2")));
+                offset = replica.offset();
+            }
+
+            for (int i = 0; i < 100; i++) {
+                primaryInvoker.execute(new SetCommand("bulk" + i, "x".repeat(64)));
+            }
+            try (var replica = new ReplicationReplica(replicaInvoker, "127.0.0.1", primary.port(), replicationId, offset)) {
+                awaitReplication(primary, replica);
+                assertEquals(1, replica.fullSyncs());
+                assertEquals("value1", replicaInvoker.execute(new GetCommand("key1")));
+                assertEquals("x".repeat(64), replicaInvoker.execute(new GetCommand("bulk0")));
+            }
+        }
+    }
+
+    @Test
+    void testReplicaFallsBackToFullResyncAfterApplyFailure() throws Exception {
+        try (var primary = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            int port = ((InetSocketAddress) primary.getLocalAddress()).getPort();
+            try (var replica = new ReplicationReplica(new CommandInvoker(new RedisStore()), "127.0.0.1", port, "abc", 10)) {
+                try (var link = primary.accept()) {
+                    String psync = "*3\r\n$5\r\nPSYNC\r\n$3\r\nabc\r\n$2\r\n10\r\n";
+                    assertEquals(psync, readExactly(link, psync.length()));
+                    var reply = ByteBuffer.allocate(128).put("+CONTINUE\r\n".getBytes(StandardCharsets.US_ASCII));
+                    RespCodec.encodeCommand(reply, "EXPIRE", "key1", "soon");
+                    reply.flip();
+                    while (reply.hasRemaining()) link.write(reply);
+                }
+                try (var link = primary.accept()) {
+                    String psync = "*3\r\n$5\r\nPSYNC\r\n$1\r\n?\r\n$2\r\n-1\r\n";
+                    assertEquals(psync, readExactly(link, psync.length()));
+                    assertEquals(1, replica.failures());
+                    assertInstanceOf(NumberFormatException.class, replica.lastError());
+                }
+            }
+        }
+    }
+
+    private static void awaitReplication(ReplicationPrimary primary, ReplicationReplica replica) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!primary.replicationId().equals(replica.replicationId()) || replica.offset() != primary.offset()) {
+            assertTrue(System.nanoTime() < deadline, "replica did not catch up");
+            Thread.sleep(1);
+        }
+    }
+
+    private static String readExactly(SocketChannel client, int length) throws IOException {
+        var reply = ByteBuffer.allocate(length);
+        while (reply.hasRemaining()) {
+            if (client.read(reply) < 0) break;
+        }
+        return new String(reply.array(), 0, reply.position(), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,71 @@
+package com.rbleggi.taskthreadpool;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BackpressureBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int workMicros = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        int payloadBytes = args.length > 4 ? Integer.parseInt(args[4]) : 128;
+
+        System.out.printf("%d workers, %d us tasks, %d B payload, saturation %,.0f tasks/s%n",
+            workers, workMicros, payloadBytes, workers * 1_000_000.0 / workMicros);
+        run("unbounded", new TaskThreadPool(workers), seconds, workMicros, payloadBytes);
+        for (var policy : BackpressurePolicy.values()) {
+            run(policy + " (" + capacity + ")", new TaskThreadPool(workers, capacity, policy), seconds, workMicros, payloadBytes);
+        }
+    }
+
+    private static void run(String label, TaskThreadPool pool, int seconds, int workMicros, int payloadBytes) throws InterruptedException {
+        System.gc();
+        var memory = ManagementFactory.getMemoryMXBean();
+        var peakHeap = new AtomicLong();
+        var sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        var completed = new LongAdder();
+        long workNanos = workMicros * 1000L;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        var running = new Object() {
+            volatile boolean value = true;
+        };
+        while (System.nanoTime() < end) {
+            var payload = new byte[payloadBytes];
+            try {
+                pool.submit(() -> {
+                    if (!running.value) return;
+                    long until = System.nanoTime() + workNanos;
+                    while (System.nanoTime() - until < 0) Thread.onSpinWait();
+                    if (payload.length >= 0) completed.increment();
+                });
+            } catch (RejectedExecutionException e) {
+                Thread.yield();
+            }
+        }
+        long completedInWindow = completed.sum();
+        int queuedAtEnd = pool.queuedTasks();
+        running.value = false;
+        pool.shutdown();
+        sampler.interrupt();
+        sampler.join();
+
+        var stats = pool.backpressureStats();
+        System.out.printf("%-22s %,9.0f tasks/s, peak heap %,6d MB, %,d queued at end | accepted %,d, blocked %,d, caller-runs %,d, dropped %,d, rejected %,d%n",
+            label, completedInWindow / (double) seconds, peakHeap.get() >> 20, queuedAtEnd,
+            stats.accepted(), stats.blocked(), stats.callerRuns(), stats.droppedOldest(), stats.rejected());
+    }
+}
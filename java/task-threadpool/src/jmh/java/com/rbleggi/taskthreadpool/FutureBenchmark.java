@@ -0,0 +1,88 @@
+package com.rbleggi.taskthreadpool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FutureBenchmark {
+    static final int STAGES = 8;
+
+    final Function<Integer, Integer> increment = value -> value + 1;
+    final Integer seed = 1000;
+    WorkStealingTaskThreadPool pool;
+    Executor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new WorkStealingTaskThreadPool(2);
+        executor = command -> pool.submit((Task) command::run);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Object taskFutureCompletedChain() {
+        var future = TaskFuture.completed(seed);
+        for (int i = 0; i < STAGES; i++) future = future.thenApply(increment);
+        return future;
+    }
+
+    @Benchmark
+    public Object completableFutureCompletedChain() {
+        var future = CompletableFuture.completedFuture(seed);
+        for (int i = 0; i < STAGES; i++) future = future.thenApply(increment);
+        return future;
+    }
+
+    @Benchmark
+    public Object taskFuturePendingChain() {
+        var root = new TaskFuture<Integer>();
+        var future = root;
+        for (int i = 0; i < STAGES; i++) future = future.thenApply(increment);
+        root.complete(seed);
+        return future;
+    }
+
+    @Benchmark
+    public Object completableFuturePendingChain() {
+        var root = new CompletableFuture<Integer>();
+        var future = root;
+        for (int i = 0; i < STAGES; i++) future = future.thenApply(increment);
+        root.complete(seed);
+        return future;
+    }
+
+    @Benchmark
+    public Integer taskFuturePoolRoundTrip() throws ExecutionException, InterruptedException {
+        return pool.submit(() -> seed).thenApply(increment).thenApply(increment).get();
+    }
+
+    @Benchmark
+    public Integer completableFuturePoolRoundTrip() throws ExecutionException, InterruptedException {
+        return CompletableFuture.supplyAsync(() -> seed, executor).thenApply(increment).thenApply(increment).get();
+    }
+}
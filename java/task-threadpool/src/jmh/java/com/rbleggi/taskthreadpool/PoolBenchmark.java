@@ -0,0 +1,97 @@
+package com.rbleggi.taskthreadpool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PoolBenchmark {
+    static final int TASKS = 10_000;
+    static final int DEPTH = 13;
+
+    @Param({"SHARED_QUEUE", "WORK_STEALING", "FORK_JOIN"})
+    String pool;
+
+    @Param({"4"})
+    int workers;
+
+    TaskExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = switch (pool) {
+            case "SHARED_QUEUE" -> new TaskThreadPool(workers);
+            case "WORK_STEALING" -> new WorkStealingTaskThreadPool(workers);
+            case "FORK_JOIN" -> new ForkJoinExecutor(new ForkJoinPool(workers));
+            default -> throw new IllegalArgumentException(pool);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void externalSubmit() throws InterruptedException {
+        var remaining = new AtomicInteger(TASKS);
+        var done = new CountDownLatch(1);
+        Task task = () -> {
+            if (remaining.decrementAndGet() == 0) done.countDown();
+        };
+        for (int i = 0; i < TASKS; i++) executor.submit(task);
+        done.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation((1 << (DEPTH + 1)) - 1)
+    public void recursiveFanOut() throws InterruptedException {
+        var remaining = new AtomicInteger((1 << (DEPTH + 1)) - 1);
+        var done = new CountDownLatch(1);
+        executor.submit(() -> spawn(DEPTH, remaining, done));
+        done.await();
+    }
+
+    private void spawn(int depth, AtomicInteger remaining, CountDownLatch done) {
+        if (depth > 0) {
+            executor.submit(() -> spawn(depth - 1, remaining, done));
+            executor.submit(() -> spawn(depth - 1, remaining, done));
+        }
+        if (remaining.decrementAndGet() == 0) done.countDown();
+    }
+
+    record ForkJoinExecutor(ForkJoinPool pool) implements TaskExecutor {
+        @Override
+        public void submit(Task task) {
+            pool.execute(task::run);
+        }
+
+        @Override
+        public void shutdown() throws InterruptedException {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
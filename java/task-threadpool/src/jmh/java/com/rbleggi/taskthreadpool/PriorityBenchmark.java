@@ -0,0 +1,87 @@
+package com.rbleggi.taskthreadpool;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class PriorityBenchmark {
+    private static final int BANDS = 4;
+    private static final int BATCH = 64;
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int workMicros = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        double overload = args.length > 3 ? Double.parseDouble(args[3]) : 1.25;
+        int agingMillis = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        run("PriorityTaskThreadPool", new PriorityTaskThreadPool(workers), workers, seconds, workMicros, overload);
+        run("MultiLevelTaskThreadPool", new MultiLevelTaskThreadPool(workers, BANDS, Duration.ofMillis(agingMillis)),
+            workers, seconds, workMicros, overload);
+    }
+
+    private static void run(String label, PriorityTaskExecutor pool, int workers, int seconds, int workMicros, double overload)
+        throws InterruptedException {
+        var run = new Run(workMicros * 1000L);
+        long intervalNanos = (long) (workMicros * 1000L / (workers * overload));
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long next = start;
+        int submitted = 0;
+        while (next < end) {
+            for (int i = 0; i < BATCH; i++) {
+                int band = submitted++ % BANDS;
+                long enqueuedAt = System.nanoTime();
+                pool.submit(band, () -> run.execute(band, enqueuedAt));
+                run.submitted[band].increment();
+            }
+            next += BATCH * intervalNanos;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        run.stoppedAt = System.nanoTime();
+        pool.shutdown();
+
+        System.out.printf("%s, %d workers, %d us tasks at %.2fx capacity for %ds%n", label, workers, workMicros, overload, seconds);
+        for (int band = 0; band < BANDS; band++) {
+            var stats = run.wait[band].stats();
+            long submittedInBand = run.submitted[band].sum();
+            System.out.printf("  band %d: %,9d submitted, %5.1f%% started, wait p50 %s, p99 %s, max %s%n",
+                band, submittedInBand, 100.0 * run.started[band].sum() / submittedInBand,
+                millis(stats.p50Nanos()), millis(stats.p99Nanos()), millis(stats.maxNanos()));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%8.1fms", nanos / 1_000_000.0);
+    }
+
+    private static final class Run {
+        final LatencyHistogram[] wait = new LatencyHistogram[BANDS];
+        final LongAdder[] submitted = new LongAdder[BANDS];
+        final LongAdder[] started = new LongAdder[BANDS];
+        final long workNanos;
+        volatile long stoppedAt = Long.MAX_VALUE;
+
+        Run(long workNanos) {
+            this.workNanos = workNanos;
+            for (int band = 0; band < BANDS; band++) {
+                wait[band] = new LatencyHistogram();
+                submitted[band] = new LongAdder();
+                started[band] = new LongAdder();
+            }
+        }
+
+        void execute(int band, long enqueuedAt) {
+            long now = System.nanoTime();
+            long stopped = stoppedAt;
+            if (now - stopped > 0) {
+                wait[band].record(stopped - enqueuedAt);
+                return;
+            }
+            wait[band].record(now - enqueuedAt);
+            started[band].increment();
+            long until = now + workNanos;
+            while (System.nanoTime() - until < 0) Thread.onSpinWait();
+        }
+    }
+}
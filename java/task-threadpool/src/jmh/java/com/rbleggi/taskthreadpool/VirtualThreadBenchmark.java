@@ -0,0 +1,67 @@
+package com.rbleggi.taskthreadpool;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class VirtualThreadBenchmark {
+    private static final Path STATUS = Path.of("/proc/self/status");
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int sleepMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int platformWorkers = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int maxConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : tasks;
+
+        System.out.printf("%,d tasks sleeping %d ms each%n", tasks, sleepMillis);
+        run("VirtualThreadTaskPool(" + maxConcurrency + ")", new VirtualThreadTaskPool(maxConcurrency), tasks, sleepMillis);
+        run("TaskThreadPool(" + platformWorkers + ")", new TaskThreadPool(platformWorkers), tasks, sleepMillis);
+    }
+
+    private static void run(String label, TaskExecutor pool, int tasks, int sleepMillis) throws InterruptedException {
+        var threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long baselineRss = rss();
+        var peakRss = new AtomicLong(baselineRss);
+        var sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakRss.accumulateAndGet(rss(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            pool.submit(() -> {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+
+        System.out.printf("%-28s %6.2fs, %,9.0f tasks/s, peak platform threads %,5d, peak RSS +%,d MB%n",
+            label, seconds, tasks / seconds, threads.getPeakThreadCount(), (peakRss.get() - baselineRss) >> 20);
+    }
+
+    private static long rss() {
+        try {
+            for (var line : Files.readAllLines(STATUS)) {
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return 0;
+    }
+}
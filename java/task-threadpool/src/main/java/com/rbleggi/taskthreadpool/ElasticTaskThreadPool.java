@@ -0,0 +1,157 @@
+package com.rbleggi.taskthreadpool;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+record PoolStats(int poolSize, int activeWorkers, int queuedTasks, long completedTasks, long workersAdded,
+                 long workersRetired, LatencyStats queueWait, LatencyStats runTime) {
+}
+
+class ElasticTaskThreadPool implements TaskExecutor {
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LinkedBlockingQueue<QueuedTask> taskQueue = new LinkedBlockingQueue<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicLong lastGrowth = new AtomicLong();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder workersAdded = new LongAdder();
+    private final LongAdder workersRetired = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final int coreSize;
+    private final int maxSize;
+    private final long targetQueueWaitNanos;
+    private final long keepAliveNanos;
+    private volatile boolean isRunning = true;
+    private int nextWorkerId;
+
+    ElasticTaskThreadPool(int coreSize, int maxSize, Duration targetQueueWait, Duration keepAlive) {
+        if (coreSize < 1) throw new IllegalArgumentException("coreSize must be positive");
+        if (maxSize < coreSize) throw new IllegalArgumentException("maxSize must be at least coreSize");
+        if (targetQueueWait.isNegative() || targetQueueWait.isZero()) throw new IllegalArgumentException("targetQueueWait must be positive");
+        if (keepAlive.isNegative() || keepAlive.isZero()) throw new IllegalArgumentException("keepAlive must be positive");
+        this.coreSize = coreSize;
+        this.maxSize = maxSize;
+        this.targetQueueWaitNanos = targetQueueWait.toNanos();
+        this.keepAliveNanos = keepAlive.toNanos();
+        lastGrowth.set(System.nanoTime() - targetQueueWaitNanos);
+        for (int i = 0; i < coreSize; i++) addWorker();
+    }
+
+    @Override
+    public void submit(Task task) {
+        synchronized (this) {
+            if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
+            taskQueue.offer(new QueuedTask(task, System.nanoTime()));
+        }
+        if (poolSize.get() < maxSize && activeWorkers.get() >= poolSize.get()) {
+            var oldest = taskQueue.peek();
+            if (oldest != null) maybeGrow(System.nanoTime() - oldest.enqueuedAt());
+        }
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            isRunning = false;
+        }
+        for (var worker : workers) {
+            worker.join();
+        }
+    }
+
+    PoolStats snapshot() {
+        return new PoolStats(poolSize.get(), activeWorkers.get(), taskQueue.size(), completedTasks.sum(),
+            workersAdded.sum(), workersRetired.sum(), queueWait.stats(), runTime.stats());
+    }
+
+    private void maybeGrow(long waitedNanos) {
+        if (waitedNanos <= targetQueueWaitNanos || taskQueue.isEmpty() || poolSize.get() >= maxSize) return;
+        long now = System.nanoTime();
+        long last = lastGrowth.get();
+        if (now - last < targetQueueWaitNanos || !lastGrowth.compareAndSet(last, now)) return;
+        addWorker();
+    }
+
+    private synchronized void addWorker() {
+        if (!isRunning) return;
+        int size;
+        do {
+            size = poolSize.get();
+            if (size >= maxSize) return;
+        } while (!poolSize.compareAndSet(size, size + 1));
+        var worker = new Worker(nextWorkerId++);
+        workers.add(worker);
+        workersAdded.increment();
+        worker.start();
+    }
+
+    private boolean retire() {
+        int size;
+        do {
+            size = poolSize.get();
+            if (size <= coreSize) return false;
+        } while (!poolSize.compareAndSet(size, size - 1));
+        workersRetired.increment();
+        return true;
+    }
+
+    private record QueuedTask(Task task, long enqueuedAt) {
+    }
+
+    private final class Worker extends Thread {
+        Worker(int index) {
+            super("elastic-worker-" + index);
+        }
+
+        @Override
+        public void run() {
+            long idleSince = System.nanoTime();
+            try {
+                while (isRunning || !taskQueue.isEmpty()) {
+                    QueuedTask queued;
+                    try {
+                        queued = taskQueue.poll(Math.min(keepAliveNanos, MAX_POLL_NANOS), TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (queued == null) {
+                        if (isRunning && System.nanoTime() - idleSince >= keepAliveNanos && retire()) return;
+                        continue;
+                    }
+                    idleSince = execute(queued);
+                }
+                poolSize.decrementAndGet();
+            } finally {
+                workers.remove(this);
+            }
+        }
+
+        private long execute(QueuedTask queued) {
+            long started = System.nanoTime();
+            long waited = started - queued.enqueuedAt();
+            queueWait.record(waited);
+            maybeGrow(waited);
+            activeWorkers.incrementAndGet();
+            try {
+                queued.task().run();
+            } catch (RuntimeException e) {
+                getUncaughtExceptionHandler().uncaughtException(this, e);
+            } finally {
+                activeWorkers.decrementAndGet();
+                completedTasks.increment();
+            }
+            long finished = System.nanoTime();
+            runTime.record(finished - started);
+            return finished;
+        }
+    }
+}
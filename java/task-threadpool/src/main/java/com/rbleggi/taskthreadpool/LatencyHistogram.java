@@ -0,0 +1,55 @@
+package com.rbleggi.taskthreadpool;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+record LatencyStats(long count, long meanNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+}
+
+final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int MAX_EXPONENT = 40;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.getAndIncrement(index(Math.min(nanos, MAX_VALUE)));
+        sum.add(nanos);
+    }
+
+    LatencyStats stats() {
+        var snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) total += snapshot[i] = counts.get(i);
+        if (total == 0) return new LatencyStats(0, 0, 0, 0, 0);
+        return new LatencyStats(total, sum.sum() / total, valueAtQuantile(snapshot, total, 0.5),
+            valueAtQuantile(snapshot, total, 0.99), valueAtQuantile(snapshot, total, 1.0));
+    }
+
+    private static long valueAtQuantile(long[] snapshot, long total, double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return highestEquivalentValue(i);
+        }
+        return MAX_VALUE;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift) + (1L << shift) - 1;
+    }
+}
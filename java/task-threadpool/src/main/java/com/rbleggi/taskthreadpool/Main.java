@@ -1,9 +1,14 @@
 package com.rbleggi.taskthreadpool;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.IntStream;
 
 public class Main {
@@ -16,26 +21,91 @@ interface Task {
     void run();
 }
 
-class TaskThreadPool {
-    private final LinkedBlockingQueue<Task> taskQueue = new LinkedBlockingQueue<>();
+interface TaskExecutor {
+    void submit(Task task);
+
+    default <T> TaskFuture<T> submit(Callable<T> callable) {
+        var future = TaskFuture.of(callable);
+        submit((Task) future);
+        return future;
+    }
+
+    void shutdown() throws InterruptedException;
+}
+
+enum BackpressurePolicy {
+    BLOCK,
+    CALLER_RUNS,
+    DROP_OLDEST,
+    REJECT
+}
+
+record BackpressureStats(long accepted, long blocked, long callerRuns, long droppedOldest, long rejected) {
+}
+
+class TaskThreadPool implements TaskExecutor {
+    private final LinkedBlockingQueue<Task> taskQueue;
+    private final BackpressurePolicy policy;
+    private final Semaphore space;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
     private volatile boolean isRunning = true;
     private final List<Worker> workers;
 
     TaskThreadPool(int workerCount) {
+        this(workerCount, Integer.MAX_VALUE, BackpressurePolicy.BLOCK);
+    }
+
+    TaskThreadPool(int workerCount, int queueCapacity, BackpressurePolicy policy) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive");
+        taskQueue = new LinkedBlockingQueue<>(queueCapacity);
+        this.policy = policy;
+        space = policy == BackpressurePolicy.BLOCK ? new Semaphore(queueCapacity) : null;
         workers = IntStream.range(0, workerCount)
             .mapToObj(i -> new Worker())
             .toList();
         workers.forEach(Worker::start);
     }
 
-    void submit(Task task) {
+    @Override
+    public void submit(Task task) {
+        if (space != null) {
+            submitBlocking(task);
+            return;
+        }
         synchronized (this) {
             if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
-            taskQueue.offer(task);
+            if (taskQueue.offer(task)) {
+                accepted.increment();
+                return;
+            }
+            switch (policy) {
+                case DROP_OLDEST -> {
+                    do {
+                        var dropped = taskQueue.poll();
+                        if (dropped != null) {
+                            droppedOldest.increment();
+                            if (dropped instanceof Future<?> future) future.cancel(false);
+                        }
+                    } while (!taskQueue.offer(task));
+                    accepted.increment();
+                    return;
+                }
+                case REJECT -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Task queue is full");
+                }
+                case CALLER_RUNS -> callerRuns.increment();
+            }
         }
+        task.run();
     }
 
-    void shutdown() throws InterruptedException {
+    @Override
+    public void shutdown() throws InterruptedException {
         synchronized (this) {
             isRunning = false;
         }
@@ -44,6 +114,35 @@ class TaskThreadPool {
         }
     }
 
+    int queuedTasks() {
+        return taskQueue.size();
+    }
+
+    BackpressureStats backpressureStats() {
+        return new BackpressureStats(accepted.sum(), blocked.sum(), callerRuns.sum(), droppedOldest.sum(), rejected.sum());
+    }
+
+    private void submitBlocking(Task task) {
+        if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
+        if (!space.tryAcquire()) {
+            blocked.increment();
+            try {
+                space.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+            }
+        }
+        synchronized (this) {
+            if (isRunning && taskQueue.offer(task)) {
+                accepted.increment();
+                return;
+            }
+        }
+        space.release();
+        throw new IllegalStateException("ThreadPool is shutting down");
+    }
+
     private class Worker extends Thread {
         @Override
         public void run() {
@@ -51,6 +150,7 @@ class TaskThreadPool {
                 try {
                     var task = taskQueue.poll(100, TimeUnit.MILLISECONDS);
                     if (task != null) {
+                        if (space != null) space.release();
                         task.run();
                     }
                 } catch (InterruptedException e) {
@@ -68,7 +168,13 @@ record PriorityTask(int priority, Task task) implements Comparable<PriorityTask>
     }
 }
 
-class PriorityTaskThreadPool {
+interface PriorityTaskExecutor {
+    void submit(int priority, Task task);
+
+    void shutdown() throws InterruptedException;
+}
+
+class PriorityTaskThreadPool implements PriorityTaskExecutor {
     private final PriorityBlockingQueue<PriorityTask> taskQueue = new PriorityBlockingQueue<>();
     private volatile boolean isRunning = true;
     private final List<Thread> workers;
@@ -80,14 +186,16 @@ class PriorityTaskThreadPool {
         workers.forEach(Thread::start);
     }
 
-    void submit(int priority, Task task) {
+    @Override
+    public void submit(int priority, Task task) {
         synchronized (this) {
             if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
             taskQueue.offer(new PriorityTask(priority, task));
         }
     }
 
-    void shutdown() throws InterruptedException {
+    @Override
+    public void shutdown() throws InterruptedException {
         synchronized (this) {
             isRunning = false;
         }
@@ -0,0 +1,129 @@
+package com.rbleggi.taskthreadpool;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+class MultiLevelTaskThreadPool implements PriorityTaskExecutor {
+    private static final int MAX_BANDS = 16;
+    private static final long STRIDE_UNIT = 1L << 20;
+
+    private final ConcurrentLinkedQueue<QueuedTask>[] bands;
+    private final long[] strides;
+    private final AtomicLongArray passes;
+    private final AtomicLongArray lastPromotions;
+    private final AtomicLong virtualTime = new AtomicLong();
+    private final Semaphore queuedTasks = new Semaphore(0);
+    private final AtomicInteger submitting = new AtomicInteger();
+    private final List<Thread> workers;
+    private final long agingNanos;
+    private volatile boolean isRunning = true;
+    private volatile boolean terminating;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    MultiLevelTaskThreadPool(int workerCount, int bandCount, Duration agingInterval) {
+        if (workerCount < 1) throw new IllegalArgumentException("workerCount must be positive");
+        if (bandCount < 1 || bandCount > MAX_BANDS) throw new IllegalArgumentException("bandCount must be between 1 and " + MAX_BANDS);
+        if (agingInterval.isNegative() || agingInterval.isZero()) throw new IllegalArgumentException("agingInterval must be positive");
+        this.agingNanos = agingInterval.toNanos();
+        this.bands = new ConcurrentLinkedQueue[bandCount];
+        this.strides = new long[bandCount];
+        this.passes = new AtomicLongArray(bandCount);
+        this.lastPromotions = new AtomicLongArray(bandCount);
+        long now = System.nanoTime();
+        for (int i = 0; i < bandCount; i++) {
+            bands[i] = new ConcurrentLinkedQueue<>();
+            strides[i] = STRIDE_UNIT >> (bandCount - 1 - i);
+            lastPromotions.set(i, now);
+        }
+        workers = IntStream.range(0, workerCount)
+            .mapToObj(i -> Thread.ofPlatform().name("multi-level-worker-" + i).unstarted(this::workerLoop))
+            .toList();
+        workers.forEach(Thread::start);
+    }
+
+    @Override
+    public void submit(int priority, Task task) {
+        submitting.incrementAndGet();
+        try {
+            if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
+            bands[Math.clamp(priority, 0, bands.length - 1)].offer(new QueuedTask(task, System.nanoTime()));
+            queuedTasks.release();
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        isRunning = false;
+        while (submitting.get() > 0) Thread.onSpinWait();
+        terminating = true;
+        for (var worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void workerLoop() {
+        while (!terminating || queuedTasks.availablePermits() > 0) {
+            try {
+                if (!queuedTasks.tryAcquire(100, TimeUnit.MILLISECONDS)) continue;
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                take().task().run();
+            } catch (RuntimeException e) {
+                var thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private QueuedTask take() {
+        while (true) {
+            long virtual = virtualTime.get();
+            int selected = promotedBand();
+            long selectedPass = selected < 0 ? 0 : Math.max(passes.get(selected), virtual);
+            if (selected < 0) {
+                for (int band = 0; band < bands.length; band++) {
+                    if (bands[band].isEmpty()) continue;
+                    long pass = Math.max(passes.get(band), virtual);
+                    if (selected < 0 || pass < selectedPass) {
+                        selected = band;
+                        selectedPass = pass;
+                    }
+                }
+            }
+            if (selected < 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            var queued = bands[selected].poll();
+            if (queued == null) continue;
+            passes.set(selected, selectedPass + strides[selected]);
+            virtualTime.accumulateAndGet(selectedPass, Math::max);
+            return queued;
+        }
+    }
+
+    private int promotedBand() {
+        long now = System.nanoTime();
+        for (int band = bands.length - 1; band > 0; band--) {
+            var head = bands[band].peek();
+            if (head == null || now - head.enqueuedAt() <= agingNanos) continue;
+            long last = lastPromotions.get(band);
+            if (now - last >= agingNanos && lastPromotions.compareAndSet(band, last, now)) return band;
+        }
+        return -1;
+    }
+
+    private record QueuedTask(Task task, long enqueuedAt) {
+    }
+}
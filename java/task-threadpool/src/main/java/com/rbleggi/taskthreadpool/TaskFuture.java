@@ -0,0 +1,434 @@
+package com.rbleggi.taskthreadpool;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+abstract class Completion {
+    Completion next;
+
+    abstract TaskFuture<?> fire(Object sourceResult);
+
+    boolean isLive() {
+        return true;
+    }
+}
+
+class TaskFuture<T> extends Completion implements Future<T>, Task {
+    private static final VarHandle RESULT;
+    private static final VarHandle STACK;
+    private static final VarHandle ACTION;
+    private static final VarHandle NEXT;
+    private static final Object NIL = new Object();
+    private static final Object INTERRUPTING = new Object();
+    private static final Object INTERRUPTED = new Object();
+    private static final Failure CANCELLED = new Failure(new CancellationException("Task was cancelled"));
+    private static final Completion CLOSED = new Waiter(null);
+    private static final TaskFuture<?> DONE;
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1,
+        runnable -> Thread.ofPlatform().daemon().name("task-future-timer").unstarted(runnable));
+    private static final byte ROOT = 0;
+    private static final byte APPLY = 1;
+    private static final byte ACCEPT = 2;
+    private static final byte WHEN_COMPLETE = 3;
+    private static final byte EXCEPTIONALLY = 4;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            RESULT = lookup.findVarHandle(TaskFuture.class, "result", Object.class);
+            STACK = lookup.findVarHandle(TaskFuture.class, "stack", Completion.class);
+            ACTION = lookup.findVarHandle(Stage.class, "action", Object.class);
+            NEXT = lookup.findVarHandle(Completion.class, "next", Completion.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        DONE = new TaskFuture<>(NIL);
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private volatile Object result;
+    private volatile Completion stack;
+
+    TaskFuture() {
+    }
+
+    private TaskFuture(Object result) {
+        RESULT.setRelease(this, result);
+        STACK.setRelease(this, CLOSED);
+    }
+
+    static <T> TaskFuture<T> of(Callable<? extends T> callable) {
+        return new Stage<>(ROOT, callable);
+    }
+
+    static <T> TaskFuture<T> completed(T value) {
+        return new TaskFuture<>(wrap(value));
+    }
+
+    static <T> TaskFuture<T> failed(Throwable failure) {
+        return new TaskFuture<>(new Failure(failure));
+    }
+
+    @Override
+    public void run() {
+    }
+
+    boolean complete(T value) {
+        return completeWith(wrap(value));
+    }
+
+    boolean completeExceptionally(Throwable failure) {
+        return completeWith(new Failure(failure));
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!RESULT.compareAndSet(this, null, CANCELLED)) return false;
+        if (mayInterruptIfRunning) interruptRunner();
+        postComplete(this);
+        return true;
+    }
+
+    void interruptRunner() {
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return result == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    boolean isCompletedExceptionally() {
+        return result instanceof Failure;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        var value = result;
+        if (value == null) value = await(false, 0);
+        return report(value);
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        var value = result;
+        if (value == null) value = await(true, unit.toNanos(timeout));
+        if (value == null) throw new TimeoutException();
+        return report(value);
+    }
+
+    TaskFuture<T> orTimeout(long timeout, TimeUnit unit) {
+        if (result == null) {
+            var timer = TIMER.schedule(() -> completeExceptionally(new TimeoutException()), timeout, unit);
+            onCompletion(new Canceller(timer));
+        }
+        return this;
+    }
+
+    static int pendingTimeouts() {
+        return TIMER.getQueue().size();
+    }
+
+    <U> TaskFuture<U> thenApply(Function<? super T, ? extends U> fn) {
+        return then(APPLY, fn);
+    }
+
+    TaskFuture<Void> thenAccept(Consumer<? super T> consumer) {
+        return then(ACCEPT, consumer);
+    }
+
+    TaskFuture<T> whenComplete(BiConsumer<? super T, ? super Throwable> consumer) {
+        return then(WHEN_COMPLETE, consumer);
+    }
+
+    TaskFuture<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return then(EXCEPTIONALLY, fn);
+    }
+
+    @Override
+    TaskFuture<?> fire(Object source) {
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U> TaskFuture<U> then(byte stageKind, Object stageAction) {
+        var value = result;
+        if (value == null) return push(new Stage<>(stageKind, stageAction));
+        var computed = compute(stageKind, stageAction, value);
+        if (computed == value) return (TaskFuture<U>) this;
+        if (computed == NIL) return (TaskFuture<U>) DONE;
+        return new TaskFuture<>(computed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object compute(byte kind, Object action, Object source) {
+        try {
+            return switch (kind) {
+                case APPLY -> source instanceof Failure ? source : wrap(((Function<Object, Object>) action).apply(unwrap(source)));
+                case ACCEPT -> {
+                    if (source instanceof Failure) yield source;
+                    ((Consumer<Object>) action).accept(unwrap(source));
+                    yield NIL;
+                }
+                case WHEN_COMPLETE -> {
+                    var failure = source instanceof Failure f ? f.cause : null;
+                    ((BiConsumer<Object, Throwable>) action).accept(failure == null ? unwrap(source) : null, failure);
+                    yield source;
+                }
+                case EXCEPTIONALLY -> source instanceof Failure failure ? wrap(((Function<Throwable, Object>) action).apply(failure.cause)) : source;
+                default -> throw new IllegalStateException("Not a dependent stage");
+            };
+        } catch (Throwable e) {
+            return new Failure(e);
+        }
+    }
+
+    private boolean completeWith(Object value) {
+        if (!RESULT.compareAndSet(this, null, value)) return false;
+        postComplete(this);
+        return true;
+    }
+
+    private <U> TaskFuture<U> push(Stage<U> dependent) {
+        while (true) {
+            var head = stack;
+            if (head == CLOSED) {
+                var fired = dependent.fire(result);
+                if (fired != null) postComplete(fired);
+                return dependent;
+            }
+            dependent.next = head;
+            if (STACK.compareAndSet(this, head, dependent)) return dependent;
+        }
+    }
+
+    private void onCompletion(Completion completion) {
+        while (true) {
+            var head = stack;
+            if (head == CLOSED) {
+                completion.fire(result);
+                return;
+            }
+            completion.next = head;
+            if (STACK.compareAndSet(this, head, completion)) return;
+        }
+    }
+
+    private static void postComplete(TaskFuture<?> completed) {
+        var current = completed;
+        TaskFuture<?> work = null;
+        while (true) {
+            var node = (Completion) STACK.getAndSet(current, CLOSED);
+            while (node != null && node != CLOSED) {
+                var following = node.next;
+                node.next = null;
+                var fired = node.fire(current.result);
+                if (fired != null) {
+                    fired.next = work;
+                    work = fired;
+                }
+                node = following;
+            }
+            if (work == null) return;
+            current = work;
+            work = (TaskFuture<?>) current.next;
+            current.next = null;
+        }
+    }
+
+    private Object await(boolean timed, long nanos) throws InterruptedException {
+        var waiter = new Waiter(Thread.currentThread());
+        while (true) {
+            var head = stack;
+            if (head == CLOSED) return result;
+            waiter.next = head;
+            if (STACK.compareAndSet(this, head, waiter)) break;
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        Object value;
+        while ((value = result) == null) {
+            if (Thread.interrupted()) {
+                abandon(waiter);
+                throw new InterruptedException();
+            }
+            if (!timed) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    abandon(waiter);
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+        return value;
+    }
+
+    private void abandon(Waiter waiter) {
+        waiter.thread = null;
+        cleanStack();
+    }
+
+    private void cleanStack() {
+        var head = stack;
+        boolean unlinked = false;
+        while (true) {
+            if (head == null || head == CLOSED) return;
+            if (head.isLive()) {
+                if (unlinked) return;
+                break;
+            }
+            var following = head.next;
+            if (STACK.weakCompareAndSet(this, head, following)) {
+                unlinked = true;
+                head = following;
+            } else {
+                head = stack;
+            }
+        }
+        var previous = head;
+        var node = previous.next;
+        while (node != null) {
+            var following = node.next;
+            if (node.isLive()) {
+                previous = node;
+                node = following;
+            } else if (NEXT.weakCompareAndSet(previous, node, following)) {
+                return;
+            } else {
+                node = previous.next;
+            }
+        }
+    }
+
+    int pendingCompletions() {
+        int count = 0;
+        for (var node = stack; node != null && node != CLOSED; node = node.next) count++;
+        return count;
+    }
+
+    private static Object wrap(Object value) {
+        return value == null ? NIL : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unwrap(Object value) {
+        return value == NIL ? null : (T) value;
+    }
+
+    private static <T> T report(Object value) throws ExecutionException {
+        if (value == CANCELLED) throw new CancellationException("Task was cancelled");
+        if (value instanceof Failure failure) throw new ExecutionException(failure.cause);
+        return unwrap(value);
+    }
+
+    private record Failure(Throwable cause) {
+    }
+
+    private static final class Stage<T> extends TaskFuture<T> {
+        private volatile Object action;
+        private final byte kind;
+
+        Stage(byte kind, Object action) {
+            this.kind = kind;
+            ACTION.setRelease(this, action);
+        }
+
+        @Override
+        public void run() {
+            var task = action;
+            if (kind != ROOT || !(task instanceof Callable<?> callable) || isDone()) return;
+            var runner = Thread.currentThread();
+            if (!ACTION.compareAndSet(this, task, runner)) return;
+            try {
+                if (!isDone()) {
+                    Object value;
+                    try {
+                        value = wrap(callable.call());
+                    } catch (Throwable e) {
+                        value = new Failure(e);
+                    }
+                    if (RESULT.compareAndSet(this, null, value)) postComplete(this);
+                }
+            } finally {
+                if (!ACTION.compareAndSet(this, runner, null)) {
+                    while (action != INTERRUPTED) Thread.onSpinWait();
+                    action = null;
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        @Override
+        void interruptRunner() {
+            if (action instanceof Thread runner && ACTION.compareAndSet(this, runner, INTERRUPTING)) {
+                runner.interrupt();
+                action = INTERRUPTED;
+            }
+        }
+
+        @Override
+        TaskFuture<?> fire(Object source) {
+            var task = action;
+            if (isDone()) return null;
+            var value = compute(kind, task, source);
+            action = null;
+            return RESULT.compareAndSet(this, null, value) ? this : null;
+        }
+    }
+
+    private static final class Canceller extends Completion {
+        private final ScheduledFuture<?> timer;
+
+        Canceller(ScheduledFuture<?> timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        TaskFuture<?> fire(Object sourceResult) {
+            timer.cancel(false);
+            return null;
+        }
+
+        @Override
+        boolean isLive() {
+            return !timer.isDone();
+        }
+    }
+
+    private static final class Waiter extends Completion {
+        private volatile Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        TaskFuture<?> fire(Object sourceResult) {
+            LockSupport.unpark(thread);
+            return null;
+        }
+
+        @Override
+        boolean isLive() {
+            return thread != null;
+        }
+    }
+}
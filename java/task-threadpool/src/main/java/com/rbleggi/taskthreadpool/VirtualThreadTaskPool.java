@@ -0,0 +1,223 @@
+package com.rbleggi.taskthreadpool;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+class VirtualThreadTaskPool implements TaskExecutor {
+    private final ThreadFactory threads = Thread.ofVirtual().factory();
+    private final Queue<Task> waiting = new ConcurrentLinkedQueue<>();
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private volatile boolean isRunning = true;
+
+    VirtualThreadTaskPool(int maxConcurrency) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be positive");
+        permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void submit(Task task) {
+        inFlight.incrementAndGet();
+        if (!isRunning) {
+            finished();
+            throw new IllegalStateException("ThreadPool is shutting down");
+        }
+        if (permits.tryAcquire()) {
+            threads.newThread(() -> drain(task)).start();
+            return;
+        }
+        waiting.offer(task);
+        if (permits.tryAcquire()) threads.newThread(() -> drain(null)).start();
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        isRunning = false;
+        lock.lock();
+        try {
+            while (inFlight.get() > 0) idle.await();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    TaskScope openScope() {
+        return new TaskScope(this);
+    }
+
+    private void drain(Task first) {
+        var task = first;
+        while (true) {
+            if (task != null) execute(task);
+            task = waiting.poll();
+            if (task == null) {
+                permits.release();
+                if (waiting.isEmpty() || !permits.tryAcquire()) return;
+            }
+        }
+    }
+
+    private void execute(Task task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            var thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        } finally {
+            finished();
+        }
+    }
+
+    private void finished() {
+        if (inFlight.decrementAndGet() > 0 || isRunning) return;
+        lock.lock();
+        try {
+            idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+final class TaskScope implements AutoCloseable {
+    private final TaskExecutor executor;
+    private final Queue<Fork<?>> forks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger alive = new AtomicInteger();
+    private final TaskFuture<Void> outcome = new TaskFuture<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition terminated = lock.newCondition();
+    private volatile boolean joining;
+    private volatile boolean closing;
+    private boolean closed;
+
+    TaskScope(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    <T> TaskFuture<T> fork(Callable<T> callable) {
+        if (joining || closed) throw new IllegalStateException("Scope is already joined or closed");
+        var fork = new Fork<>(TaskFuture.of(callable));
+        forks.add(fork);
+        pending.incrementAndGet();
+        alive.incrementAndGet();
+        fork.future.whenComplete((value, failure) -> {
+            if (failure != null && !(failure instanceof CancellationException) && outcome.completeExceptionally(failure)) cancelAll();
+            if (pending.decrementAndGet() == 0 && joining) outcome.complete(null);
+        });
+        try {
+            executor.submit(fork);
+        } catch (RuntimeException e) {
+            fork.cancel(false);
+            throw e;
+        }
+        return fork.future;
+    }
+
+    void join() throws InterruptedException, ExecutionException {
+        joining = true;
+        if (pending.get() == 0) outcome.complete(null);
+        try {
+            outcome.get();
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        cancelAll();
+        closing = true;
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            while (alive.get() > 0) {
+                try {
+                    terminated.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void exited() {
+        if (alive.decrementAndGet() > 0 || !closing) return;
+        lock.lock();
+        try {
+            terminated.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancelAll() {
+        for (var fork : forks) fork.cancel(true);
+    }
+
+    private final class Fork<T> implements Task, Future<T> {
+        final TaskFuture<T> future;
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Fork(TaskFuture<T> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) return;
+            try {
+                future.run();
+            } finally {
+                exited();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = future.cancel(mayInterruptIfRunning);
+            if (claimed.compareAndSet(false, true)) exited();
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
+        }
+    }
+}
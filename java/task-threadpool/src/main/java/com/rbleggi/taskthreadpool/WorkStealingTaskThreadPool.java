@@ -0,0 +1,228 @@
+package com.rbleggi.taskthreadpool;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+final class WorkStealingDeque {
+    private static final VarHandle TOP;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Task[].class);
+
+    static {
+        try {
+            TOP = MethodHandles.lookup().findVarHandle(WorkStealingDeque.class, "top", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long top;
+    private volatile long bottom;
+    private volatile Task[] slots = new Task[64];
+
+    void push(Task task) {
+        long b = bottom;
+        var array = slots;
+        long t = top;
+        if (b - t >= array.length - 1) array = grow(array, t, b);
+        SLOTS.setRelease(array, (int) b & (array.length - 1), task);
+        bottom = b + 1;
+    }
+
+    Task pop() {
+        long b = bottom - 1;
+        var array = slots;
+        bottom = b;
+        long t = top;
+        if (t > b) {
+            bottom = b + 1;
+            return null;
+        }
+        int index = (int) b & (array.length - 1);
+        var task = (Task) SLOTS.getAcquire(array, index);
+        if (t == b) {
+            if (!TOP.compareAndSet(this, t, t + 1)) task = null;
+            bottom = b + 1;
+        }
+        SLOTS.setRelease(array, index, null);
+        return task;
+    }
+
+    Task steal() {
+        long t = top;
+        long b = bottom;
+        if (t >= b) return null;
+        var array = slots;
+        var task = (Task) SLOTS.getAcquire(array, (int) t & (array.length - 1));
+        return task != null && TOP.compareAndSet(this, t, t + 1) ? task : null;
+    }
+
+    boolean isEmpty() {
+        return top >= bottom;
+    }
+
+    int size() {
+        return (int) Math.max(0, bottom - top);
+    }
+
+    private Task[] grow(Task[] array, long t, long b) {
+        var grown = new Task[array.length * 2];
+        for (long i = t; i < b; i++) grown[(int) i & (grown.length - 1)] = array[(int) i & (array.length - 1)];
+        slots = grown;
+        return grown;
+    }
+}
+
+class WorkStealingTaskThreadPool implements TaskExecutor {
+    private final ConcurrentLinkedQueue<Task> injector = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    private final AtomicInteger searchingWorkers = new AtomicInteger();
+    private final AtomicInteger externalSubmits = new AtomicInteger();
+    private final Worker[] workers;
+    private volatile boolean isRunning = true;
+    private volatile boolean terminating;
+
+    WorkStealingTaskThreadPool(int workerCount) {
+        if (workerCount < 1) throw new IllegalArgumentException("workerCount must be positive");
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) workers[i] = new Worker(i);
+        for (var worker : workers) worker.start();
+    }
+
+    @Override
+    public void submit(Task task) {
+        if (Thread.currentThread() instanceof Worker worker && worker.pool() == this) {
+            if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
+            worker.deque.push(task);
+        } else {
+            externalSubmits.incrementAndGet();
+            try {
+                if (!isRunning) throw new IllegalStateException("ThreadPool is shutting down");
+                injector.offer(task);
+            } finally {
+                externalSubmits.decrementAndGet();
+            }
+        }
+        signalWork();
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        isRunning = false;
+        while (externalSubmits.get() > 0) Thread.onSpinWait();
+        terminating = true;
+        for (var worker : workers) {
+            if (worker.parked.compareAndSet(true, false)) idleWorkers.decrementAndGet();
+            LockSupport.unpark(worker);
+        }
+        for (var worker : workers) {
+            worker.join();
+        }
+    }
+
+    int queuedTasks() {
+        int queued = injector.size();
+        for (var worker : workers) queued += worker.deque.size();
+        return queued;
+    }
+
+    private void signalWork() {
+        if (idleWorkers.get() == 0 || searchingWorkers.get() > 0) return;
+        for (var worker : workers) {
+            if (worker.parked.get() && worker.parked.compareAndSet(true, false)) {
+                idleWorkers.decrementAndGet();
+                searchingWorkers.incrementAndGet();
+                worker.searching = true;
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    private boolean hasWork() {
+        if (!injector.isEmpty()) return true;
+        for (var worker : workers) {
+            if (!worker.deque.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private final class Worker extends Thread {
+        final WorkStealingDeque deque = new WorkStealingDeque();
+        final AtomicBoolean parked = new AtomicBoolean();
+        volatile boolean searching;
+
+        Worker(int index) {
+            super("work-stealing-worker-" + index);
+        }
+
+        WorkStealingTaskThreadPool pool() {
+            return WorkStealingTaskThreadPool.this;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                var task = findTask();
+                if (task != null) {
+                    if (searching) stopSearching(true);
+                    execute(task);
+                } else if (terminating) {
+                    if (!hasWork()) return;
+                } else {
+                    idle();
+                }
+            }
+        }
+
+        private Task findTask() {
+            var task = deque.pop();
+            if (task != null) return task;
+            task = injector.poll();
+            if (task != null) return task;
+            return steal();
+        }
+
+        private Task steal() {
+            int start = ThreadLocalRandom.current().nextInt(workers.length);
+            for (int i = 0; i < workers.length; i++) {
+                var victim = workers[(start + i) % workers.length];
+                if (victim == this) continue;
+                var task = victim.deque.steal();
+                if (task != null) return task;
+            }
+            return null;
+        }
+
+        private void stopSearching(boolean foundWork) {
+            searching = false;
+            if (searchingWorkers.decrementAndGet() == 0 && foundWork) signalWork();
+        }
+
+        private void idle() {
+            if (searching) stopSearching(false);
+            parked.set(true);
+            idleWorkers.incrementAndGet();
+            if (hasWork() || terminating) {
+                if (parked.compareAndSet(true, false)) idleWorkers.decrementAndGet();
+                return;
+            }
+            while (parked.get() && !terminating) {
+                Thread.interrupted();
+                LockSupport.park(this);
+            }
+        }
+
+        private void execute(Task task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                getUncaughtExceptionHandler().uncaughtException(this, e);
+            }
+        }
+    }
+}
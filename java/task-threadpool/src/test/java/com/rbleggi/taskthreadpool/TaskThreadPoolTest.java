@@ -2,11 +2,20 @@ package com.rbleggi.taskthreadpool;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -144,4 +153,609 @@ class TaskThreadPoolTest {
         assertEquals(5, pt.priority());
         assertEquals(task, pt.task());
     }
+
+    @Test
+    @DisplayName("WorkStealingDeque should pop LIFO locally, steal FIFO and grow")
+    void workStealingDeque_popAndSteal_takeFromOppositeEnds() {
+        var deque = new WorkStealingDeque();
+        var tasks = new ArrayList<Task>();
+        for (int i = 0; i < 200; i++) {
+            Task task = () -> {};
+            tasks.add(task);
+            deque.push(task);
+        }
+        assertEquals(200, deque.size());
+        assertSame(tasks.get(199), deque.pop());
+        assertSame(tasks.get(0), deque.steal());
+        assertSame(tasks.get(1), deque.steal());
+        assertEquals(197, deque.size());
+        while (deque.pop() != null) {
+        }
+        assertTrue(deque.isEmpty());
+        assertNull(deque.steal());
+    }
+
+    @Test
+    @DisplayName("WorkStealingDeque should hand every task to exactly one taker under concurrent steals")
+    void workStealingDeque_concurrentThieves_takeEachTaskOnce() throws InterruptedException {
+        var deque = new WorkStealingDeque();
+        var taken = ConcurrentHashMap.<Integer>newKeySet();
+        var duplicates = new AtomicInteger();
+        var done = new AtomicBoolean();
+        var thieves = new ArrayList<Thread>();
+        for (int t = 0; t < 3; t++) {
+            thieves.add(Thread.ofPlatform().start(() -> {
+                while (!done.get() || !deque.isEmpty()) {
+                    var task = deque.steal();
+                    if (task != null) task.run();
+                }
+            }));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            final int id = i;
+            deque.push(() -> {
+                if (!taken.add(id)) duplicates.incrementAndGet();
+            });
+            if (i % 3 == 0) {
+                var task = deque.pop();
+                if (task != null) task.run();
+            }
+        }
+        Task task;
+        while ((task = deque.pop()) != null) task.run();
+        done.set(true);
+        for (var thief : thieves) thief.join();
+        assertEquals(0, duplicates.get());
+        assertEquals(100_000, taken.size());
+    }
+
+    @Test
+    @DisplayName("WorkStealingTaskThreadPool should run external and recursively spawned tasks before shutdown")
+    void workStealingPool_externalAndNestedTasks_allExecuted() throws InterruptedException {
+        var pool = new WorkStealingTaskThreadPool(4);
+        var executed = new AtomicInteger();
+        var latch = new CountDownLatch(1);
+        pool.submit(() -> spawn(pool, 12, executed, latch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10_000; i++) pool.submit(executed::incrementAndGet);
+        pool.shutdown();
+        assertEquals((1 << 13) - 1 + 10_000, executed.get());
+        assertEquals(0, pool.queuedTasks());
+    }
+
+    @Test
+    @DisplayName("WorkStealingTaskThreadPool should wake parked workers and reject submits after shutdown")
+    void workStealingPool_idleThenShutdown_wakesAndRejects() throws InterruptedException {
+        var pool = new WorkStealingTaskThreadPool(2);
+        Thread.sleep(50);
+        var latch = new CountDownLatch(2);
+        pool.submit(latch::countDown);
+        pool.submit(() -> {
+            throw new IllegalStateException("task failure is reported, worker survives");
+        });
+        pool.submit(latch::countDown);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertThrows(IllegalStateException.class, () -> pool.submit(() -> {}));
+    }
+
+    @Test
+    @DisplayName("WorkStealingTaskThreadPool should park idle workers even when a task leaves the interrupt flag set")
+    void workStealingPool_interruptingTask_workerStillParks() throws InterruptedException {
+        var pool = new WorkStealingTaskThreadPool(1);
+        var latch = new CountDownLatch(1);
+        pool.submit(() -> Thread.currentThread().interrupt());
+        Thread.sleep(100);
+
+        var worker = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("work-stealing-worker-0") && thread.isAlive())
+            .findFirst().orElseThrow();
+        assertEquals(Thread.State.WAITING, worker.getState());
+        pool.submit(latch::countDown);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("WorkStealingTaskThreadPool should let idle workers steal tasks a busy worker keeps local")
+    void workStealingPool_localTasksOfBusyWorker_stolenByIdleWorker() throws InterruptedException {
+        var pool = new WorkStealingTaskThreadPool(2);
+        for (int i = 0; i < 100; i++) {
+            var stolen = new CountDownLatch(1);
+            var done = new CountDownLatch(1);
+            pool.submit(() -> {
+                pool.submit(stolen::countDown);
+                try {
+                    if (stolen.await(1, TimeUnit.SECONDS)) done.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("TaskFuture should return results and run continuations on the completing worker")
+    void taskFuture_submitCallable_returnsResultAndChainsOnWorker() throws Exception {
+        var pool = new WorkStealingTaskThreadPool(2);
+        var gate = new CountDownLatch(1);
+        var taskThread = new Thread[1];
+        var future = pool.submit(() -> {
+            gate.await();
+            taskThread[0] = Thread.currentThread();
+            return 20;
+        });
+        var continuationThread = new Thread[1];
+        var chained = future.thenApply(value -> value + 1)
+            .thenApply(value -> {
+                continuationThread[0] = Thread.currentThread();
+                return value * 2;
+            });
+        assertFalse(chained.isDone());
+        gate.countDown();
+
+        assertEquals(42, chained.get(1, TimeUnit.SECONDS));
+        assertEquals(20, future.get());
+        assertSame(taskThread[0], continuationThread[0]);
+        assertEquals(43, chained.thenApply(value -> value + 1).get());
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("TaskFuture should propagate failures past thenApply and recover with exceptionally")
+    void taskFuture_failure_propagatesAndRecovers() throws Exception {
+        var pool = new TaskThreadPool(1);
+        TaskFuture<Integer> future = pool.submit(() -> {
+            throw new IllegalArgumentException("boom");
+        });
+        var skipped = new AtomicInteger();
+        var mapped = future.thenApply(value -> skipped.incrementAndGet());
+        var error = assertThrows(ExecutionException.class, mapped::get);
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        assertEquals(0, skipped.get());
+        assertTrue(future.isCompletedExceptionally());
+
+        var seen = new Throwable[1];
+        assertEquals(-1, future.whenComplete((value, failure) -> seen[0] = failure).exceptionally(failure -> -1).get());
+        assertInstanceOf(IllegalArgumentException.class, seen[0]);
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("TaskFuture should cancel running and queued tasks and their dependents")
+    void taskFuture_cancel_interruptsRunningAndSkipsQueued() throws Exception {
+        var pool = new TaskThreadPool(1);
+        var interrupted = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var running = pool.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "finished";
+        });
+        var ranQueued = new AtomicInteger();
+        var queued = pool.submit(ranQueued::incrementAndGet);
+        var dependent = queued.thenApply(value -> value + 1);
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(queued.cancel(false));
+        assertTrue(running.cancel(true));
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, running::get);
+        assertThrows(CancellationException.class, dependent::get);
+        assertTrue(queued.isCancelled());
+        assertFalse(running.cancel(true));
+
+        var after = pool.submit(() -> Thread.currentThread().isInterrupted());
+        assertFalse(after.get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, ranQueued.get());
+    }
+
+    @Test
+    @DisplayName("TaskFuture should time out waiting callers, expire with orTimeout and drop timers on completion")
+    void taskFuture_timeouts_failWaitersAndFuture() throws Exception {
+        var pending = new TaskFuture<String>();
+        assertThrows(TimeoutException.class, () -> pending.get(20, TimeUnit.MILLISECONDS));
+
+        var expiring = new TaskFuture<String>().orTimeout(20, TimeUnit.MILLISECONDS);
+        var error = assertThrows(ExecutionException.class, () -> expiring.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+
+        var completedInTime = new TaskFuture<String>().orTimeout(1, TimeUnit.SECONDS);
+        assertTrue(completedInTime.complete("value"));
+        assertFalse(completedInTime.completeExceptionally(new IllegalStateException()));
+        assertEquals("value", completedInTime.get());
+
+        int scheduled = TaskFuture.pendingTimeouts();
+        for (int i = 0; i < 1_000; i++) new TaskFuture<Integer>().orTimeout(1, TimeUnit.HOURS).complete(i);
+        TaskFuture.completed("done").orTimeout(1, TimeUnit.HOURS);
+        assertTrue(TaskFuture.pendingTimeouts() <= scheduled);
+    }
+
+    @Test
+    @DisplayName("TaskFuture should unlink waiters that time out or are interrupted")
+    void taskFuture_abandonedWaiters_areUnlinked() throws Exception {
+        var pending = new TaskFuture<String>();
+        var dependent = pending.thenApply(String::length);
+        for (int i = 0; i < 100; i++) {
+            assertThrows(TimeoutException.class, () -> pending.get(1, TimeUnit.MICROSECONDS));
+        }
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, pending::get);
+        assertEquals(1, pending.pendingCompletions());
+
+        assertTrue(pending.complete("value"));
+        assertEquals(5, dependent.get());
+        assertEquals(0, pending.pendingCompletions());
+    }
+
+    @Test
+    @DisplayName("TaskFuture should complete long dependent chains iteratively")
+    void taskFuture_longChain_completesWithoutStackOverflow() throws Exception {
+        var root = new TaskFuture<Integer>();
+        var tail = root;
+        for (int i = 0; i < 100_000; i++) tail = tail.thenApply(value -> value + 1);
+        root.complete(0);
+        assertEquals(100_000, tail.get());
+        assertEquals(100_001, TaskFuture.completed(0).thenApply(value -> value + 1).thenApply(value -> value + 100_000).get());
+    }
+
+    @Test
+    @DisplayName("ElasticTaskThreadPool should grow on queue wait, respect max size and retire idle workers")
+    void elasticPool_queueWaitAboveTarget_growsThenRetires() throws InterruptedException {
+        var pool = new ElasticTaskThreadPool(1, 4, Duration.ofMillis(5), Duration.ofMillis(200));
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var latch = new CountDownLatch(40);
+
+        for (int i = 0; i < 40; i++) {
+            pool.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        var busy = pool.snapshot();
+        assertTrue(busy.workersAdded() > 1);
+        assertTrue(maxRunning.get() > 1 && maxRunning.get() <= 4);
+        assertTrue(busy.queueWait().p99Nanos() > TimeUnit.MILLISECONDS.toNanos(5));
+
+        Thread.sleep(800);
+        var idle = pool.snapshot();
+        pool.shutdown();
+
+        assertEquals(1, idle.poolSize());
+        assertEquals(idle.workersAdded() - 1, idle.workersRetired());
+        assertEquals(40, idle.completedTasks());
+        assertEquals(40, idle.queueWait().count());
+        assertEquals(40, idle.runTime().count());
+        assertTrue(idle.runTime().p50Nanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    @DisplayName("ElasticTaskThreadPool should stay at core size while queue wait is under target")
+    void elasticPool_queueWaitUnderTarget_staysAtCore() throws InterruptedException {
+        var pool = new ElasticTaskThreadPool(2, 8, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        var latch = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) pool.submit(latch::countDown);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        pool.shutdown();
+        var stats = pool.snapshot();
+        assertEquals(2, stats.workersAdded());
+        assertEquals(0, stats.poolSize());
+        assertEquals(200, stats.completedTasks());
+        assertThrows(IllegalStateException.class, () -> pool.submit(() -> {}));
+        assertThrows(IllegalArgumentException.class, () -> new ElasticTaskThreadPool(2, 1, Duration.ofMillis(1), Duration.ofSeconds(1)));
+    }
+
+    @Test
+    @DisplayName("ElasticTaskThreadPool should keep running tasks after a task leaves its worker interrupted")
+    void elasticPool_interruptedWorker_keepsRunningTasks() throws InterruptedException {
+        var pool = new ElasticTaskThreadPool(1, 1, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        var latch = new CountDownLatch(1);
+
+        pool.submit(() -> Thread.currentThread().interrupt());
+        pool.submit(latch::countDown);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("MultiLevelTaskThreadPool should share workers between backlogged bands by weight")
+    void multiLevelPool_backloggedBands_servedByWeight() throws InterruptedException {
+        var pool = new MultiLevelTaskThreadPool(1, 4, Duration.ofSeconds(10));
+        var gate = new CountDownLatch(1);
+        var order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        pool.submit(0, () -> awaitQuietly(gate));
+        for (int i = 0; i < 40; i++) {
+            for (int band = 0; band < 4; band++) {
+                int submittedBand = band;
+                pool.submit(band, () -> order.add(submittedBand));
+            }
+        }
+        gate.countDown();
+        pool.shutdown();
+
+        var counts = new int[4];
+        for (int band : order.subList(0, 30)) counts[band]++;
+        assertEquals(160, order.size());
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[2] && counts[2] >= counts[3] && counts[3] >= 1);
+        assertThrows(IllegalStateException.class, () -> pool.submit(0, () -> {}));
+    }
+
+    @Test
+    @DisplayName("MultiLevelTaskThreadPool should keep running tasks after a task leaves its worker interrupted")
+    void multiLevelPool_interruptedWorker_keepsRunningTasks() throws InterruptedException {
+        var pool = new MultiLevelTaskThreadPool(1, 2, Duration.ofSeconds(10));
+        var latch = new CountDownLatch(1);
+
+        pool.submit(0, () -> Thread.currentThread().interrupt());
+        pool.submit(1, latch::countDown);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("MultiLevelTaskThreadPool should promote aged low-priority tasks ahead of a busy top band")
+    void multiLevelPool_agedTasks_promotedAheadOfTopBand() throws InterruptedException {
+        assertTrue(lowPriorityPositions(Duration.ofMillis(10)).getLast() < 60);
+        assertTrue(lowPriorityPositions(Duration.ofSeconds(10)).get(1) > 100);
+    }
+
+    @Test
+    @DisplayName("TaskThreadPool should reject or run on the caller when the bounded queue is full")
+    void taskThreadPool_boundedQueueFull_rejectsOrRunsOnCaller() throws InterruptedException {
+        var gate = new CountDownLatch(1);
+        var rejecting = saturatedPool(BackpressurePolicy.REJECT, gate);
+        assertThrows(RejectedExecutionException.class, () -> rejecting.submit(() -> {}));
+
+        var callerRunning = saturatedPool(BackpressurePolicy.CALLER_RUNS, gate);
+        var ranOn = new ArrayList<Thread>();
+        callerRunning.submit(() -> ranOn.add(Thread.currentThread()));
+        assertEquals(List.of(Thread.currentThread()), ranOn);
+
+        gate.countDown();
+        rejecting.shutdown();
+        callerRunning.shutdown();
+        assertEquals(new BackpressureStats(3, 0, 0, 0, 1), rejecting.backpressureStats());
+        assertEquals(new BackpressureStats(3, 0, 1, 0, 0), callerRunning.backpressureStats());
+    }
+
+    @Test
+    @DisplayName("TaskThreadPool should drop the oldest queued task or block the caller when the bounded queue is full")
+    void taskThreadPool_boundedQueueFull_dropsOldestOrBlocks() throws Exception {
+        var gate = new CountDownLatch(1);
+        var dropping = new TaskThreadPool(1, 2, BackpressurePolicy.DROP_OLDEST);
+        var started = new CountDownLatch(1);
+        dropping.submit(() -> {
+            started.countDown();
+            awaitQuietly(gate);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        var oldest = dropping.submit(() -> "oldest");
+        var kept = dropping.submit(() -> "kept");
+        var newest = dropping.submit(() -> "newest");
+        assertTrue(oldest.isCancelled());
+
+        var blocking = saturatedPool(BackpressurePolicy.BLOCK, gate);
+        var submitted = new CountDownLatch(1);
+        Thread.ofPlatform().start(() -> {
+            blocking.submit(() -> {});
+            submitted.countDown();
+        });
+        assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+
+        gate.countDown();
+        assertTrue(submitted.await(1, TimeUnit.SECONDS));
+        assertEquals("kept", kept.get(1, TimeUnit.SECONDS));
+        assertEquals("newest", newest.get(1, TimeUnit.SECONDS));
+        dropping.shutdown();
+        blocking.shutdown();
+        assertEquals(new BackpressureStats(4, 0, 0, 1, 0), dropping.backpressureStats());
+        assertEquals(new BackpressureStats(4, 1, 0, 0, 0), blocking.backpressureStats());
+    }
+
+    @Test
+    @DisplayName("TaskThreadPool should wait for queue space without holding the pool lock")
+    void taskThreadPool_blockedSubmitter_doesNotBlockShutdown() throws Exception {
+        var gate = new CountDownLatch(1);
+        var pool = saturatedPool(BackpressurePolicy.BLOCK, gate);
+        var failure = new AtomicReference<RuntimeException>();
+        var submitter = Thread.ofPlatform().start(() -> {
+            try {
+                pool.submit(() -> {});
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        while (pool.backpressureStats().blocked() == 0) Thread.onSpinWait();
+
+        var stopper = Thread.ofPlatform().start(() -> {
+            try {
+                pool.shutdown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (stopper.getState() != Thread.State.WAITING && System.nanoTime() < deadline) Thread.onSpinWait();
+        assertEquals(Thread.State.WAITING, stopper.getState());
+
+        gate.countDown();
+        submitter.join(1000);
+        stopper.join(1000);
+        assertInstanceOf(IllegalStateException.class, failure.get());
+        assertEquals(new BackpressureStats(3, 1, 0, 0, 0), pool.backpressureStats());
+    }
+
+    @Test
+    @DisplayName("VirtualThreadTaskPool should run blocking tasks on virtual threads within the concurrency limit")
+    void virtualThreadPool_sleepingTasks_runWithinLimit() throws InterruptedException {
+        var pool = new VirtualThreadTaskPool(500);
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var onPlatformThread = new AtomicBoolean();
+        var completed = new AtomicInteger();
+
+        for (int i = 0; i < 10_000; i++) {
+            pool.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                if (!Thread.currentThread().isVirtual()) onPlatformThread.set(true);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                completed.incrementAndGet();
+            });
+        }
+        pool.shutdown();
+
+        assertEquals(10_000, completed.get());
+        assertTrue(maxRunning.get() > 1 && maxRunning.get() <= 500);
+        assertFalse(onPlatformThread.get());
+        assertThrows(IllegalStateException.class, () -> pool.submit(() -> {}));
+    }
+
+    @Test
+    @DisplayName("TaskScope should join all forks or fail fast and cancel the rest on the first failure")
+    void taskScope_join_waitsForAllOrFailsFast() throws Exception {
+        var pool = new VirtualThreadTaskPool(100);
+        try (var scope = pool.openScope()) {
+            var first = scope.fork(() -> "a");
+            var second = scope.fork(() -> {
+                Thread.sleep(20);
+                return "b";
+            });
+            scope.join();
+            assertEquals("ab", first.get() + second.get());
+        }
+
+        var interrupted = new CountDownLatch(1);
+        long started = System.nanoTime();
+        TaskFuture<String> slow;
+        try (var scope = pool.openScope()) {
+            slow = scope.fork(() -> {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            });
+            scope.fork(() -> {
+                Thread.sleep(20);
+                throw new IllegalStateException("boom");
+            });
+            var failure = assertThrows(ExecutionException.class, scope::join);
+            assertEquals("boom", failure.getCause().getMessage());
+        }
+        pool.shutdown();
+
+        assertTrue(slow.isCancelled());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    @DisplayName("TaskScope should treat forks dropped by a DROP_OLDEST pool as cancelled")
+    void taskScope_droppedFork_cancelledAndScopeCloses() throws Exception {
+        var pool = new TaskThreadPool(1, 1, BackpressurePolicy.DROP_OLDEST);
+        var gate = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        pool.submit(() -> {
+            started.countDown();
+            awaitQuietly(gate);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        TaskFuture<String> dropped;
+        try (var scope = new TaskScope(pool)) {
+            dropped = scope.fork(() -> "dropped");
+            var kept = scope.fork(() -> "kept");
+            assertTrue(dropped.isCancelled());
+            gate.countDown();
+            scope.join();
+            assertEquals("kept", kept.get());
+        }
+        pool.shutdown();
+        assertEquals(1, pool.backpressureStats().droppedOldest());
+    }
+
+    private static TaskThreadPool saturatedPool(BackpressurePolicy policy, CountDownLatch gate) throws InterruptedException {
+        var pool = new TaskThreadPool(1, 2, policy);
+        var started = new CountDownLatch(1);
+        pool.submit(() -> {
+            started.countDown();
+            awaitQuietly(gate);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        pool.submit(() -> {});
+        pool.submit(() -> {});
+        return pool;
+    }
+
+    private static List<Integer> lowPriorityPositions(Duration agingInterval) throws InterruptedException {
+        var pool = new MultiLevelTaskThreadPool(1, 8, agingInterval);
+        var gate = new CountDownLatch(1);
+        var order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        pool.submit(0, () -> awaitQuietly(gate));
+        for (int i = 0; i < 3; i++) pool.submit(7, () -> order.add(7));
+        for (int i = 0; i < 150; i++) {
+            pool.submit(0, () -> {
+                order.add(0);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        gate.countDown();
+        pool.shutdown();
+
+        var positions = new ArrayList<Integer>();
+        for (int i = 0; i < order.size(); i++) {
+            if (order.get(i) == 7) positions.add(i);
+        }
+        assertEquals(3, positions.size());
+        return positions;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void spawn(TaskExecutor pool, int depth, AtomicInteger executed, CountDownLatch latch) {
+        if (executed.incrementAndGet() == (1 << 13) - 1) latch.countDown();
+        if (depth == 0) return;
+        pool.submit(() -> spawn(pool, depth - 1, executed, latch));
+        pool.submit(() -> spawn(pool, depth - 1, executed, latch));
+    }
 }